@@ -254,6 +254,8 @@ public class Vars implements Loadable{
     public static AsyncCore asyncCore;
     public static BaseRegistry bases;
     public static GlobalVars logicVars;
+    public static LogicScheduler logicScheduler;
+    public static SleepScheduler sleepScheduler;
     public static MapEditor editor;
     public static GameService service = new GameService();
 
@@ -339,6 +341,8 @@ public class Vars implements Loadable{
         fogControl = new FogControl();
         bases = new BaseRegistry();
         logicVars = new GlobalVars();
+        logicScheduler = new LogicScheduler();
+        sleepScheduler = new SleepScheduler();
         javaPath =
             new Fi(OS.prop("java.home")).child("bin/java").exists() ? new Fi(OS.prop("java.home")).child("bin/java").absolutePath() :
             Core.files.local("jre/bin/java").exists() ? Core.files.local("jre/bin/java").absolutePath() : // Unix
@@ -12,8 +12,12 @@ import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
 import mindustry.graphics.*;
+import mindustry.net.Administration.*;
 import mindustry.world.*;
 
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
 import static mindustry.Vars.*;
 import static mindustry.ai.Pathfinder.*;
 
@@ -23,6 +27,8 @@ public class ControlPathfinder{
     private static final int updateFPS = 60;
     private static final int updateInterval = 1000 / updateFPS;
     private static final int wallImpassableCap = 1_000_000;
+    /** most groups that follow a shared flow field at once; each field takes a few arrays the size of the map, so requests past this search by themselves */
+    static final int maxGroupFields = 32;
 
     public static final PathCost
 
@@ -70,10 +76,24 @@ public class ControlPathfinder{
 
     /** Current pathfinding threads, contents may be null */
     @Nullable PathfindThread[] threads;
+    /** Cluster graph for long paths. Null if disabled. */
+    volatile @Nullable HierarchicalPathfinder clusters;
+    /** whether requests with the same team, cost and destination share a flow field */
+    volatile boolean shareGroups;
     /** for unique target IDs */
     int lastTargetId = 1;
     /** requests per-unit */
     ObjectMap<Unit, PathRequest> requests = new ObjectMap<>();
+    /** requests grouped by team, cost and destination tile. Synchronize on this map when accessing. */
+    final ObjectMap<PathGroup, PathGroup> groups = new ObjectMap<>();
+    /** lookup key for groups, guarded by the group map */
+    final PathGroup groupKey = new PathGroup();
+    /** flow fields of discarded groups, to be reused by new ones; guarded by the group map */
+    final Seq<GroupField> fieldPool = new Seq<>();
+    /** amount of groups that may use a flow field, guarded by the group map */
+    int groupFields;
+    /** total path searches started, and how many of those were served by a shared group */
+    final AtomicLong searchCount = new AtomicLong(), coalescedCount = new AtomicLong();
 
     public ControlPathfinder(){
 
@@ -81,6 +101,8 @@ public class ControlPathfinder{
             stop();
             wwidth = world.width();
             wheight = world.height();
+            clusters = Config.hierarchicalPathfinding.bool() ? new HierarchicalPathfinder(wwidth, wheight) : null;
+            shareGroups = Config.sharedUnitPaths.bool();
 
             start();
         });
@@ -88,12 +110,14 @@ public class ControlPathfinder{
         //only update the world when a solid block is removed or placed, everything else doesn't matter
         Events.on(TilePreChangeEvent.class, e -> {
             if(e.tile.solid()){
+                invalidateClusters(e.tile);
                 worldUpdateId ++;
             }
         });
 
         Events.on(TileChangeEvent.class, e -> {
             if(e.tile.solid()){
+                invalidateClusters(e.tile);
                 worldUpdateId ++;
             }
         });
@@ -107,7 +131,10 @@ public class ControlPathfinder{
                 if(req.lastUpdateId <= state.updateId - 10){
                     //concurrent modification!
                     Core.app.post(() -> requests.remove(req.unit));
-                    req.thread.queue.post(() -> req.thread.requests.remove(req));
+                    req.thread.queue.post(() -> {
+                        req.thread.requests.remove(req);
+                        req.leaveGroup();
+                    });
                 }
             }
         });
@@ -158,6 +185,92 @@ public class ControlPathfinder{
     }
 
 
+    private void invalidateClusters(Tile tile){
+        var clusters = this.clusters;
+        if(clusters != null){
+            clusters.invalidate(tile.x, tile.y, tile.block().size);
+        }
+    }
+
+    /** @return the amount of path searches started since the game launched. */
+    public long searchCount(){
+        return searchCount.get();
+    }
+
+    /** @return the amount of path searches that were served by the flow field of another request with the same destination. */
+    public long coalescedCount(){
+        return coalescedCount.get();
+    }
+
+    /** Adds a request to the group for its team, cost and destination. Thread-safe. */
+    PathGroup joinGroup(PathRequest req){
+        synchronized(groups){
+            groupKey.set(req.team, req.cost, req.goal);
+
+            PathGroup group = groups.get(groupKey);
+            if(group == null){
+                group = new PathGroup();
+                group.set(req.team, req.cost, req.goal);
+                groups.put(group, group);
+            }
+
+            group.members ++;
+            return group;
+        }
+    }
+
+    /**
+     * Allows the requests of a group to follow its flow field, unless {@link #maxGroupFields} groups already do. Thread-safe.
+     * @return whether the group may use a flow field
+     */
+    boolean reserveField(PathGroup group){
+        synchronized(groups){
+            if(group.reserved) return true;
+            if(groupFields >= maxGroupFields) return false;
+
+            group.reserved = true;
+            groupFields ++;
+            return true;
+        }
+    }
+
+    /** @return a flow field of a discarded group if there is one with this size, otherwise a new one. Thread-safe. */
+    GroupField obtainField(int size){
+        synchronized(groups){
+            while(fieldPool.size > 0){
+                GroupField field = fieldPool.pop();
+                if(field.weights.length == size) return field;
+            }
+        }
+        return new GroupField(size);
+    }
+
+    /** Removes a request from a group, discarding the group once it is unused. Thread-safe. */
+    void leaveGroup(PathGroup group){
+        synchronized(groups){
+            if(--group.members > 0) return;
+
+            groups.remove(group);
+            if(group.reserved){
+                group.reserved = false;
+                groupFields --;
+            }
+        }
+
+        //a group is locked while its field is updated, which can obtain a field, so the locks are never held at the same time here
+        GroupField field;
+        synchronized(group){
+            field = group.field;
+            group.field = null;
+        }
+
+        if(field != null){
+            synchronized(groups){
+                fieldPool.add(field);
+            }
+        }
+    }
+
     /** @return the next target ID to use as a unique path identifier. */
     public int nextTargetId(){
         return lastTargetId ++;
@@ -334,6 +447,11 @@ public class ControlPathfinder{
         }
         threads = null;
         requests.clear();
+        synchronized(groups){
+            groups.clear();
+            fieldPool.clear();
+            groupFields = 0;
+        }
     }
 
     private static boolean raycast(int team, PathCost type, int x1, int y1, int x2, int y2){
@@ -415,7 +533,7 @@ public class ControlPathfinder{
         return cost.getCost(team, pathfinder.tiles[tilePos]);
     }
 
-    private static int cost(int team, PathCost cost, int tilePos){
+    static int cost(int team, PathCost cost, int tilePos){
         if(state.rules.limitMapArea && !Team.get(team).isAI()){
             int x = tilePos % wwidth, y = tilePos / wwidth;
             if(x < state.rules.limitX || y < state.rules.limitY || x > state.rules.limitX + state.rules.limitWidth || y > state.rules.limitY + state.rules.limitHeight){
@@ -425,6 +543,14 @@ public class ControlPathfinder{
         return cost.getCost(team, pathfinder.tiles[tilePos]);
     }
 
+    /**
+     * The cost can include an impassable enemy wall, so cap the cost if so and add the base cost instead.
+     * Essentially this means that any path with enemy walls will only count the walls once, preventing strange behavior like avoiding based on wall count.
+     */
+    static float addCost(float currentCost, float add){
+        return currentCost >= wallImpassableCap && add >= wallImpassableCap ? currentCost + add - wallImpassableCap : currentCost + add;
+    }
+
     private static boolean avoid(int team, PathCost type, int tilePos){
         int cost = cost(team, type, tilePos);
         return cost == impassable || cost >= 2;
@@ -505,6 +631,8 @@ public class ControlPathfinder{
 
         int rayPathIndex = -1;
         IntSeq result = new IntSeq();
+        /** path found on the cluster graph, before it replaces the result */
+        IntSeq clusterResult = new IntSeq();
         volatile float raycastTimer;
 
         PathfindQueue frontier = new PathfindQueue();
@@ -514,6 +642,14 @@ public class ControlPathfinder{
         IntFloatMap costs = new IntFloatMap();
 
         int start, goal;
+        /** whether the next update should try the cluster graph */
+        boolean hierarchical;
+        /** search on the cluster graph, if it is not finished yet */
+        @Nullable HierarchicalPathfinder.Search clusterSearch;
+        /** group of requests with the same destination, if any */
+        @Nullable PathGroup group;
+        /** whether this request follows the flow field of its group, instead of searching by itself */
+        boolean shared;
 
         long lastUpdateId;
         long lastTime;
@@ -548,6 +684,50 @@ public class ControlPathfinder{
 
             if(done) return;
 
+            //another request is going to the same place, so follow the flow field they share
+            if(shared){
+                boolean reached;
+                synchronized(group){
+                    reached = group.update(start, maxUpdateNs);
+                    if(reached){
+                        foundEnd = group.trace(start, clusterResult);
+                    }
+                }
+
+                if(reached){
+                    complete();
+                }
+                return;
+            }
+
+            //long paths are resolved on the cluster graph and refined locally, which expands far fewer nodes
+            if(hierarchical){
+                var clusters = controlPath.clusters;
+                if(clusters == null){
+                    hierarchical = false;
+                    clusterSearch = null;
+                }else{
+                    if(clusterSearch == null){
+                        clusterSearch = new HierarchicalPathfinder.Search(start, goal);
+                    }
+
+                    int state = clusters.findPath(team, cost, clusterSearch, clusterResult, maxUpdateNs);
+                    if(state == HierarchicalPathfinder.searchRunning) return;
+
+                    hierarchical = false;
+                    clusterSearch = null;
+
+                    if(state == HierarchicalPathfinder.searchFound){
+                        foundEnd = true;
+                        complete();
+                    }else{
+                        //the cluster graph found no path, or its clusters changed while refining it; the tile search is exact, so it runs next update
+                        clusterResult.clear();
+                    }
+                    return;
+                }
+            }
+
             long ns = Time.nanos();
             int counter = 0;
 
@@ -575,9 +755,7 @@ public class ControlPathfinder{
 
                     if(add < 0) continue;
 
-                    //the cost can include an impassable enemy wall, so cap the cost if so and add the base cost instead
-                    //essentially this means that any path with enemy walls will only count the walls once, preventing strange behavior like avoiding based on wall count
-                    float newCost = currentCost >= wallImpassableCap && add >= wallImpassableCap ? currentCost + add - wallImpassableCap : currentCost + add;
+                    float newCost = addCost(currentCost, add);
 
                     //a cost of 0 means "not set"
                     if(!costs.containsKey(next) || newCost < costs.get(next)){
@@ -599,6 +777,10 @@ public class ControlPathfinder{
                 }
             }
 
+            complete();
+        }
+
+        void complete(){
             lastTime = Time.millis();
             raycastTimer = 9999f;
             result.clear();
@@ -607,17 +789,23 @@ public class ControlPathfinder{
             rayPathIndex = -1;
 
             if(foundEnd){
-                int cur = goal;
-                while(cur != start){
-                    result.add(cur);
-                    cur = cameFrom.get(cur);
-                }
+                if(clusterResult.size > 0){
+                    result.addAll(clusterResult);
+                }else{
+                    int cur = goal;
+                    while(cur != start){
+                        result.add(cur);
+                        cur = cameFrom.get(cur);
+                    }
 
-                result.reverse();
+                    result.reverse();
+                }
 
                 smoothPath();
             }
 
+            clusterResult.clear();
+
             //don't keep this around in memory, better to dump entirely - using clear() keeps around massive arrays for paths
             frontier = new PathfindQueue();
             cameFrom = new IntIntMap();
@@ -626,6 +814,14 @@ public class ControlPathfinder{
             done = true;
         }
 
+        void leaveGroup(){
+            if(group != null){
+                controlPath.leaveGroup(group);
+                group = null;
+                shared = false;
+            }
+        }
+
         void smoothPath(){
             int len = result.size;
             if(len <= 2) return;
@@ -661,10 +857,176 @@ public class ControlPathfinder{
 
             foundEnd = false;
             lastDestination.set(destination);
+            clusterResult.clear();
+
+            if(group != null && (group.goal != goal || group.team != team || group.cost != cost)){
+                leaveGroup();
+            }
+
+            if(group == null && controlPath.shareGroups){
+                group = controlPath.joinGroup(this);
+                //the first request of a group searches by itself, as flooding the map for a single unit is more expensive
+                shared = group.members > 1 && controlPath.reserveField(group);
+            }
+
+            controlPath.searchCount.incrementAndGet();
+            if(shared){
+                controlPath.coalescedCount.incrementAndGet();
+            }
+
+            hierarchical = !shared && controlPath.clusters != null && heuristic(start, goal) >= HierarchicalPathfinder.minDistance;
+            clusterSearch = null;
 
             if(resetCurrent){
                 result.clear();
             }
         }
     }
+
+    /** Arrays of a flow field, which are reused by other groups once their group is discarded. */
+    static class GroupField{
+        final float[] weights;
+        /** next tile towards the destination */
+        final int[] next;
+        /** tiles whose weight is final */
+        final Bits settled;
+
+        GroupField(int size){
+            weights = new float[size];
+            next = new int[size];
+            settled = new Bits(size);
+        }
+    }
+
+    /** A reverse flow field from a destination, shared between all requests of a team and cost type going there. */
+    public static class PathGroup{
+        int team, goal;
+        PathCost cost;
+        /** amount of requests in this group, guarded by the group map */
+        int members;
+        /** whether this group counts towards {@link ControlPathfinder#maxGroupFields}, guarded by the group map */
+        boolean reserved;
+
+        //flow field data, only obtained once a request follows it; synchronize on the group when accessing
+        @Nullable GroupField field;
+        PathfindQueue frontier;
+        int worldUpdate;
+
+        public void set(int team, PathCost cost, int goal){
+            this.team = team;
+            this.cost = cost;
+            this.goal = goal;
+        }
+
+        /**
+         * Expands the flow field until the start tile has its final weight, or time runs out.
+         * @return whether the start was reached, or can never be reached.
+         */
+        public boolean update(int start, long maxUpdateNs){
+            if(field == null || worldUpdate != worldUpdateId){
+                reset();
+            }
+
+            float[] weights = field.weights;
+            int[] next = field.next;
+            Bits settled = field.settled;
+
+            if(settled.get(start)) return true;
+
+            long ns = Time.nanos();
+            int counter = 0;
+
+            while(frontier.size > 0){
+                int current = frontier.poll();
+
+                //stale queue entry
+                if(settled.get(current)) continue;
+                settled.set(current);
+
+                if(current == start){
+                    return true;
+                }
+
+                //moving into this tile is not possible, so nothing can route through it
+                int add = cost(team, cost, current);
+                if(add != impassable){
+                    int cx = current % wwidth, cy = current / wwidth;
+                    float newCost = addCost(weights[current], add);
+
+                    for(Point2 point : Geometry.d4){
+                        int newx = cx + point.x, newy = cy + point.y;
+                        if(newx >= wwidth || newy >= wheight || newx < 0 || newy < 0) continue;
+
+                        int other = newx + wwidth * newy;
+                        if(!settled.get(other) && newCost < weights[other]){
+                            weights[other] = newCost;
+                            next[other] = current;
+                            frontier.add(other, newCost);
+                        }
+                    }
+                }
+
+                //only check every N iterations to prevent nanoTime spam (slow)
+                if((counter ++) >= 100){
+                    counter = 0;
+
+                    if(Time.timeSinceNanos(ns) > maxUpdateNs){
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Follows the flow field from the start to the destination.
+         * @param out the tile positions, excluding the start and including the destination.
+         * @return whether the destination can be reached.
+         */
+        public boolean trace(int start, IntSeq out){
+            out.clear();
+            if(field == null || !field.settled.get(start)) return false;
+
+            int cur = start;
+            while(cur != goal){
+                cur = field.next[cur];
+                out.add(cur);
+
+                //should never happen, but avoid looping forever
+                if(out.size > field.weights.length){
+                    out.clear();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void reset(){
+            int size = wwidth * wheight;
+            if(field == null || field.weights.length != size){
+                field = controlPath.obtainField(size);
+            }
+
+            //fields may come from another group
+            field.settled.clear();
+            Arrays.fill(field.weights, Float.MAX_VALUE);
+            frontier = new PathfindQueue(20);
+            worldUpdate = worldUpdateId;
+
+            field.weights[goal] = 0f;
+            field.next[goal] = goal;
+            frontier.add(goal, 0f);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof PathGroup other && other.team == team && other.goal == goal && other.cost == cost;
+        }
+
+        @Override
+        public int hashCode(){
+            return (team * 31 + goal) * 31 + System.identityHashCode(cost);
+        }
+    }
 }
@@ -0,0 +1,417 @@
+package mindustry.ai;
+
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.ai.Pathfinder.*;
+
+import java.util.concurrent.atomic.*;
+
+import static mindustry.ai.ControlPathfinder.*;
+import static mindustry.ai.Pathfinder.impassable;
+
+/**
+ * HPA*-style abstraction of the tile grid, used by {@link ControlPathfinder} for long paths.
+ * The map is split into square clusters; every open stretch of a cluster border gets a pair of portal tiles, and the costs between portals of the same cluster are precomputed.
+ * Paths are found on this portal graph first, then refined tile-by-tile inside each cluster they pass through.
+ */
+public class HierarchicalPathfinder{
+    /** width and height of a cluster, in tiles */
+    public static final int clusterSize = 16;
+    /** paths with a manhattan distance below this are solved directly on the tile grid */
+    public static final int minDistance = clusterSize * 2;
+    /** results of {@link #findPath(int, PathCost, Search, IntSeq, long)} */
+    public static final int searchRunning = 0, searchFound = 1, searchFailed = 2;
+
+    final int width, height, cwidth, cheight;
+    /** incremented every time the tiles of a cluster change. Written on the main thread, read by pathfinding threads. */
+    final AtomicIntegerArray versions;
+    /** graphs for each team and cost type. Synchronize on this list when accessing. */
+    final Seq<ClusterGraph> graphs = new Seq<>(ClusterGraph.class);
+    /** local search data of each pathfinding thread */
+    final ThreadLocal<LocalSearch> locals = Threads.local(LocalSearch::new);
+
+    public HierarchicalPathfinder(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.cwidth = (width + clusterSize - 1) / clusterSize;
+        this.cheight = (height + clusterSize - 1) / clusterSize;
+        this.versions = new AtomicIntegerArray(cwidth * cheight);
+    }
+
+    /** Invalidates every cluster that the tiles in this rectangle, or their direct neighbors, belong to. Main thread only. */
+    public void invalidate(int x, int y, int size){
+        int offset = (size - 1) / 2;
+        int x1 = Math.max(x - offset - 1, 0), y1 = Math.max(y - offset - 1, 0);
+        int x2 = Math.min(x - offset + size, width - 1), y2 = Math.min(y - offset + size, height - 1);
+
+        for(int cx = x1 / clusterSize; cx <= x2 / clusterSize; cx++){
+            for(int cy = y1 / clusterSize; cy <= y2 / clusterSize; cy++){
+                versions.incrementAndGet(cx + cy * cwidth);
+            }
+        }
+    }
+
+    /**
+     * Continues a search for a path on the cluster graph, and refines it once it was found. Thread-safe; searches of different threads only wait for each other while a cluster is rebuilt.
+     * @param out the resulting tile positions, excluding the start and including the goal.
+     * @param maxUpdateNs how long this call may take; the search is continued by the next call if it is not finished by then.
+     * @return {@link #searchRunning} if the search is not finished, {@link #searchFound} if a path was found, otherwise {@link #searchFailed}.
+     */
+    public int findPath(int team, PathCost cost, Search search, IntSeq out, long maxUpdateNs){
+        return getGraph(team, cost).findPath(search, locals.get(), out, maxUpdateNs);
+    }
+
+    ClusterGraph getGraph(int team, PathCost cost){
+        synchronized(graphs){
+            for(int i = 0; i < graphs.size; i++){
+                ClusterGraph graph = graphs.items[i];
+                if(graph.team == team && graph.cost == cost){
+                    return graph;
+                }
+            }
+
+            ClusterGraph graph = new ClusterGraph(team, cost);
+            graphs.add(graph);
+            return graph;
+        }
+    }
+
+    /** State of a search on the cluster graph, kept by the request between updates. */
+    public static class Search{
+        final int start, goal;
+        final PathfindQueue frontier = new PathfindQueue();
+        final IntFloatMap costs = new IntFloatMap(), goalCosts = new IntFloatMap();
+        final IntIntMap cameFrom = new IntIntMap();
+        boolean started;
+
+        public Search(int start, int goal){
+            this.start = start;
+            this.goal = goal;
+        }
+    }
+
+    /** Scratch data for searches inside a single cluster, indexed by local tile position. Each thread has its own. */
+    static class LocalSearch{
+        final float[] costs = new float[clusterSize * clusterSize];
+        final int[] from = new int[clusterSize * clusterSize], searches = new int[clusterSize * clusterSize];
+        final PathfindQueue frontier = new PathfindQueue();
+        final IntSeq waypoints = new IntSeq(), segment = new IntSeq();
+        int search;
+    }
+
+    /** Portals of a cluster. Never changed once created, so searches can read it while another thread builds its replacement. */
+    static class Cluster{
+        /** version of the tiles this cluster was built with */
+        final int version;
+        /** portal tile positions */
+        final IntSeq nodes = new IntSeq();
+        /** portal in the neighboring cluster that each node leads to, 4 per node in Geometry.d4 order; -1 if none */
+        final IntSeq links = new IntSeq();
+        /** cost between each pair of nodes, nodes.size * nodes.size; negative if unreachable inside this cluster */
+        float[] costs = {};
+
+        Cluster(int version){
+            this.version = version;
+        }
+
+        int indexOf(int pos){
+            return nodes.indexOf(pos);
+        }
+
+        void addPortal(int pos, int other, int direction){
+            int index = nodes.indexOf(pos);
+            if(index == -1){
+                index = nodes.size;
+                nodes.add(pos);
+                for(int i = 0; i < 4; i++){
+                    links.add(-1);
+                }
+            }
+            links.set(index * 4 + direction, other);
+        }
+    }
+
+    /** Portal graph for a specific team and cost type. Clusters are replaced while synchronized on the graph; everything else can be used by several threads at once. */
+    class ClusterGraph{
+        final int team;
+        final PathCost cost;
+        final AtomicReferenceArray<Cluster> clusters = new AtomicReferenceArray<>(cwidth * cheight);
+
+        ClusterGraph(int team, PathCost cost){
+            this.team = team;
+            this.cost = cost;
+        }
+
+        int findPath(Search s, LocalSearch l, IntSeq out, long maxUpdateNs){
+            long ns = Time.nanos();
+            int start = s.start, goal = s.goal, goalCluster = clusterOf(goal);
+
+            if(!s.started){
+                s.started = true;
+                int startCluster = clusterOf(start);
+
+                //cost of reaching the goal from each portal of its cluster
+                Cluster target = get(goalCluster, l);
+                searchLocal(l, goalCluster, goal, -1);
+                for(int i = 0; i < target.nodes.size; i++){
+                    float value = localCost(l, goalCluster, target.nodes.items[i]);
+                    if(value >= 0f){
+                        s.goalCosts.put(target.nodes.items[i], value);
+                    }
+                }
+
+                s.costs.put(start, 0f);
+                s.cameFrom.put(start, start);
+
+                //connect the start to each portal of its cluster
+                Cluster source = get(startCluster, l);
+                searchLocal(l, startCluster, start, -1);
+                for(int i = 0; i < source.nodes.size; i++){
+                    int node = source.nodes.items[i];
+                    float value = localCost(l, startCluster, node);
+                    if(value >= 0f){
+                        relax(s, start, node, value);
+                    }
+                }
+            }
+
+            int counter = 0;
+
+            while(s.frontier.size > 0){
+                int current = s.frontier.poll();
+
+                if(current == goal){
+                    return refine(s, l, out) ? searchFound : searchFailed;
+                }
+
+                int index = clusterOf(current);
+                Cluster cluster = get(index, l);
+                int node = cluster.indexOf(current);
+
+                //may happen if the cluster was rebuilt during this search
+                if(node == -1) continue;
+
+                int size = cluster.nodes.size;
+                for(int i = 0; i < size; i++){
+                    float value = cluster.costs[node * size + i];
+                    if(i != node && value >= 0f){
+                        relax(s, current, cluster.nodes.items[i], value);
+                    }
+                }
+
+                for(int i = 0; i < 4; i++){
+                    int other = cluster.links.items[node * 4 + i];
+                    if(other != -1){
+                        relax(s, current, other, ControlPathfinder.cost(team, cost, other));
+                    }
+                }
+
+                if(index == goalCluster && s.goalCosts.containsKey(current)){
+                    relax(s, current, goal, s.goalCosts.get(current));
+                }
+
+                //expanding a node may rebuild its cluster, so time is checked more often than in the tile search
+                if((counter ++) >= 10){
+                    counter = 0;
+
+                    if(Time.timeSinceNanos(ns) > maxUpdateNs){
+                        return searchRunning;
+                    }
+                }
+            }
+
+            return searchFailed;
+        }
+
+        /** Turns the portals of a found path into tiles. */
+        boolean refine(Search s, LocalSearch l, IntSeq out){
+            int start = s.start, goal = s.goal;
+            IntSeq waypoints = l.waypoints, segment = l.segment;
+
+            waypoints.clear();
+            int cur = goal;
+            while(cur != start){
+                waypoints.add(cur);
+                cur = s.cameFrom.get(cur);
+            }
+            waypoints.add(start);
+            waypoints.reverse();
+
+            //refine each abstract edge into tiles
+            out.clear();
+            for(int i = 1; i < waypoints.size; i++){
+                int from = waypoints.items[i - 1], to = waypoints.items[i];
+
+                //portal links cross a border into an adjacent tile
+                if(clusterOf(from) != clusterOf(to)){
+                    out.add(to);
+                    continue;
+                }
+
+                int index = clusterOf(from);
+                if(!searchLocal(l, index, from, to)){
+                    //the cluster changed during this search, the path will be recalculated later
+                    return false;
+                }
+
+                segment.clear();
+                int tile = to;
+                while(tile != from){
+                    segment.add(tile);
+                    tile = l.from[local(index, tile)];
+                }
+                segment.reverse();
+                out.addAll(segment);
+            }
+
+            return true;
+        }
+
+        void relax(Search s, int from, int to, float add){
+            float newCost = addCost(s.costs.get(from), add);
+
+            if(!s.costs.containsKey(to) || newCost < s.costs.get(to)){
+                s.costs.put(to, newCost);
+                s.cameFrom.put(to, from);
+                s.frontier.add(to, newCost + heuristic(to, s.goal));
+            }
+        }
+
+        /** @return the cluster at this index, rebuilt if its tiles changed. Uses the local search data for rebuilding. */
+        Cluster get(int index, LocalSearch l){
+            int version = versions.get(index);
+            Cluster cluster = clusters.get(index);
+            if(cluster != null && cluster.version == version) return cluster;
+
+            //only one thread rebuilds clusters of this graph, the others wait for it instead of doing the same work
+            synchronized(this){
+                cluster = clusters.get(index);
+                if(cluster == null || cluster.version != version){
+                    cluster = build(index, version, l);
+                    clusters.set(index, cluster);
+                }
+                return cluster;
+            }
+        }
+
+        Cluster build(int index, int version, LocalSearch l){
+            Cluster cluster = new Cluster(version);
+
+            int cx = index % cwidth * clusterSize, cy = index / cwidth * clusterSize;
+            int cw = Math.min(clusterSize, width - cx), ch = Math.min(clusterSize, height - cy);
+
+            //both sides of a border find the same open stretches, so their portals always match up
+            if(cx + cw < width) portals(cluster, cx + cw - 1, cy, 0, 1, ch, 0);
+            if(cy + ch < height) portals(cluster, cx, cy + ch - 1, 1, 0, cw, 1);
+            if(cx > 0) portals(cluster, cx, cy, 0, 1, ch, 2);
+            if(cy > 0) portals(cluster, cx, cy, 1, 0, cw, 3);
+
+            int size = cluster.nodes.size;
+            cluster.costs = new float[size * size];
+
+            for(int i = 0; i < size; i++){
+                searchLocal(l, index, cluster.nodes.items[i], -1);
+                for(int j = 0; j < size; j++){
+                    cluster.costs[i * size + j] = localCost(l, index, cluster.nodes.items[j]);
+                }
+            }
+            return cluster;
+        }
+
+        /** Adds a portal to the middle of each stretch of tiles along a border that is passable on both sides. */
+        void portals(Cluster cluster, int x, int y, int stepx, int stepy, int length, int direction){
+            Point2 out = Geometry.d4[direction];
+            int begin = -1;
+
+            for(int i = 0; i <= length; i++){
+                int tx = x + stepx * i, ty = y + stepy * i;
+                boolean open = i < length && passable(tx, ty) && passable(tx + out.x, ty + out.y);
+
+                if(open && begin == -1){
+                    begin = i;
+                }else if(!open && begin != -1){
+                    int mid = (begin + i - 1) / 2;
+                    int px = x + stepx * mid, py = y + stepy * mid;
+                    cluster.addPortal(px + py * width, (px + out.x) + (py + out.y) * width, direction);
+                    begin = -1;
+                }
+            }
+        }
+
+        boolean passable(int x, int y){
+            return ControlPathfinder.cost(team, cost, x + y * width) != impassable;
+        }
+
+        /**
+         * Searches from a tile without leaving its cluster. Floods the entire cluster if target is -1.
+         * @return whether the target was reached.
+         */
+        boolean searchLocal(LocalSearch l, int index, int start, int target){
+            int cx = index % cwidth * clusterSize, cy = index / cwidth * clusterSize;
+            int cw = Math.min(clusterSize, width - cx), ch = Math.min(clusterSize, height - cy);
+            float[] costs = l.costs;
+            int[] searches = l.searches;
+            PathfindQueue frontier = l.frontier;
+
+            int search = ++l.search;
+            frontier.clear();
+
+            int lstart = local(index, start);
+            searches[lstart] = search;
+            costs[lstart] = 0f;
+            l.from[lstart] = start;
+            frontier.add(start, 0f);
+
+            while(frontier.size > 0){
+                int current = frontier.poll();
+
+                if(current == target){
+                    return true;
+                }
+
+                int x = current % width, y = current / width;
+                float currentCost = costs[local(index, current)];
+
+                for(Point2 point : Geometry.d4){
+                    int nx = x + point.x, ny = y + point.y;
+                    if(nx < cx || ny < cy || nx >= cx + cw || ny >= cy + ch) continue;
+
+                    int next = nx + ny * width;
+                    int add = ControlPathfinder.cost(team, cost, next);
+                    if(add == impassable) continue;
+
+                    float newCost = addCost(currentCost, add);
+                    int lnext = local(index, next);
+
+                    if(searches[lnext] != search || newCost < costs[lnext]){
+                        searches[lnext] = search;
+                        costs[lnext] = newCost;
+                        l.from[lnext] = current;
+                        frontier.add(next, newCost + (target == -1 ? 0f : heuristic(next, target)));
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        /** @return the cost of a tile found by the last local search, or -1 if it was not reached. */
+        float localCost(LocalSearch l, int index, int pos){
+            int local = local(index, pos);
+            return l.searches[local] == l.search ? l.costs[local] : -1f;
+        }
+
+        int local(int index, int pos){
+            return (pos % width - index % cwidth * clusterSize) + (pos / width - index / cwidth * clusterSize) * clusterSize;
+        }
+
+        int clusterOf(int pos){
+            return pos % width / clusterSize + pos / width / clusterSize * cwidth;
+        }
+
+        float heuristic(int a, int b){
+            return Math.abs(a % width - b % width) + Math.abs(a / width - b / width);
+        }
+    }
+}
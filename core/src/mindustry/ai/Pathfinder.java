@@ -10,11 +10,14 @@ import mindustry.core.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
+import mindustry.net.Administration.*;
 import mindustry.world.*;
 import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.storage.*;
 import mindustry.world.meta.*;
 
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 
 public class Pathfinder implements Runnable{
@@ -26,6 +29,8 @@ public class Pathfinder implements Runnable{
     static int wwidth, wheight;
 
     static final int impassable = -1;
+    /** weight of tiles invalidated by a repair that have not been reached again yet */
+    static final int unreachable = Integer.MAX_VALUE;
 
     public static final int
         fieldCore = 0;
@@ -75,7 +80,15 @@ public class Pathfinder implements Runnable{
     TaskQueue queue = new TaskQueue();
     /** Current pathfinding thread */
     @Nullable Thread thread;
+    /** Worker pool for updating flow fields in parallel. Null when running single-threaded. */
+    @Nullable ExecutorService workers;
+    /** Pending flow field updates submitted to the worker pool. Pathfinding thread only. */
+    Seq<Future<?>> futures = new Seq<>();
     IntSeq tmpArray = new IntSeq();
+    /** positions of the tiles changed by the last tile update. Main thread only. */
+    IntSeq changedTiles = new IntSeq();
+    /** temporary arrays for repairing flow fields. Pathfinding thread only. */
+    IntSeq repairStack = new IntSeq(), repairRegion = new IntSeq();
 
     public Pathfinder(){
         clearCache();
@@ -201,6 +214,11 @@ public class Pathfinder implements Runnable{
         stop();
         if(net.client()) return;
 
+        int workerCount = Config.pathfinderThreads.num();
+        if(workerCount > 1){
+            workers = Threads.executor("Pathfinder Worker", Math.min(workerCount, OS.cores));
+        }
+
         thread = new Thread(this, "Pathfinder");
         thread.setPriority(Thread.MIN_PRIORITY);
         thread.setDaemon(true);
@@ -213,18 +231,26 @@ public class Pathfinder implements Runnable{
             thread.interrupt();
             thread = null;
         }
+        if(workers != null){
+            workers.shutdownNow();
+            workers = null;
+        }
         queue.clear();
     }
 
     /** Update a tile in the internal pathfinding grid.
-     * Causes a complete pathfinding recalculation. Main thread only. */
+     * Repairs the affected region of every flow field if possible, otherwise causes a complete pathfinding recalculation. Main thread only. */
     public void updateTile(Tile tile){
         if(net.client()) return;
 
+        IntSeq changed = changedTiles;
+        changed.clear();
+
         tile.getLinkedTiles(t -> {
             int pos = t.array();
             if(pos < tiles.length){
                 tiles[pos] = packTile(t);
+                changed.add(pos);
             }
         });
 
@@ -232,15 +258,30 @@ public class Pathfinder implements Runnable{
         for(Flowfield path : mainList){
             if(path != null){
                 synchronized(path.targets){
+                    tmpArray.clear();
+                    tmpArray.addAll(path.targets);
                     path.updateTargetPositions();
+
+                    //targets were added or removed, so weights can change anywhere
+                    if(!tmpArray.equals(path.targets)){
+                        path.targetsChanged = true;
+                    }
                 }
             }
         }
 
-        //mark every flow field as dirty, so it updates when it's done
+        boolean repair = Config.incrementalPathfinding.bool();
+        int[] positions = changed.toArray();
+
         queue.post(() -> {
             for(Flowfield data : threadList){
-                data.dirty = true;
+                if(repair && data.canRepair()){
+                    repairField(data, positions);
+                }else{
+                    //mark the flow field as dirty, so it updates when it's done
+                    data.dirty = true;
+                }
+                data.targetsChanged = false;
             }
         });
     }
@@ -253,18 +294,34 @@ public class Pathfinder implements Runnable{
             try{
 
                 if(state.isPlaying()){
+                    //tasks may touch any flow field, so they must never run while workers are active
                     queue.run();
 
-                    //each update time (not total!) no longer than maxUpdate
-                    for(Flowfield data : threadList){
+                    ExecutorService pool = workers;
 
-                        //if it's dirty and there is nothing to update, begin updating once more
-                        if(data.dirty && data.frontier.size == 0){
-                            updateTargets(data);
-                            data.dirty = false;
+                    if(pool == null){
+                        //each update time (not total!) no longer than maxUpdate
+                        for(Flowfield data : threadList){
+                            updateField(data);
+                        }
+                    }else{
+                        //every field owns its own weights and frontier, so they can be updated independently
+                        futures.clear();
+                        for(Flowfield data : threadList){
+                            if(data.dirty || data.frontier.size > 0){
+                                futures.add(pool.submit(() -> updateField(data)));
+                            }
                         }
 
-                        updateFrontier(data, maxUpdate);
+                        //wait for all fields to finish before running any more tasks
+                        for(var future : futures){
+                            try{
+                                future.get();
+                            }catch(ExecutionException e){
+                                Log.err(e.getCause());
+                            }
+                        }
+                        futures.clear();
                     }
                 }
 
@@ -274,12 +331,26 @@ public class Pathfinder implements Runnable{
                     //stop looping when interrupted externally
                     return;
                 }
+            }catch(InterruptedException | RejectedExecutionException e){
+                //the worker pool was shut down, stop looping
+                return;
             }catch(Throwable e){
                 e.printStackTrace();
             }
         }
     }
 
+    /** Starts a new search if needed, then advances the frontier for at most maxUpdate. Pathfinding thread or worker only. */
+    private void updateField(Flowfield data){
+        //if it's dirty and there is nothing to update, begin updating once more
+        if(data.dirty && data.frontier.size == 0){
+            updateTargets(data);
+            data.dirty = false;
+        }
+
+        updateFrontier(data, maxUpdate);
+    }
+
     public Flowfield getField(Team team, int costType, int fieldType){
         if(cache[team.id][costType][fieldType] == null){
             Flowfield field = fieldTypes.get(fieldType).get();
@@ -353,6 +424,7 @@ public class Pathfinder implements Runnable{
 
         //increment search, but do not clear the frontier
         path.search++;
+        path.searching = true;
 
         synchronized(path.targets){
             //add targets
@@ -380,6 +452,7 @@ public class Pathfinder implements Runnable{
     private void registerPath(Flowfield path){
         path.lastUpdateTime = Time.millis();
         path.setup(tiles.length);
+        path.searching = true;
 
         threadList.add(path);
 
@@ -395,6 +468,7 @@ public class Pathfinder implements Runnable{
         for(int i = 0; i < path.targets.size; i++){
             int pos = path.targets.get(i);
             path.weights[pos] = 0;
+            path.searches[pos] = path.search;
             path.frontier.addFirst(pos);
         }
     }
@@ -417,7 +491,8 @@ public class Pathfinder implements Runnable{
                 return;
             }
 
-            if(cost != impassable){
+            //tiles invalidated by a repair after being added are re-added once they are reached again
+            if(cost != impassable && cost != unreachable){
                 for(Point2 point : Geometry.d4){
 
                     int dx = (tile % wwidth) + point.x, dy = (tile / wwidth) + point.y;
@@ -430,7 +505,7 @@ public class Pathfinder implements Runnable{
                     if((path.weights[newPos] > cost + otherCost || path.searches[newPos] < path.search) && otherCost != impassable){
                         path.frontier.addFirst(newPos);
                         path.weights[newPos] = cost + otherCost;
-                        path.searches[newPos] = (short)path.search;
+                        path.searches[newPos] = path.search;
                     }
                 }
             }
@@ -446,11 +521,118 @@ public class Pathfinder implements Runnable{
 
         //there WERE some things in the frontier, but now they are gone, so the path is done; copy over latest data
         if(hadAny && path.frontier.size == 0){
-            System.arraycopy(path.weights, 0, path.completeWeights, 0, path.weights.length);
-            path.hasComplete = true;
+            publish(path);
+        }
+    }
+
+    /** Finishes a search or repair and copies the weights over for the main thread. Pathfinding thread only. */
+    private void publish(Flowfield path){
+        path.searching = false;
+
+        int[] weights = path.weights, searches = path.searches;
+        int search = path.search;
+
+        //tiles that the last search or repair did not reach can't get to a target anymore, the same as if the field was created now
+        for(int i = 0; i < weights.length; i++){
+            if(searches[i] != search){
+                weights[i] = impassable;
+            }
+        }
+
+        //write into the back buffer and swap, so the main thread never reads a partially copied array
+        int[] next = path.spareWeights;
+        System.arraycopy(weights, 0, next, 0, weights.length);
+        path.spareWeights = path.completeWeights;
+        path.completeWeights = next;
+        path.hasComplete = true;
+    }
+
+    /**
+     * Repairs a flow field after the costs of some tiles changed, without starting a new search.
+     * Every tile whose weight may have been derived from a changed tile is invalidated, and the valid tiles bordering that region are added to the frontier,
+     * so only the affected region is flooded again. Changed tiles also invalidate their neighbors, as their near* flags may have changed.
+     * Pathfinding thread only.
+     */
+    private void repairField(Flowfield path, int[] changed){
+        int[] weights = path.weights, searches = path.searches;
+        int search = path.search, stale = search - 1;
+        IntSeq stack = repairStack, region = repairRegion;
+        stack.clear();
+        region.clear();
+
+        for(int pos : changed){
+            invalidate(path, pos, stack);
+
+            int x = pos % wwidth, y = pos / wwidth;
+            for(Point2 point : Geometry.d4){
+                int dx = x + point.x, dy = y + point.y;
+                if(dx < 0 || dy < 0 || dx >= wwidth || dy >= wheight) continue;
+
+                invalidate(path, dx + dy * wwidth, stack);
+            }
+        }
+
+        //walk every tile whose weight could have come from an invalidated tile
+        while(stack.size > 0){
+            int tile = stack.pop();
+            int weight = weights[tile];
+
+            //tiles that were never reached can't be the source of any other weight
+            if(weight != impassable && weight != unreachable){
+                int x = tile % wwidth, y = tile / wwidth;
+
+                for(Point2 point : Geometry.d4){
+                    int dx = x + point.x, dy = y + point.y;
+                    if(dx < 0 || dy < 0 || dx >= wwidth || dy >= wheight) continue;
+
+                    int newPos = dx + dy * wwidth;
+                    int otherCost = path.cost.getCost(path.team.id, tiles[newPos]);
+
+                    if(searches[newPos] == search && otherCost != impassable && weights[newPos] == weight + otherCost){
+                        invalidate(path, newPos, stack);
+                    }
+                }
+            }
+
+            weights[tile] = unreachable;
+            region.add(tile);
+        }
+
+        //flood the invalidated region again from its valid borders
+        for(int i = 0; i < region.size; i++){
+            int tile = region.items[i];
+            int x = tile % wwidth, y = tile / wwidth;
+
+            for(Point2 point : Geometry.d4){
+                int dx = x + point.x, dy = y + point.y;
+                if(dx < 0 || dy < 0 || dx >= wwidth || dy >= wheight) continue;
+
+                int newPos = dx + dy * wwidth;
+                if(searches[newPos] == search && weights[newPos] != impassable && weights[newPos] != unreachable){
+                    path.frontier.addFirst(newPos);
+                }
+            }
+        }
+
+        //marked tiles are stale, so the frontier will overwrite them regardless of weight
+        for(int i = 0; i < region.size; i++){
+            searches[region.items[i]] = stale;
+        }
+
+        //nothing borders the region, so it was cut off and the frontier will never publish it
+        if(region.size > 0 && path.frontier.size == 0){
+            publish(path);
         }
     }
 
+    /** Marks a tile as invalid and queues it for the repair walk. Targets are never invalidated. */
+    private void invalidate(Flowfield path, int pos, IntSeq stack){
+        if(path.weights[pos] == 0 || path.searches[pos] == -path.search) return;
+
+        path.searches[pos] = -path.search;
+        stack.add(pos);
+    }
+
     public static class EnemyCoreField extends Flowfield{
         @Override
         protected void getPositions(IntSeq out){
@@ -496,13 +678,19 @@ public class Pathfinder implements Runnable{
         protected volatile boolean hasComplete;
         /** If true, this flow field needs updating. This flag is only set to false once the flow field finishes and the weights are copied over. */
         protected boolean dirty = false;
+        /** If true, a complete search is in progress. Pathfinding thread only. */
+        boolean searching;
+        /** If true, the targets changed since the last tile update, so this field can't be repaired. */
+        volatile boolean targetsChanged;
 
         /** costs of getting to a specific tile */
         public int[] weights;
         /** search IDs of each position - the highest, most recent search is prioritized and overwritten */
         public int[] searches;
-        /** the last "complete" weights of this tilemap. */
-        public int[] completeWeights;
+        /** the last "complete" weights of this tilemap. Swapped atomically when a search finishes. */
+        public volatile int[] completeWeights;
+        /** back buffer for completeWeights. Pathfinding thread only. */
+        int[] spareWeights;
 
         /** search frontier, these are Pos objects */
         IntQueue frontier = new IntQueue();
@@ -519,6 +707,7 @@ public class Pathfinder implements Runnable{
             this.weights = new int[length];
             this.searches = new int[length];
             this.completeWeights = new int[length];
+            this.spareWeights = new int[length];
             this.frontier.ensureCapacity((length) / 4);
             this.initialized = true;
         }
@@ -527,6 +716,11 @@ public class Pathfinder implements Runnable{
             return hasComplete && completeWeights != null;
         }
 
+        /** @return whether tile changes can be repaired locally, instead of requiring a new search. */
+        boolean canRepair(){
+            return hasComplete && !dirty && !searching && !targetsChanged;
+        }
+
         public void updateTargetPositions(){
             targets.clear();
             getPositions(targets);
@@ -7,15 +7,19 @@ import arc.scene.event.Touchable;
 import arc.scene.ui.layout.Table;
 import arc.scene.ui.layout.WidgetGroup;
 import arc.struct.IntMap;
+import arc.struct.LongSeq;
 import arc.util.Log;
+import arc.util.Threads;
 import arc.util.Time;
-import arc.util.io.ByteBufferOutput;
 import arc.util.io.Reads;
+import arc.util.io.ReusableByteOutStream;
 import arc.util.io.Writes;
 import mindustry.Vars;
 import mindustry.core.GameState;
+import mindustry.core.NetClient;
 import mindustry.game.EventType;
 import mindustry.net.Net;
+import mindustry.net.NetworkIO;
 import mindustry.net.Packet;
 import mindustry.net.Packets;
 import mindustry.ui.Styles;
@@ -23,26 +27,44 @@ import mindustry.ui.dialogs.BaseDialog;
 
 import java.io.*;
 import java.lang.reflect.Field;
-import java.nio.ByteBuffer;
 import java.util.Date;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import static mindustry.Vars.*;
 
+/**
+ * Records and plays back replay files.
+ * Version 3 replays consist of independently compressed blocks: packet blocks, and periodic keyframes holding the full world in the same format as a world stream.
+ * The file ends with an index of the keyframes, so seeking only needs to load the nearest keyframe and fast-forward the packets after it.
+ */
 public class ReplayController {
-    public static final int version = 2;
-    Writes writes;
+    public static final int version = 3;
+    static final byte blockPackets = 0, blockKeyframe = 1, blockIndex = 2;
+    /** Block header: type, start time, end time, raw size, compressed size. */
+    static final int blockHeaderSize = 1 + 8 + 8 + 4 + 4;
+    static final int footerMagic = 0x4d524550;
+    static final long keyframeInterval = 30000000000L;
+    static final int maxBlockSize = 64 * 1024;
     Reads reads;
     long startTime, allTime;
     long lastTime, nextTime;
     long length, skip = 0;
     Thread thread;
     Fi dir = Vars.dataDirectory.child("replays");
-    DeflaterOutputStream dos;
-    ByteBuffer tmpBuf = ByteBuffer.allocate(32768);
-    Writes tmpWr = new Writes(new ByteBufferOutput(tmpBuf));
-    boolean recording = false, recordEnabled = false;
+    long lastKeyframe;
+    public final ReplayWriter writer = new ReplayWriter();
+    /** Packets are serialized on the thread that received them, into a buffer that grows with the largest packet. */
+    ThreadLocal<ReusableByteOutStream> packetBytes = Threads.local(ReusableByteOutStream::new);
+    ThreadLocal<Writes> packetWrites = Threads.local(() -> new Writes(new DataOutputStream(packetBytes.get())));
+    /** Playback state of version 3 replays. */
+    RandomAccessFile file;
+    File replayFile;
+    long dataStart, dataEnd, position;
+    long[] keyframeTimes = {}, keyframeOffsets = {};
+    ByteArrayInputStream block;
+    boolean statsLoaded;
+    volatile boolean recording = false;
+    boolean recordEnabled = false;
     Table controller = new Table();
     IntMap<Integer> map = new IntMap<>();
     ReplayData now = null;
@@ -85,6 +107,7 @@ public class ReplayController {
             Core.scene.add(g);
             dialog = new BaseDialog("回放统计");
             dialog.shown(() -> {
+                loadStats();
                 dialog.cont.clear();
                 if (now == null) {
                     dialog.cont.add("未加载回放!");
@@ -94,6 +117,7 @@ public class ReplayController {
                 dialog.cont.add("回放创建时间:" + now.time).row();
                 dialog.cont.add("服务器ip:" + now.ip).row();
                 dialog.cont.add("玩家名:" + now.name).row();
+                if (now.version >= 3) dialog.cont.add("关键帧:" + keyframeTimes.length).row();
                 int secs = (int) (length / 1000000000);
                 dialog.cont.add("回放长度:" + (secs / 3600) + ":" + (secs / 60 % 60) + ":" + (secs % 60)).row();
                 dialog.cont.pane(t -> map.keys().toArray().each(b -> t.add(Net.newPacket((byte) b).getClass().getSimpleName() + " " + map.get(b)).row())).growX().row();
@@ -102,7 +126,8 @@ public class ReplayController {
             controller.table(t -> {
                 t.setBackground(Styles.black3);
                 t.table(tt -> {
-                    //tt.button("快进10s", () -> skip = timeEscaped() + 10000000000L);//TODO bug
+                    tt.button("后退10s", () -> seek(timeEscaped() - 10000000000L));
+                    tt.button("快进10s", () -> seek(timeEscaped() + 10000000000L));
                     tt.button("倍率x2", () -> changeGameSpeed(gameSpeed * 2));
                     tt.button("倍率/2", () -> changeGameSpeed(gameSpeed / 2));
                     tt.button("暂停回放", () -> changeGameSpeed(0));
@@ -119,6 +144,10 @@ public class ReplayController {
             controller.add().grow();
         });
         Events.run(EventType.Trigger.update, () -> {
+            //world data can only be written between packets, when no world stream is being received
+            if (recording && net.client() && state.isGame() && !netClient.isConnecting() && net.getCurrentStream() == null && Time.timeSinceNanos(lastKeyframe) >= keyframeInterval) {
+                writeKeyframe();
+            }
             synchronized (this) {
                 if (state.getState() == GameState.State.menu && !netClient.isConnecting()) {
                     reads = null;
@@ -145,42 +174,41 @@ public class ReplayController {
     public void createReplay(String ip) {
         if (!recordEnabled) return;
         stop();
+        DataOutputStream out;
         try {
-            writes = new Writes(new DataOutputStream(dos = new DeflaterOutputStream(new FileOutputStream(dir.child(new Date().getTime() + ".mrep").file()))));
-        } catch (FileNotFoundException e) {
+            Writes writes = new Writes(out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dir.child(new Date().getTime() + ".mrep").file()))));
+            //the header is not compressed, so the blocks after it can be found with their offsets
+            writes.i(version);
+            writes.l(new Date().getTime());
+            writes.str(ip);
+            writes.str(Vars.player.name.trim());
+        } catch (Exception e) {
             Log.err("创建回放出错!", e);
             return;
         }
-        writes.i(version);
-        writes.l(new Date().getTime());
-        writes.str(ip);
-        writes.str(Vars.player.name.trim());
+        writer.open(out);
+        lastKeyframe = startTime = Time.nanos();
         recording = true;
-        startTime = Time.nanos();
     }
 
     public void stop() {
+        if (!recording) return;
         recording = false;
-        try {
-            dos.close();
-        } catch (Exception ignored) {
-        }
+        writer.finish();
     }
 
-    synchronized public void writePacket(Packet p) {
+    public void writePacket(Packet p) {
         if (!recording || p instanceof Packets.WorldStream) return;
         try {
             byte id = Net.getPacketId(p);
             try {
-                writes.l(Time.nanos() - startTime);
-                writes.b(id);
-                tmpBuf.position(0);
+                long time = Time.nanos() - startTime;
+                ReusableByteOutStream bytes = packetBytes.get();
+                bytes.reset();
                 writing = true;
-                p.write(tmpWr);
+                p.write(packetWrites.get());
                 writing = false;
-                int l = tmpBuf.position();
-                writes.s(l);
-                writes.b(tmpBuf.array(), 0, l);
+                writer.packet(time, id, bytes);
             } catch (Exception e) {
                 net.disconnect();
                 Core.app.post(() -> ui.showException("录制出错!", e));
@@ -189,6 +217,19 @@ public class ReplayController {
         }
     }
 
+    /** Captures the world on the main thread; compressing and writing it is left to the writer thread. */
+    private void writeKeyframe() {
+        lastKeyframe = Time.nanos();
+        try {
+            long time = Time.nanos() - startTime;
+            ReusableByteOutStream data = writer.keyframeBuffer();
+            NetworkIO.writeWorld(player, data);
+            writer.keyframe(time, data);
+        } catch (Exception e) {
+            Log.err("写入回放关键帧出错!", e);
+        }
+    }
+
     synchronized private long timeEscaped() {
         long escaped = (long) ((Time.nanos() - lastTime) * gameSpeed);
         allTime += escaped;
@@ -196,18 +237,93 @@ public class ReplayController {
         return allTime;
     }
 
-    synchronized private void readNextPacket() {
+    synchronized private void readNextPacket() throws IOException {
         long escaped = timeEscaped();
         if (escaped < nextTime && skip == 0) {
             Thread.yield();
             return;
         }
+        if (file != null && block.available() == 0) nextBlock();
         nextTime = reads.l();
         Packet p = Net.newPacket(reads.b());
         int l = reads.us();
         p.read(reads, l);
         Core.app.post(() -> net.handleClientReceived(p));
-        if (skip != 0 && escaped > skip) skip = 0;
+        if (skip != 0 && nextTime >= skip) {
+            allTime = nextTime;
+            lastTime = Time.nanos();
+            skip = 0;
+        }
+    }
+
+    /** Reads the next packet block. Keyframes are skipped, as the packets before them already built the same world. */
+    private void nextBlock() throws IOException {
+        while (true) {
+            if (position >= dataEnd) throw new EOFException();
+            file.seek(position);
+            byte type = file.readByte();
+            file.skipBytes(16);
+            int size = file.readInt(), compressedSize = file.readInt();
+            position += blockHeaderSize + compressedSize;
+            if (type != blockPackets) continue;
+            byte[] data = new byte[compressedSize];
+            file.readFully(data);
+            byte[] raw = new byte[size];
+            new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data))).readFully(raw);
+            setBlock(raw);
+            return;
+        }
+    }
+
+    private void setBlock(byte[] raw) {
+        block = new ByteArrayInputStream(raw);
+        reads = new Reads(new DataInputStream(block));
+    }
+
+    /** Jumps to a time of the replay. Only version 3 replays can go back, older ones are fast-forwarded. */
+    synchronized public void seek(long target) {
+        if (reads == null) return;
+        target = Math.max(Math.min(target, length), 0);
+        long current = allTime;
+        int keyframe = -1;
+        for (int i = 0; i < keyframeTimes.length && keyframeTimes[i] <= target; i++) {
+            keyframe = i;
+        }
+
+        try {
+            if (file == null || (target >= current && (keyframe < 0 || keyframeTimes[keyframe] <= current))) {
+                //the nearest keyframe is behind the current position, replaying the packets in between is cheaper
+                if (target > current) skip = target;
+            } else if (keyframe < 0) {
+                //before the first keyframe; the first block starts with the world data sent by the server
+                position = dataStart;
+                setBlock(new byte[0]);
+                nextTime = allTime = 0;
+                skip = Math.max(target, 1);
+            } else {
+                loadKeyframe(keyframe);
+                skip = target > keyframeTimes[keyframe] ? target : 0;
+            }
+        } catch (IOException e) {
+            Log.err("回放跳转出错!", e);
+        }
+        lastTime = Time.nanos();
+    }
+
+    private void loadKeyframe(int index) throws IOException {
+        file.seek(keyframeOffsets[index] + blockHeaderSize - 4);
+        byte[] data = new byte[file.readInt()];
+        file.readFully(data);
+        position = file.getFilePointer();
+        setBlock(new byte[0]);
+        nextTime = allTime = keyframeTimes[index];
+        Core.app.post(() -> {
+            NetClient.worldDataBegin();
+            //keyframes are compressed the same way as world streams, so the block can be passed on as is
+            Packets.WorldStream stream = new Packets.WorldStream();
+            stream.stream = new ByteArrayInputStream(data);
+            net.handleClientReceived(stream);
+        });
     }
 
     public void shouldRecord(boolean should) {
@@ -226,33 +342,31 @@ public class ReplayController {
         return null;
     }
 
-    public void startPlay(File input) {
+    synchronized public void startPlay(File input) {
         gameSpeed = 1f;
-        Reads r = createReads(input);
-        if (r == null) return;
-        int version = r.i();
-        Date time = new Date(r.l());
-        String ip = r.str();
-        String name = r.str();
-        Log.info("version: @, time: @, ip: @, name: @", version, time, ip, name);
-        now = new ReplayData(version, time, ip, name);
-        while (true) {
-            try {
-                long l = r.l();
-                byte id = r.b();
-                r.skip(r.us());
-                map.put(id, map.get(id, 0) + 1);
-                length = l;
-            } catch (Exception e) {
-                break;
+        closeFile();
+        map.clear();
+        statsLoaded = false;
+        replayFile = input;
+        keyframeTimes = keyframeOffsets = new long[0];
+        String ip;
+        try {
+            //version 3 starts with an uncompressed header, older versions are compressed as a whole
+            RandomAccessFile raf = new RandomAccessFile(input, "r");
+            if (raf.readInt() >= 3) {
+                file = raf;
+                ip = openIndexed(raf);
+            } else {
+                raf.close();
+                ip = openLinear(input);
             }
+        } catch (Exception e) {
+            Log.err("读取回放出错!", e);
+            closeFile();
+            return;
         }
-        r = createReads(input);
-        r.skip(12);
-        r.str();
-        r.str();
+        if (ip == null) return;
         replaying = true;
-        reads = r;
         logic.reset();
         net.reset();
         try {
@@ -278,12 +392,139 @@ public class ReplayController {
         }
     }
 
-    public void stopPlay() {
+    private String openIndexed(RandomAccessFile raf) throws IOException {
+        raf.seek(0);
+        Reads r = new Reads(raf);
+        now = new ReplayData(r.i(), new Date(r.l()), r.str(), r.str());
+        Log.info("version: @, time: @, ip: @, name: @", now.version, now.time, now.ip, now.name);
+        dataStart = position = raf.getFilePointer();
+        dataEnd = raf.length();
+
+        LongSeq keyframes = new LongSeq();
+        boolean indexed = false;
+        if (raf.length() >= dataStart + 12) {
+            raf.seek(raf.length() - 12);
+            long indexOffset = raf.readLong();
+            if (raf.readInt() == footerMagic && indexOffset >= dataStart && indexOffset < raf.length()) {
+                raf.seek(indexOffset);
+                if (raf.readByte() == blockIndex) {
+                    int amount = raf.readInt();
+                    for (int i = 0; i < amount * 2; i++) {
+                        keyframes.add(raf.readLong());
+                    }
+                    length = raf.readLong();
+                    dataEnd = indexOffset;
+                    indexed = true;
+                }
+            }
+        }
+
+        if (!indexed) {
+            //the recording was not finished properly, find the keyframes by walking the block headers
+            length = 0;
+            long offset = dataStart;
+            while (offset + blockHeaderSize <= raf.length()) {
+                raf.seek(offset);
+                byte type = raf.readByte();
+                long start = raf.readLong(), end = raf.readLong();
+                raf.readInt();
+                long next = offset + blockHeaderSize + raf.readInt();
+                if (type == blockIndex || next > raf.length()) break;
+                if (type == blockKeyframe) {
+                    keyframes.add(start);
+                    keyframes.add(offset);
+                }
+                length = Math.max(length, end);
+                offset = next;
+            }
+            dataEnd = offset;
+        }
+
+        keyframeTimes = new long[keyframes.size / 2];
+        keyframeOffsets = new long[keyframes.size / 2];
+        for (int i = 0; i < keyframeTimes.length; i++) {
+            keyframeTimes[i] = keyframes.get(i * 2);
+            keyframeOffsets[i] = keyframes.get(i * 2 + 1);
+        }
+        setBlock(new byte[0]);
+        return now.ip;
+    }
+
+    private String openLinear(File input) {
+        Reads r = createReads(input);
+        if (r == null) return null;
+        int version = r.i();
+        Date time = new Date(r.l());
+        String ip = r.str();
+        String name = r.str();
+        Log.info("version: @, time: @, ip: @, name: @", version, time, ip, name);
+        now = new ReplayData(version, time, ip, name);
+        while (true) {
+            try {
+                long l = r.l();
+                byte id = r.b();
+                r.skip(r.us());
+                map.put(id, map.get(id, 0) + 1);
+                length = l;
+            } catch (Exception e) {
+                break;
+            }
+        }
+        statsLoaded = true;
+        r = createReads(input);
+        r.skip(12);
+        r.str();
+        r.str();
+        reads = r;
+        return ip;
+    }
+
+    /** Counts the packets of a version 3 replay. This needs to decompress every block, so it is only done for the info dialog. */
+    private void loadStats() {
+        if (statsLoaded || replayFile == null) return;
+        statsLoaded = true;
+        try (RandomAccessFile raf = new RandomAccessFile(replayFile, "r")) {
+            long offset = dataStart;
+            while (offset < dataEnd) {
+                raf.seek(offset);
+                byte type = raf.readByte();
+                raf.skipBytes(16);
+                int size = raf.readInt(), compressedSize = raf.readInt();
+                offset += blockHeaderSize + compressedSize;
+                if (type != blockPackets) continue;
+                byte[] data = new byte[compressedSize];
+                raf.readFully(data);
+                Reads r = new Reads(new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data))));
+                int read = 0;
+                while (read < size) {
+                    r.l();
+                    byte id = r.b();
+                    int l = r.us();
+                    r.skip(l);
+                    map.put(id, map.get(id, 0) + 1);
+                    read += 8 + 1 + 2 + l;
+                }
+            }
+        } catch (Exception e) {
+            Log.err("读取回放统计出错!", e);
+        }
+    }
+
+    private void closeFile() {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (Exception ignored) {
+        }
+        file = null;
+    }
+
+    synchronized public void stopPlay() {
         reads = null;
         replaying = false;
+        closeFile();
     }
 
-
     public void showInfo() {
         if(dialog != null) dialog.show();
     }
@@ -0,0 +1,252 @@
+package mindustry.arcModule;
+
+import arc.struct.LongSeq;
+import arc.util.Log;
+import arc.util.Threads;
+import arc.util.Time;
+import arc.util.io.ReusableByteOutStream;
+import arc.util.io.Writes;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import static mindustry.arcModule.ReplayController.*;
+
+/**
+ * Writes replay files on a dedicated thread.
+ * Packets are handed over through a lock-free ring buffer, and are batched and compressed in blocks by the writer thread, so recording never blocks packet handling.
+ * If the writer falls behind, producers wait for a short time before dropping packets.
+ * Keyframes are only captured on the calling thread; they are handed over without copying, and compressed by the writer thread.
+ */
+public class ReplayWriter {
+    static final int capacity = 8192;
+    static final long maxWait = 2000000L;
+    static final int typeOpen = 0, typePacket = 1, typeKeyframe = 2, typeFinish = 3;
+
+    final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(capacity);
+    /** Next entry to be read by the writer, next slot to be claimed by a producer. */
+    final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    /** Packets written, packets dropped because the ring was full or they were too large, and packets that had to wait for space. */
+    public final AtomicLong recorded = new AtomicLong(), dropped = new AtomicLong(), backpressured = new AtomicLong();
+    /** Buffers of keyframes that were written, to capture the next ones into. */
+    final ConcurrentLinkedQueue<ReusableByteOutStream> keyframeBuffers = new ConcurrentLinkedQueue<>();
+
+    /** State of the writer thread. */
+    DataOutputStream out;
+    Writes writes;
+    long written, blockStart, blockEnd;
+    LongSeq keyframes = new LongSeq();
+    ReusableByteOutStream blockBuf = new ReusableByteOutStream(), compressed = new ReusableByteOutStream();
+    Writes blockWrites = new Writes(new DataOutputStream(blockBuf));
+    Deflater deflater = new Deflater();
+    byte[] deflateBuf = new byte[8192];
+
+    public ReplayWriter() {
+        Threads.daemon("ReplayWriter", () -> {
+            while (true) {
+                Entry e = poll();
+                if (e == null) {
+                    LockSupport.parkNanos(1000000L);
+                    continue;
+                }
+                try {
+                    handle(e);
+                } catch (Exception ex) {
+                    Log.err("写入回放出错!", ex);
+                    close();
+                }
+            }
+        });
+    }
+
+    /** Starts a new replay file. The header must already be written to the stream. */
+    public void open(DataOutputStream out) {
+        recorded.set(0);
+        dropped.set(0);
+        backpressured.set(0);
+        Entry e = new Entry(typeOpen, 0, (byte)0, null, 0);
+        e.out = out;
+        offer(e, false);
+    }
+
+    /** Queues a serialized packet. The bytes are copied, so the buffer can be reused right away. */
+    public void packet(long time, byte id, ReusableByteOutStream bytes) {
+        //packet lengths are stored as unsigned shorts
+        if (bytes.size() > 0xffff) {
+            dropped.incrementAndGet();
+            return;
+        }
+        byte[] data = new byte[bytes.size()];
+        System.arraycopy(bytes.getBytes(), 0, data, 0, data.length);
+        if (offer(new Entry(typePacket, time, id, data, data.length), true)) {
+            recorded.incrementAndGet();
+        }
+    }
+
+    /** @return an empty buffer to capture a keyframe into, which must be passed to {@link #keyframe(long, ReusableByteOutStream)} */
+    public ReusableByteOutStream keyframeBuffer() {
+        ReusableByteOutStream buffer = keyframeBuffers.poll();
+        if (buffer == null) buffer = new ReusableByteOutStream();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Queues a keyframe with the world data from {@link mindustry.net.NetworkIO#writeWorld}, which is not compressed yet.
+     * The buffer is owned by the writer thread afterwards, and is reused once the keyframe was written.
+     */
+    public void keyframe(long time, ReusableByteOutStream world) {
+        Entry e = new Entry(typeKeyframe, time, (byte)0, world.getBytes(), world.size());
+        e.buffer = world;
+        offer(e, false);
+    }
+
+    /** Writes the index and closes the file once all queued packets are written. */
+    public void finish() {
+        offer(new Entry(typeFinish, 0, (byte)0, null, 0), false);
+    }
+
+    private boolean offer(Entry e, boolean droppable) {
+        long waitStart = 0;
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() >= capacity) {
+                if (waitStart == 0) {
+                    waitStart = Time.nanos();
+                    backpressured.incrementAndGet();
+                } else if (droppable && Time.timeSinceNanos(waitStart) > maxWait) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                Thread.yield();
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                //the writer treats a null slot as not published yet
+                ring.set((int) (t % capacity), e);
+                return true;
+            }
+        }
+    }
+
+    private Entry poll() {
+        long h = head.get();
+        int index = (int) (h % capacity);
+        Entry e = ring.get(index);
+        if (e == null) return null;
+        ring.set(index, null);
+        head.set(h + 1);
+        return e;
+    }
+
+    private void handle(Entry e) throws IOException {
+        switch (e.type) {
+            case typeOpen -> {
+                if (writes != null) writeIndex();
+                out = e.out;
+                writes = new Writes(out);
+                written = out.size();
+                keyframes.clear();
+                blockBuf.reset();
+            }
+            case typePacket -> {
+                if (writes == null) return;
+                if (blockBuf.size() == 0) blockStart = e.time;
+                blockEnd = e.time;
+                blockWrites.l(e.time);
+                blockWrites.b(e.id);
+                blockWrites.s(e.length);
+                blockWrites.b(e.data, 0, e.length);
+                if (blockBuf.size() >= maxBlockSize) flushBlock();
+            }
+            case typeKeyframe -> {
+                try {
+                    if (writes == null) return;
+                    //all packets before the keyframe are already applied to the world, so they must be in an earlier block
+                    flushBlock();
+                    keyframes.add(e.time);
+                    keyframes.add(written);
+                    writeBlock(blockKeyframe, e.time, e.time, e.data, e.length);
+                } finally {
+                    keyframeBuffers.offer(e.buffer);
+                }
+            }
+            case typeFinish -> {
+                if (writes == null) return;
+                writeIndex();
+                Log.info("回放录制完成: @个数据包, 丢弃@个, 等待@次", recorded.get(), dropped.get(), backpressured.get());
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        flushBlock();
+        //index: the time and offset of every keyframe, found through the footer at the end of the file
+        long indexOffset = written;
+        writes.b(blockIndex);
+        writes.i(keyframes.size / 2);
+        for (int i = 0; i < keyframes.size; i++) {
+            writes.l(keyframes.get(i));
+        }
+        writes.l(blockEnd);
+        writes.l(indexOffset);
+        writes.i(footerMagic);
+        close();
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockBuf.size() == 0) return;
+        writeBlock(blockPackets, blockStart, blockEnd, blockBuf.getBytes(), blockBuf.size());
+        blockBuf.reset();
+    }
+
+    private void writeBlock(byte type, long start, long end, byte[] bytes, int size) throws IOException {
+        deflater.reset();
+        deflater.setInput(bytes, 0, size);
+        deflater.finish();
+        compressed.reset();
+        while (!deflater.finished()) {
+            compressed.write(deflateBuf, 0, deflater.deflate(deflateBuf));
+        }
+        writes.b(type);
+        writes.l(start);
+        writes.l(end);
+        writes.i(size);
+        writes.i(compressed.size());
+        writes.b(compressed.getBytes(), 0, compressed.size());
+        written += blockHeaderSize + compressed.size();
+    }
+
+    private void close() {
+        try {
+            if (out != null) out.close();
+        } catch (Exception ignored) {
+        }
+        out = null;
+        writes = null;
+        blockBuf.reset();
+    }
+
+    static class Entry {
+        final int type;
+        final long time;
+        final byte id;
+        final byte[] data;
+        final int length;
+        DataOutputStream out;
+        ReusableByteOutStream buffer;
+
+        Entry(int type, long time, byte id, byte[] data, int length) {
+            this.type = type;
+            this.time = time;
+            this.id = id;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
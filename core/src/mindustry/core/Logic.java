@@ -484,7 +484,9 @@ public class Logic implements ApplicationListener{
                 state.envAttrs.add(state.rules.attributes);
                 Groups.weather.each(w -> state.envAttrs.add(w.weather.attrs, w.opacity));
 
+                sleepScheduler.update();
                 Groups.update();
+                logicScheduler.update();
             }
 
             if(runStateCheck){
@@ -55,6 +55,8 @@ public class NetClient implements ApplicationListener{
 
     /** List of entities that were removed, and need not be added while syncing. */
     private IntSet removed = new IntSet();
+    /** ID of the last delta snapshot from the server, and how many of its chunks arrived. -1 if none arrived since the world was loaded. */
+    private int deltaSnapshotId = -1, deltaChunksReceived;
     /** Byte stream for reading in snapshots. */
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
@@ -391,6 +393,7 @@ public class NetClient implements ApplicationListener{
     public static void worldDataBegin(){
         Groups.clear();
         netClient.removed.clear();
+        netClient.deltaSnapshotId = -1;
         logic.reset();
         netClient.connecting = true;
 
@@ -468,9 +471,30 @@ public class NetClient implements ApplicationListener{
             netClient.byteStream.setBytes(data);
             DataInputStream input = netClient.dataStream;
 
+            //chunks of delta snapshots have a negative amount, and start with the snapshot ID and chunk count
+            int id = -1, chunks = 0;
+            if(amount < 0){
+                amount = (short)(-1 - amount);
+                id = input.readInt();
+                chunks = input.readUnsignedShort();
+
+                //chunks of older snapshots are stale and would overwrite newer state
+                if(id < netClient.deltaSnapshotId) return;
+
+                if(id > netClient.deltaSnapshotId){
+                    netClient.deltaSnapshotId = id;
+                    netClient.deltaChunksReceived = 0;
+                }
+            }
+
             for(int j = 0; j < amount; j++){
                 readSyncEntity(input, Reads.get(input));
             }
+
+            //the server only leaves out entities that the client is known to have, which it learns from these acknowledgements
+            if(id != -1 && ++netClient.deltaChunksReceived == chunks){
+                Call.serverPacketUnreliable(NetServer.deltaSnapshotAckPacket, Integer.toString(id));
+            }
         }catch(Exception e){
             //don't disconnect, just log it
             Log.err("Error reading entity snapshot", e);
@@ -507,6 +531,8 @@ public class NetClient implements ApplicationListener{
                     break;
                 }
                 tile.build.readAll(Reads.get(input), tile.build.version());
+                //only buildings that are awake on the server are synced
+                tile.build.noSleep();
             }
         }catch(Exception e){
             Log.err(e);
@@ -552,6 +578,11 @@ public class NetClient implements ApplicationListener{
                 }
             }
 
+            //the server supports delta snapshots; announce support until the first one arrives
+            if(input.available() > 0 && input.readByte() > 0 && netClient.deltaSnapshotId == -1){
+                Call.serverPacketUnreliable(NetServer.deltaSnapshotAckPacket, "-1");
+            }
+
         }catch(IOException e){
             throw new RuntimeException(e);
         }
@@ -27,6 +27,7 @@ import mindustry.world.*;
 import java.io.*;
 import java.net.*;
 import java.nio.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static arc.util.Log.*;
@@ -35,11 +36,15 @@ import static mindustry.Vars.*;
 public class NetServer implements ApplicationListener{
     /** note that snapshots are compressed, so the max snapshot size here is above the typical UDP safe limit */
     private static final int maxSnapshotSize = 800;
+    /**
+     * Custom packet type with which clients acknowledge delta entity snapshots. An ID of -1 only announces support for them.
+     * Delta snapshots are sent as entity snapshots with a negative amount, so no packets are added and peers that never opt in only get full snapshots.
+     */
+    public static final String deltaSnapshotAckPacket = "deltaSnapshotAck";
     private static final int timerBlockSync = 0, timerHealthSync = 1;
     private static final float blockSyncTime = 60 * 6, healthSyncTime = 30;
     private static final FloatBuffer fbuffer = FloatBuffer.allocate(20);
     private static final Writes dataWrites = new Writes(null);
-    private static final IntSeq hiddenIds = new IntSeq();
     private static final IntSeq healthSeq = new IntSeq(maxSnapshotSize / 4 + 1);
     private static final Vec2 vector = new Vec2();
     /** If a player goes away of their server-side coordinates by this distance, they get teleported back. */
@@ -115,11 +120,36 @@ public class NetServer implements ApplicationListener{
     private ReusableByteOutStream syncStream = new ReusableByteOutStream();
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
+    /** Sync data of every entity, written once per snapshot batch and shared by all players. */
+    private ReusableByteOutStream entityBuffer = new ReusableByteOutStream();
+    private DataOutputStream entityData = new DataOutputStream(entityBuffer);
+    /** Start of each entity in the entity buffer (with the end as the last element), and the hash of its data. */
+    private IntSeq entityOffsets = new IntSeq(), entityHashes = new IntSeq();
+    /** Maps entity IDs to their index in the offset and hash arrays. */
+    private IntIntMap entitySlots = new IntIntMap();
+    /** All synced entities, and those that are not units, of the current batch. */
+    private Seq<Syncc> syncEntities = new Seq<>(Syncc.class), syncOthers = new Seq<>(Syncc.class);
+    private Rect interestRect = new Rect();
+    private Seq<Player> snapshotPlayers = new Seq<>();
+    private Seq<PlayerSnapshot> snapshots = new Seq<>();
+    private Seq<Future<?>> snapshotFutures = new Seq<>();
+    private @Nullable ExecutorService snapshotWorkers;
+    private int snapshotThreads = 1;
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons2<Player, String>>> customPacketHandlers = new ObjectMap<>();
 
     public NetServer(){
 
+        addPacketHandler(deltaSnapshotAckPacket, (player, contents) -> {
+            NetConnection con = player.con;
+            int id = Strings.parseInt(contents, Integer.MIN_VALUE);
+            if(con == null || id < -1 || id >= con.snapshotsSent) return;
+
+            //acknowledging anything means the client understands delta snapshots
+            con.deltaSnapshots = true;
+            con.snapshotHistory.ack(id);
+        });
+
         net.handleServer(Connect.class, (con, connect) -> {
             Events.fire(new ConnectionEvent(con));
 
@@ -503,6 +533,8 @@ public class NetServer implements ApplicationListener{
         WorldStream data = new WorldStream();
         data.stream = new ByteArrayInputStream(stream.toByteArray());
         player.con.sendStream(data);
+        //the client recreates all entities, so delta snapshots can't build on anything it received before
+        player.con.resetSnapshots();
 
         debug("Packed @ bytes of world data.", stream.size());
     }
@@ -911,8 +943,93 @@ public class NetServer implements ApplicationListener{
         }
     }
 
+    /** Writes an entity snapshot for a single player. */
     public void writeEntitySnapshot(Player player) throws IOException{
+        snapshotPlayers.clear();
+        snapshotPlayers.add(player);
+        writeEntitySnapshots(snapshotPlayers);
+        snapshotPlayers.clear();
+    }
+
+    /**
+     * Writes entity snapshots for a batch of players. The sync data of every entity is only serialized once, into a shared buffer.
+     * The snapshot of each player is then assembled from that buffer, on the snapshot worker threads if there are any.
+     */
+    public void writeEntitySnapshots(Seq<Player> players) throws IOException{
+        if(players.isEmpty()) return;
+
         byte tps = (byte)Math.min(Core.graphics.getFramesPerSecond(), 255);
+        byte[] coreData = writeCoreData();
+        writeEntityData();
+
+        while(snapshots.size < players.size){
+            snapshots.add(new PlayerSnapshot());
+        }
+
+        //filtering queries the unit quadtree, which can't be used from multiple threads
+        for(int i = 0; i < players.size; i++){
+            PlayerSnapshot snapshot = snapshots.get(i);
+            snapshot.begin(players.get(i));
+            collectSyncEntities(snapshot);
+        }
+
+        updateSnapshotWorkers();
+
+        if(snapshotWorkers == null){
+            for(int i = 0; i < players.size; i++){
+                snapshots.get(i).assemble();
+            }
+        }else{
+            try{
+                for(int i = 0; i < players.size; i++){
+                    snapshotFutures.add(snapshotWorkers.submit(snapshots.get(i)::assemble));
+                }
+
+                for(var future : snapshotFutures){
+                    try{
+                        future.get();
+                    }catch(ExecutionException e){
+                        Log.err("Error assembling entity snapshot", e.getCause());
+                    }
+                }
+            }catch(InterruptedException | RejectedExecutionException e){
+                Log.err("Entity snapshots interrupted", e);
+            }finally{
+                snapshotFutures.clear();
+            }
+        }
+
+        //packets are only sent from the main thread
+        for(int i = 0; i < players.size; i++){
+            PlayerSnapshot snapshot = snapshots.get(i);
+            NetConnection con = snapshot.player.con;
+
+            //write basic state data.
+            Call.stateSnapshot(con, state.wavetime, state.wave, state.enemies, state.isPaused(), state.gameOver,
+            universe.seconds(), tps, GlobalVars.rand.seed0, GlobalVars.rand.seed1, coreData);
+
+            if(snapshot.assembled){
+                for(int j = 0; j < snapshot.chunks.size; j++){
+                    int amount = snapshot.amounts.get(j);
+                    //delta chunks are marked with a negative amount
+                    Call.entitySnapshot(con, (short)(snapshot.delta ? -1 - amount : amount), snapshot.chunks.get(j));
+                }
+
+                if(snapshot.hidden.size > 0){
+                    Call.hiddenSnapshot(con, snapshot.hidden);
+                }
+            }
+
+            con.snapshotsSent++;
+            snapshot.end();
+        }
+
+        syncEntities.clear();
+        syncOthers.clear();
+    }
+
+    /** @return the core data of state snapshots, which is the same for every player. */
+    byte[] writeCoreData() throws IOException{
         syncStream.reset();
         int activeTeams = (byte)state.teams.present.count(t -> t.cores.size > 0);
 
@@ -927,50 +1044,189 @@ public class NetServer implements ApplicationListener{
             }
         }
 
+        //clients that support delta snapshots look for this marker; others ignore the trailing data
+        if(Config.deltaSnapshots.bool()){
+            dataStream.writeByte(1);
+        }
+
         dataStream.close();
+        return syncStream.toByteArray();
+    }
 
-        //write basic state data.
-        Call.stateSnapshot(player.con, state.wavetime, state.wave, state.enemies, state.isPaused(), state.gameOver,
-        universe.seconds(), tps, GlobalVars.rand.seed0, GlobalVars.rand.seed1, syncStream.toByteArray());
+    /** Serializes every synced entity into the shared entity buffer, along with the hash used by delta snapshots. */
+    void writeEntityData() throws IOException{
+        entityBuffer.reset();
+        entityOffsets.clear();
+        entityHashes.clear();
+        entitySlots.clear();
+        syncEntities.clear();
+        syncOthers.clear();
+
+        for(int i = 0; i < Groups.sync.size(); i++){
+            Syncc entity = Groups.sync.index(i);
+            int start = entityBuffer.size();
+
+            entityData.writeInt(entity.id()); //write id
+            entityData.writeByte(entity.classId() & 0xFF); //write type ID
+            entity.writeSync(Writes.get(entityData)); //write entity
+
+            entitySlots.put(entity.id(), entityOffsets.size);
+            entityOffsets.add(start);
+            entityHashes.add(hash(entityBuffer.getBytes(), start, entityBuffer.size()));
+
+            syncEntities.add(entity);
+            if(!(entity instanceof Unit)){
+                syncOthers.add(entity);
+            }
+        }
 
-        syncStream.reset();
+        //end of the last entity
+        entityOffsets.add(entityBuffer.size());
+    }
 
-        hiddenIds.clear();
-        int sent = 0;
+    /**
+     * Collects the entities that may be synced to a player this snapshot.
+     * Units outside of the player's view (plus a margin) are only sent every few snapshots; all other entities are always sent.
+     */
+    void collectSyncEntities(PlayerSnapshot snapshot){
+        Player player = snapshot.player;
+        NetConnection con = player.con;
+        int interval = Config.farSyncInterval.num();
 
-        for(Syncc entity : Groups.sync){
-            //TODO write to special list
-            if(entity.isSyncHidden(player)){
-                hiddenIds.add(entity.id());
-                continue;
-            }
+        //send everything if filtering is disabled, no view was received yet, or it's time for a far update (spread out over different snapshots for each player)
+        if(interval == 1 || con.viewWidth <= 0f || con.viewHeight <= 0f || (interval > 0 && (con.snapshotsSent + player.id) % interval == 0)){
+            snapshot.entities.addAll(syncEntities);
+            return;
+        }
 
-            //write all entities now
-            dataStream.writeInt(entity.id()); //write id
-            dataStream.writeByte(entity.classId() & 0xFF); //write type ID
-            entity.writeSync(Writes.get(dataStream)); //write entity
+        snapshot.entities.addAll(syncOthers);
 
-            sent++;
+        float margin = Config.syncMargin.num() * tilesize;
+        interestRect.setCentered(con.viewX, con.viewY, con.viewWidth + margin * 2f, con.viewHeight + margin * 2f);
+        Groups.unit.intersect(interestRect.x, interestRect.y, interestRect.width, interestRect.height, snapshot.entities::add);
 
-            if(syncStream.size() > maxSnapshotSize){
-                dataStream.close();
-                Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
-                sent = 0;
-                syncStream.reset();
-            }
+        //the player's own unit is always relevant, even when the camera is elsewhere
+        Unit unit = player.unit();
+        if(!player.dead() && !interestRect.overlaps(unit.x - unit.hitSize/2f, unit.y - unit.hitSize/2f, unit.hitSize, unit.hitSize)){
+            snapshot.entities.add(unit);
         }
+    }
 
-        if(sent > 0){
-            dataStream.close();
+    /** Creates or resizes the snapshot worker pool to match the config. */
+    void updateSnapshotWorkers(){
+        int threads = Math.max(Math.min(Config.snapshotThreads.num(), OS.cores), 1);
+        if(threads == snapshotThreads) return;
+
+        if(snapshotWorkers != null){
+            snapshotWorkers.shutdown();
+            snapshotWorkers = null;
+        }
+
+        snapshotThreads = threads;
+        if(threads > 1){
+            snapshotWorkers = Threads.executor("Snapshot Writer", threads);
+        }
+    }
+
+    /** FNV-1a hash of entity sync data. */
+    private static int hash(byte[] bytes, int start, int end){
+        int hash = 0x811c9dc5;
+        for(int i = start; i < end; i++){
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /** The entity snapshot of a single player. Assembling it only reads shared state, so snapshots of different players can be assembled in parallel. */
+    class PlayerSnapshot{
+        Player player;
+        int id;
+        boolean delta, assembled;
+        /** Entities that may be sent to the player. Collected on the main thread. */
+        final Seq<Syncc> entities = new Seq<>(Syncc.class);
+        final IntSeq hidden = new IntSeq(), amounts = new IntSeq();
+        final Seq<byte[]> chunks = new Seq<>();
+        final ReusableByteOutStream stream = new ReusableByteOutStream();
+
+        void begin(Player player){
+            this.player = player;
+            id = player.con.snapshotsSent;
+            delta = player.con.deltaSnapshots && Config.deltaSnapshots.bool();
+            assembled = false;
+        }
+
+        void assemble(){
+            SnapshotHistory history = player.con.snapshotHistory;
+            if(delta) history.begin(id);
+            byte[] data = entityBuffer.getBytes();
+            int sent = 0;
+
+            beginChunk();
 
-            Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+            for(int i = 0; i < entities.size; i++){
+                Syncc entity = entities.items[i];
+
+                if(entity.isSyncHidden(player)){
+                    hidden.add(entity.id());
+                    continue;
+                }
+
+                //units in the quadtree may have been removed since it was built
+                int slot = entitySlots.get(entity.id(), -1);
+                if(slot == -1) continue;
+
+                //the client already has this exact state, and received it recently enough to interpolate when it changes
+                if(delta && !history.include(entity.id(), entityHashes.items[slot])) continue;
+
+                int start = entityOffsets.items[slot];
+                stream.write(data, start, entityOffsets.items[slot + 1] - start);
+                sent++;
+
+                if(stream.size() > maxSnapshotSize){
+                    chunks.add(stream.toByteArray());
+                    amounts.add(sent);
+                    sent = 0;
+                    beginChunk();
+                }
+            }
+
+            //delta snapshots always have at least one chunk, so the client can acknowledge them
+            if(sent > 0 || (delta && chunks.isEmpty())){
+                chunks.add(stream.toByteArray());
+                amounts.add(sent);
+            }
+
+            //the client only acknowledges a delta snapshot once all of its chunks arrived
+            if(delta){
+                for(byte[] chunk : chunks){
+                    chunk[4] = (byte)(chunks.size >>> 8);
+                    chunk[5] = (byte)chunks.size;
+                }
+            }
+
+            assembled = true;
         }
 
-        if(hiddenIds.size > 0){
-            Call.hiddenSnapshot(player.con, hiddenIds);
+        /** Starts a chunk; chunks of delta snapshots start with the snapshot ID and the chunk count, which is filled in later. */
+        void beginChunk(){
+            stream.reset();
+            if(delta){
+                stream.write(id >>> 24);
+                stream.write(id >>> 16);
+                stream.write(id >>> 8);
+                stream.write(id);
+                stream.write(0);
+                stream.write(0);
+            }
         }
 
-        player.con.snapshotsSent++;
+        void end(){
+            player = null;
+            entities.clear();
+            hidden.clear();
+            amounts.clear();
+            chunks.clear();
+        }
     }
 
     public String fixName(String name){
@@ -1025,6 +1281,7 @@ public class NetServer implements ApplicationListener{
     void sync(){
         try{
             int interval = Config.snapshotInterval.num();
+            boolean[] due = {false};
             Groups.player.each(p -> !p.isLocal(), player -> {
                 if(player.con == null || !player.con.isConnected()){
                     onDisconnect(player, "disappeared");
@@ -1035,14 +1292,24 @@ public class NetServer implements ApplicationListener{
 
                 if(Time.timeSinceMillis(connection.syncTime) < interval || !connection.hasConnected) return;
 
-                connection.syncTime = Time.millis();
+                due[0] = true;
+            });
+
+            if(due[0]){
+                //players that are at least halfway to their next snapshot join the batch, so that snapshots line up and entity data is only written once per interval
+                Groups.player.each(p -> !p.isLocal() && p.con != null && p.con.hasConnected && Time.timeSinceMillis(p.con.syncTime) >= interval / 2, player -> {
+                    player.con.syncTime = Time.millis();
+                    snapshotPlayers.add(player);
+                });
 
                 try{
-                    writeEntitySnapshot(player);
+                    writeEntitySnapshots(snapshotPlayers);
                 }catch(IOException e){
                     e.printStackTrace();
                 }
-            });
+
+                snapshotPlayers.clear();
+            }
 
             if(Groups.player.size() > 0 && Core.settings.getBool("blocksync") && timer.get(timerBlockSync, blockSyncTime)){
                 writeBlockSnapshots();
@@ -117,12 +117,12 @@ public class EntityCollisions{
 
     @SuppressWarnings("unchecked")
     public <T extends Hitboxc> void updatePhysics(EntityGroup<T> group){
-        var tree = group.tree();
-        tree.clear();
+        SpatialIndex<T> index = group.spatialIndex();
+        index.clear();
 
         group.each(s -> {
             s.updateLastPosition();
-            tree.insert(s);
+            index.insert(s);
         });
     }
 
@@ -14,6 +14,9 @@ import static mindustry.Vars.*;
 /** Represents a group of a certain type of entity.*/
 @SuppressWarnings("unchecked")
 public class EntityGroup<T extends Entityc> implements Iterable<T>{
+    /** Size of the cells of the default spatial index, in world units. */
+    public static float spatialCellSize = 64f;
+
     private static int lastId = 0;
 
     private final Seq<T> array;
@@ -21,8 +24,12 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     private final Rect viewport = new Rect();
     private final Rect intersectRect = new Rect();
     private final EntityIndexer indexer;
+    private final Rect bounds = new Rect();
     private IntMap<T> map;
-    private QuadTree tree;
+    private SpatialIndex spatial;
+    /** quadtree returned by the deprecated {@link #tree()}, and the physics update it was built in */
+    private @Nullable QuadTree legacyTree;
+    private int physicsUpdates, legacyTreeUpdate = -1;
     private boolean clearing;
 
     private int index;
@@ -44,7 +51,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
         array = new Seq<>(false, 32, type);
 
         if(spatial){
-            tree = new QuadTree<>(new Rect(0, 0, 0, 0));
+            this.spatial = new SpatialHash<>(spatialCellSize);
         }
 
         if(mapping){
@@ -75,6 +82,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     }
 
     public void updatePhysics(){
+        physicsUpdates ++;
         collisions.updatePhysics((EntityGroup<? extends Hitboxc>)this);
     }
 
@@ -118,7 +126,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     }
 
     public boolean useTree(){
-        return tree != null;
+        return spatial != null;
     }
 
     public boolean mappingEnabled(){
@@ -142,26 +150,55 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     public void intersect(float x, float y, float width, float height, Cons<? super T> out){
         //don't waste time for empty groups
         if(isEmpty()) return;
-        tree.intersect(x, y, width, height, out);
+        spatial.intersect(x, y, width, height, out);
     }
 
     public Seq<T> intersect(float x, float y, float width, float height){
         intersectArray.clear();
         //don't waste time for empty groups
         if(isEmpty()) return intersectArray;
-        tree.intersect(intersectRect.set(x, y, width, height), intersectArray);
+        spatial.intersect(intersectRect.set(x, y, width, height), intersectArray);
         return intersectArray;
     }
 
+    public SpatialIndex spatialIndex(){
+        if(spatial == null) throw new RuntimeException("This group does not support spatial queries! Enable them when creating it.");
+        return spatial;
+    }
+
+    /** Replaces the spatial index of this group. It is filled again on the next physics update. */
+    public void setSpatialIndex(SpatialIndex index){
+        if(spatial == null) throw new RuntimeException("This group does not support spatial queries! Enable them when creating it.");
+        index.resize(bounds.x, bounds.y, bounds.width, bounds.height);
+        spatial = index;
+    }
+
+    /**
+     * @deprecated spatial groups do not use quadtrees by default anymore; use {@link #spatialIndex()}.
+     * If the group does not use a {@link QuadTreeIndex}, this builds a quadtree with the entities of the group at most once per physics update, which is slow.
+     */
+    @Deprecated
     public QuadTree tree(){
-        if(tree == null) throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
-        return tree;
+        if(spatialIndex() instanceof QuadTreeIndex quad) return quad.tree;
+
+        if(legacyTree == null || legacyTreeUpdate != physicsUpdates){
+            legacyTree = new QuadTree<>(new Rect(bounds));
+            legacyTreeUpdate = physicsUpdates;
+            for(int i = 0; i < array.size; i++){
+                if(array.items[i] instanceof QuadTree.QuadTreeObject obj){
+                    legacyTree.insert(obj);
+                }
+            }
+        }
+        return legacyTree;
     }
 
-    /** Resizes the internal quadtree, if it is enabled.*/
+    /** Resizes the internal spatial index, if it is enabled.*/
     public void resize(float x, float y, float w, float h){
-        if(tree != null){
-            tree = new QuadTree<>(new Rect(x, y, w, h));
+        bounds.set(x, y, w, h);
+        legacyTree = null;
+        if(spatial != null){
+            spatial.resize(x, y, w, h);
         }
     }
 
@@ -262,6 +299,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
         array.each(Entityc::remove);
         array.clear();
         if(map != null) map.clear();
+        legacyTree = null;
 
         clearing = false;
     }
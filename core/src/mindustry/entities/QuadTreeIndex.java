@@ -0,0 +1,42 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+/** A spatial index backed by a {@link QuadTree}. */
+@SuppressWarnings("unchecked")
+public class QuadTreeIndex<T extends QuadTreeObject> implements SpatialIndex<T>{
+    public QuadTree<T> tree = new QuadTree<>(new Rect(0, 0, 0, 0));
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        tree = new QuadTree<>(new Rect(x, y, width, height));
+    }
+
+    @Override
+    public void clear(){
+        tree.clear();
+    }
+
+    @Override
+    public void insert(T obj){
+        tree.insert(obj);
+    }
+
+    @Override
+    public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+        tree.intersect(x, y, width, height, (Cons<T>)out);
+    }
+
+    @Override
+    public void intersect(Rect rect, Seq<? super T> out){
+        tree.intersect(rect, (Seq<T>)out);
+    }
+
+    @Override
+    public boolean any(float x, float y, float width, float height){
+        return tree.any(x, y, width, height);
+    }
+}
@@ -0,0 +1,142 @@
+package mindustry.entities;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+
+/**
+ * Wakes sleeping buildings when their timers expire.
+ * Buildings that are asleep are removed from all entity groups, so they are not updated at all; see {@link Building#sleepFor(float)}.
+ * Other wake conditions, such as receiving items or power, call {@link Building#noSleep()} directly, which leaves a stale timer behind that is ignored when it expires.
+ * <p>
+ * Timers are stored in a hierarchical timer wheel: each level has 256 slots, and each slot of a level spans all slots of the level below.
+ * Scheduling a timer and advancing by one tick are constant time, and timers are moved down one level at a time as they get closer.
+ */
+public class SleepScheduler{
+    static final int wheelBits = 8, wheelSize = 1 << wheelBits, wheelMask = wheelSize - 1, levels = 3;
+    /** Timers further in the future than this are clamped to it. */
+    static final long maxDelay = (1L << (wheelBits * levels)) - 1;
+
+    private final Seq<Building>[] slotBuilds = new Seq[wheelSize * levels];
+    private final LongSeq[] slotTicks = new LongSeq[wheelSize * levels];
+    private final Seq<Building> tmpBuilds = new Seq<>(false, 16, Building.class);
+    private final LongSeq tmpTicks = new LongSeq();
+
+    /** The last tick that was processed, and the time that has passed in ticks. */
+    private long cursor;
+    private double time;
+
+    /** The amount of buildings that are asleep. */
+    public int sleeping;
+    /** Stats of the last update: buildings that were updated, buildings that were asleep, and buildings that were woken by a timer. */
+    public int lastUpdated, lastSleeping, lastWoken;
+
+    public SleepScheduler(){
+        Events.on(ResetEvent.class, e -> reset());
+    }
+
+    public void reset(){
+        for(int i = 0; i < slotBuilds.length; i++){
+            if(slotBuilds[i] != null){
+                slotBuilds[i].clear();
+                slotTicks[i].clear();
+            }
+        }
+        sleeping = 0;
+        cursor = 0;
+        time = 0;
+    }
+
+    /**
+     * Schedules a timer for a building that is asleep.
+     * @return the tick at which {@link Building#wakeTimer(long)} will be called
+     */
+    public long schedule(Building build, float ticks){
+        long tick = cursor + Math.min(Math.max((long)Math.ceil(ticks), 1L), maxDelay);
+        insert(build, tick);
+        return tick;
+    }
+
+    /** Wakes all buildings whose timers expired since the last update. Must be called before entities are updated. */
+    public void update(){
+        lastWoken = 0;
+        time += Time.delta;
+
+        while(cursor < (long)time){
+            advance();
+        }
+
+        lastUpdated = Groups.build.size();
+        lastSleeping = sleeping;
+    }
+
+    private void advance(){
+        cursor ++;
+
+        //move the timers of the next higher slot down once the lower level wraps around; higher levels first, as they may cascade further
+        for(int level = levels - 1; level > 0; level--){
+            int shift = wheelBits * level;
+            if((cursor & ((1L << shift) - 1)) == 0){
+                cascade(level * wheelSize + (int)((cursor >> shift) & wheelMask));
+            }
+        }
+
+        int slot = (int)(cursor & wheelMask);
+        if(slotBuilds[slot] == null || slotBuilds[slot].isEmpty()) return;
+
+        take(slot);
+        for(int i = 0; i < tmpBuilds.size; i++){
+            Building build = tmpBuilds.items[i];
+            long tick = tmpTicks.items[i];
+            if(tick > cursor){
+                insert(build, tick);
+            }else if(build.isSleeping()){
+                build.wakeTimer(tick);
+                if(!build.isSleeping()) lastWoken ++;
+            }
+        }
+        tmpBuilds.clear();
+        tmpTicks.clear();
+    }
+
+    private void cascade(int slot){
+        if(slotBuilds[slot] == null || slotBuilds[slot].isEmpty()) return;
+
+        take(slot);
+        for(int i = 0; i < tmpBuilds.size; i++){
+            insert(tmpBuilds.items[i], tmpTicks.items[i]);
+        }
+        tmpBuilds.clear();
+        tmpTicks.clear();
+    }
+
+    /** Moves the timers of a slot to the temporary lists, as they may be inserted into the same slot again. */
+    private void take(int slot){
+        Seq<Building> builds = slotBuilds[slot];
+        LongSeq ticks = slotTicks[slot];
+        for(int i = 0; i < builds.size; i++){
+            tmpBuilds.add(builds.items[i]);
+            tmpTicks.add(ticks.items[i]);
+        }
+        builds.clear();
+        slotTicks[slot].clear();
+    }
+
+    private void insert(Building build, long tick){
+        long delay = Math.max(tick - cursor, 1);
+        int level = 0;
+        while(level < levels - 1 && delay >= (1L << (wheelBits * (level + 1)))){
+            level ++;
+        }
+
+        int slot = level * wheelSize + (int)((tick >> (wheelBits * level)) & wheelMask);
+        if(slotBuilds[slot] == null){
+            slotBuilds[slot] = new Seq<>(false, 16, Building.class);
+            slotTicks[slot] = new LongSeq();
+        }
+        slotBuilds[slot].add(build);
+        slotTicks[slot].add(tick);
+    }
+}
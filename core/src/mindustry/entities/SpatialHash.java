@@ -0,0 +1,168 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+import mindustry.gen.*;
+
+import java.util.*;
+
+/**
+ * A spatial index that sorts entities into a uniform grid of cells by the center of their hitbox.
+ * Entities are collected by {@link #insert(QuadTreeObject)}, and the grid is built with a counting sort on the first query after that: every cell is a range of one shared array of entity indices.
+ * Queries are extended by the largest hitbox, so entities are found in every cell their hitbox overlaps.
+ * <p>
+ * Entities are sorted into cells by where they were inserted, but usually move before they are queried. Like the quadtree, candidates are checked against their current hitbox,
+ * and queries are also extended by the largest movement of an entity in the last frame, so entities that moved into another cell since they were inserted are still found.
+ */
+@SuppressWarnings("unchecked")
+public class SpatialHash<T extends QuadTreeObject> implements SpatialIndex<T>{
+    private final Rect rect = new Rect();
+    private final float cellSize;
+
+    private float x, y;
+    private int width = 1, height = 1;
+
+    private final Rect hitbox = new Rect();
+    private Object[] objects = new Object[64];
+    /** The hitbox center of every entity when it was inserted, as x and y. */
+    private float[] centers = new float[64 * 2];
+    private int[] cellOf = new int[64], entries = new int[64];
+    /** The entries of cell i are entries[cellStart[i]] to entries[cellStart[i + 1] - 1]. */
+    private int[] cellStart = new int[2], cursor = new int[1];
+    private int size;
+    private float maxWidth, maxHeight, maxMove;
+    private boolean dirty;
+
+    /** @param cellSize the size of a cell in world units; should be a few times larger than the average hitbox */
+    public SpatialHash(float cellSize){
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        this.x = x;
+        this.y = y;
+        this.width = Math.max((int)Math.ceil(width / cellSize), 1);
+        this.height = Math.max((int)Math.ceil(height / cellSize), 1);
+        cellStart = new int[this.width * this.height + 1];
+        cursor = new int[this.width * this.height];
+        dirty = true;
+    }
+
+    @Override
+    public void clear(){
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        maxWidth = maxHeight = maxMove = 0f;
+        dirty = true;
+    }
+
+    @Override
+    public void insert(T obj){
+        if(size == objects.length){
+            int capacity = size * 2;
+            objects = Arrays.copyOf(objects, capacity);
+            centers = Arrays.copyOf(centers, capacity * 2);
+            cellOf = new int[capacity];
+            entries = new int[capacity];
+        }
+
+        obj.hitbox(rect);
+        centers[size * 2] = rect.x + rect.width / 2f;
+        centers[size * 2 + 1] = rect.y + rect.height / 2f;
+        maxWidth = Math.max(maxWidth, rect.width);
+        maxHeight = Math.max(maxHeight, rect.height);
+        maxMove = Math.max(maxMove, movement(obj));
+
+        objects[size++] = obj;
+        dirty = true;
+    }
+
+    /** @return how far an entity may move between being inserted and being queried. By default, the distance it moved in the last frame on either axis. */
+    protected float movement(T obj){
+        return obj instanceof Hitboxc h ? Math.max(Math.abs(h.deltaX()), Math.abs(h.deltaY())) : 0f;
+    }
+
+    @Override
+    public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+        if(size == 0) return;
+        build();
+
+        float mx = maxWidth / 2f + maxMove, my = maxHeight / 2f + maxMove;
+        int minx = cellX(x - mx), maxx = cellX(x + width + mx);
+        int miny = cellY(y - my), maxy = cellY(y + height + my);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cell = cy * this.width + minx, end = cy * this.width + maxx; cell <= end; cell++){
+                for(int e = cellStart[cell], last = cellStart[cell + 1]; e < last; e++){
+                    int index = entries[e];
+                    if(overlaps(index, x, y, width, height)){
+                        out.get((T)objects[index]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void intersect(Rect rect, Seq<? super T> out){
+        intersect(rect.x, rect.y, rect.width, rect.height, (Cons<T>)out::add);
+    }
+
+    @Override
+    public boolean any(float x, float y, float width, float height){
+        if(size == 0) return false;
+        build();
+
+        float mx = maxWidth / 2f + maxMove, my = maxHeight / 2f + maxMove;
+        int minx = cellX(x - mx), maxx = cellX(x + width + mx);
+        int miny = cellY(y - my), maxy = cellY(y + height + my);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cell = cy * this.width + minx, end = cy * this.width + maxx; cell <= end; cell++){
+                for(int e = cellStart[cell], last = cellStart[cell + 1]; e < last; e++){
+                    if(overlaps(entries[e], x, y, width, height)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Sorts the entities into their cells, if any were inserted since the last time. */
+    private void build(){
+        if(!dirty) return;
+        dirty = false;
+
+        Arrays.fill(cellStart, 0);
+        for(int i = 0; i < size; i++){
+            int cell = cellY(centers[i * 2 + 1]) * width + cellX(centers[i * 2]);
+            cellOf[i] = cell;
+            cellStart[cell + 1] ++;
+        }
+
+        for(int i = 1; i < cellStart.length; i++){
+            cellStart[i] += cellStart[i - 1];
+        }
+
+        System.arraycopy(cellStart, 0, cursor, 0, cursor.length);
+        for(int i = 0; i < size; i++){
+            entries[cursor[cellOf[i]]++] = i;
+        }
+    }
+
+    /** Checks the current hitbox, as the entity may have moved since it was inserted. */
+    private boolean overlaps(int index, float x, float y, float width, float height){
+        ((T)objects[index]).hitbox(hitbox);
+        return hitbox.x < x + width && hitbox.x + hitbox.width > x && hitbox.y < y + height && hitbox.y + hitbox.height > y;
+    }
+
+    private int cellX(float wx){
+        return Math.min(Math.max((int)((wx - x) / cellSize), 0), width - 1);
+    }
+
+    private int cellY(float wy){
+        return Math.min(Math.max((int)((wy - y) / cellSize), 0), height - 1);
+    }
+}
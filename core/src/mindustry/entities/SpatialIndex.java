@@ -0,0 +1,25 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+/** A spatial index of the hitboxes of entities, used by spatial {@link EntityGroup}s. It is cleared and filled again every frame. */
+public interface SpatialIndex<T extends QuadTreeObject>{
+    /** Sets the bounds of the index. Entities outside of them are still found, but may be slower to query. */
+    void resize(float x, float y, float width, float height);
+
+    void clear();
+
+    void insert(T obj);
+
+    /** Calls the consumer for every entity whose hitbox overlaps the rectangle. */
+    void intersect(float x, float y, float width, float height, Cons<? super T> out);
+
+    /** Adds every entity whose hitbox overlaps the rectangle to the output. */
+    void intersect(Rect rect, Seq<? super T> out);
+
+    /** @return whether the hitbox of any entity overlaps the rectangle */
+    boolean any(float x, float y, float width, float height);
+}
@@ -55,7 +55,6 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     static final Seq<Building> tempBuilds = new Seq<>();
     static final BuildTeamChangeEvent teamChangeEvent = new BuildTeamChangeEvent();
     static final BuildDamageEvent bulletDamageEvent = new BuildDamageEvent();
-    static int sleepingEntities = 0;
     
     @Import float x, y, health, maxHealth;
     @Import Team team;
@@ -99,6 +98,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
 
     private transient boolean sleeping;
     private transient float sleepTime;
+    private transient long wakeTick = -1;
     private transient boolean initialized;
 
     /** Sets this tile entity data to this and adds it if necessary. */
@@ -589,17 +589,43 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         if(!sleeping && sleepTime >= timeToSleep){
             remove();
             sleeping = true;
-            sleepingEntities++;
+            sleepScheduler.sleeping++;
         }
     }
 
+    /**
+     * Puts this building to sleep right away, so it is not updated until {@link #noSleep()} is called.
+     * That happens when it receives items, liquids or power, when its proximity changes, or after the given amount of ticks at the latest.
+     * Only call this when the building has nothing to do, and updating it would not change anything until one of these things happen.
+     */
+    public void sleepFor(float ticks){
+        if(!sleeping){
+            remove();
+            sleeping = true;
+            sleepScheduler.sleeping++;
+        }
+        wakeTick = sleepScheduler.schedule(self(), ticks);
+    }
+
+    /** Called by the {@link mindustry.entities.SleepScheduler} when a timer of {@link #sleepFor(float)} expires. */
+    public void wakeTimer(long tick){
+        if(sleeping && wakeTick == tick){
+            noSleep();
+        }
+    }
+
+    public boolean isSleeping(){
+        return sleeping;
+    }
+
     /** Call when this entity is updating. This wakes it up. */
     public void noSleep(){
         sleepTime = 0f;
         if(sleeping){
             add();
             sleeping = false;
-            sleepingEntities--;
+            wakeTick = -1;
+            sleepScheduler.sleeping--;
         }
     }
 
@@ -788,6 +814,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleItem(Building source, Item item){
+        noSleep();
         items.add(item, 1);
     }
 
@@ -800,6 +827,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleLiquid(Building source, Liquid liquid, float amount){
+        noSleep();
         liquids.add(liquid, amount);
     }
 
@@ -1685,6 +1713,13 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void removeFromProximity(){
+        //the building is never woken up again, so it does not count as asleep anymore
+        if(sleeping){
+            sleeping = false;
+            wakeTick = -1;
+            sleepScheduler.sleeping--;
+        }
+
         onProximityRemoved();
         tmpTiles.clear();
 
@@ -2065,6 +2100,22 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         afterDestroyed();
     }
 
+    /**
+     * Refreshes the time scale, enabled state and efficiency the way {@link #update()} does, without updating the building.
+     * Call this every tick for a building that sleeps while another building updates it, like the conveyors of a line.
+     */
+    public void updateAsleep(){
+        if((timeScaleDuration -= Time.delta) <= 0f || !block.canOverdrive){
+            timeScale = 1f;
+        }
+
+        if(!allowUpdate()){
+            enabled = false;
+        }
+
+        updateConsumption();
+    }
+
     @Final
     @Replace
     @Override
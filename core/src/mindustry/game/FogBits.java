@@ -0,0 +1,179 @@
+package mindustry.game;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A bitset with one bit per tile, stored in chunks of 32x32 tiles.
+ * Each chunk has a version that increases whenever any of its bits change, so consumers can skip the chunks that did not change since they last looked at them.
+ * {@link #write(DataOutput)} uses this to only encode the chunks that changed since the last write.
+ */
+public class FogBits{
+    public static final int chunkShift = 5, chunkSize = 1 << chunkShift;
+    static final int chunkMask = chunkSize - 1;
+    /** 32 rows of 32 bits, two rows per word */
+    static final int chunkWords = chunkSize * chunkSize / 64;
+
+    static final byte chunkEmpty = 0, chunkFull = 1, chunkRaw = 2;
+    private static final byte[] encodedEmpty = {chunkEmpty};
+
+    public final int width, height, chunksX, chunksY;
+
+    final long[] words;
+    final int[] versions;
+
+    /** cached encoding of each chunk, and the version it was encoded at */
+    private final byte[][] encoded;
+    private final int[] encodedVersions;
+
+    public FogBits(int width, int height){
+        this.width = width;
+        this.height = height;
+        chunksX = (width + chunkMask) >> chunkShift;
+        chunksY = (height + chunkMask) >> chunkShift;
+
+        int chunks = chunksX * chunksY;
+        words = new long[chunks * chunkWords];
+        versions = new int[chunks];
+        encoded = new byte[chunks][];
+        encodedVersions = new int[chunks];
+        Arrays.fill(encodedVersions, -1);
+    }
+
+    /** Coordinates are not checked, the caller must make sure that they are inside the map. */
+    public boolean get(int x, int y){
+        int bit = ((y & chunkMask) << chunkShift) | (x & chunkMask);
+        return (words[chunk(x, y) * chunkWords + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /** @param index x + y * width */
+    public boolean get(int index){
+        return get(index % width, index / width);
+    }
+
+    public void set(int x, int y){
+        int bit = ((y & chunkMask) << chunkShift) | (x & chunkMask), chunk = chunk(x, y), word = chunk * chunkWords + (bit >>> 6);
+        long mask = 1L << bit;
+        if((words[word] & mask) == 0){
+            words[word] |= mask;
+            versions[chunk] ++;
+        }
+    }
+
+    public void clear(int x, int y){
+        int bit = ((y & chunkMask) << chunkShift) | (x & chunkMask), chunk = chunk(x, y), word = chunk * chunkWords + (bit >>> 6);
+        long mask = 1L << bit;
+        if((words[word] & mask) != 0){
+            words[word] &= ~mask;
+            versions[chunk] ++;
+        }
+    }
+
+    /** Sets the bits from x1 to x2 (inclusive) in a row. Coordinates must be inside the map. */
+    public void setRow(int y, int x1, int x2){
+        int rowShift = ((y & chunkMask) & 1) * 32, rowWord = (y & chunkMask) >> 1, base = (y >> chunkShift) * chunksX;
+
+        for(int cx = x1 >> chunkShift, last = x2 >> chunkShift; cx <= last; cx++){
+            int from = Math.max(x1, cx << chunkShift) & chunkMask, to = Math.min(x2, (cx << chunkShift) + chunkMask) & chunkMask;
+            long mask = ((1L << (to - from + 1)) - 1) << (from + rowShift);
+            int chunk = base + cx, word = chunk * chunkWords + rowWord;
+
+            if((words[word] & mask) != mask){
+                words[word] |= mask;
+                versions[chunk] ++;
+            }
+        }
+    }
+
+    /** Sets the bits of a range of indices, where the index of a tile is x + y * width. */
+    public void set(int fromIndex, int toIndex){
+        while(fromIndex < toIndex){
+            int y = fromIndex / width, x = fromIndex - y * width, end = Math.min(width, x + toIndex - fromIndex);
+            setRow(y, x, end - 1);
+            fromIndex += end - x;
+        }
+    }
+
+    public void clear(){
+        for(int chunk = 0; chunk < versions.length; chunk++){
+            if(!isEmpty(chunk)){
+                Arrays.fill(words, chunk * chunkWords, (chunk + 1) * chunkWords, 0L);
+                versions[chunk] ++;
+            }
+        }
+    }
+
+    /** @return the index of the chunk that contains a tile */
+    public int chunk(int x, int y){
+        return (y >> chunkShift) * chunksX + (x >> chunkShift);
+    }
+
+    public int chunks(){
+        return versions.length;
+    }
+
+    /** @return a number that changes whenever any bit in the chunk changes */
+    public int version(int chunk){
+        return versions[chunk];
+    }
+
+    public boolean isEmpty(int chunk){
+        for(int i = chunk * chunkWords, end = i + chunkWords; i < end; i++){
+            if(words[i] != 0) return false;
+        }
+        return true;
+    }
+
+    /** Writes all chunks. Chunks that did not change since the last call are not encoded again. */
+    public void write(DataOutput stream) throws IOException{
+        for(int chunk = 0; chunk < versions.length; chunk++){
+            if(encodedVersions[chunk] != versions[chunk] || encoded[chunk] == null){
+                encoded[chunk] = encode(chunk);
+                encodedVersions[chunk] = versions[chunk];
+            }
+            stream.write(encoded[chunk]);
+        }
+    }
+
+    /** Reads chunks written by {@link #write(DataOutput)} with the same size. */
+    public void read(DataInput stream) throws IOException{
+        for(int chunk = 0; chunk < versions.length; chunk++){
+            int offset = chunk * chunkWords;
+            byte type = stream.readByte();
+            switch(type){
+                case chunkEmpty -> Arrays.fill(words, offset, offset + chunkWords, 0L);
+                case chunkFull -> Arrays.fill(words, offset, offset + chunkWords, -1L);
+                case chunkRaw -> {
+                    for(int i = 0; i < chunkWords; i++){
+                        words[offset + i] = stream.readLong();
+                    }
+                }
+                default -> throw new IOException("Unknown fog chunk type: " + type);
+            }
+            versions[chunk] ++;
+        }
+    }
+
+    private byte[] encode(int chunk){
+        int offset = chunk * chunkWords;
+        boolean empty = true, full = true;
+        for(int i = 0; i < chunkWords; i++){
+            long word = words[offset + i];
+            empty &= word == 0L;
+            full &= word == -1L;
+        }
+
+        if(empty) return encodedEmpty;
+        if(full) return new byte[]{chunkFull};
+
+        byte[] bytes = new byte[1 + chunkWords * 8];
+        bytes[0] = chunkRaw;
+        for(int i = 0; i < chunkWords; i++){
+            long word = words[offset + i];
+            for(int b = 0; b < 8; b++){
+                bytes[1 + i * 8 + b] = (byte)(word >>> (56 - b * 8));
+            }
+        }
+        return bytes;
+    }
+}
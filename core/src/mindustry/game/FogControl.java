@@ -23,6 +23,12 @@ public final class FogControl implements CustomChunk{
     private static final int dynamicUpdateInterval = 1000 / 25; //25 FPS
     private static final Object notifyStatic = new Object(), notifyDynamic = new Object();
 
+    /**
+     * Whether dynamic fog counts how many sources cover each tile, and only draws the sources that moved or changed their radius since the last update.
+     * Otherwise, all sources of a team are drawn again whenever one changes. Applied when fog data is created, which happens on world load.
+     */
+    public static boolean incrementalDynamic = true;
+
     /** indexed by team */
     private volatile @Nullable FogData[] fog;
 
@@ -93,10 +99,32 @@ public final class FogControl implements CustomChunk{
             }
         });
 
-        SaveVersion.addCustomChunk("static-fog-data", this);
+        //still sent to connecting clients in the old format; saves only use the chunks, but older saves with this are still read
+        SaveVersion.addCustomChunk("static-fog-data", new CustomChunk(){
+            @Override
+            public void write(DataOutput stream) throws IOException{
+                writeLegacy(stream);
+            }
+
+            @Override
+            public void read(DataInput stream) throws IOException{
+                readLegacy(stream);
+            }
+
+            @Override
+            public boolean shouldWrite(){
+                return FogControl.this.shouldWrite();
+            }
+
+            @Override
+            public boolean writeSave(){
+                return false;
+            }
+        });
+        SaveVersion.addCustomChunk("static-fog-chunks", this);
     }
 
-    public @Nullable Bits getDiscovered(Team team){
+    public @Nullable FogBits getDiscovered(Team team){
         return fog == null || fog[team.id] == null ? null : fog[team.id].staticData;
     }
 
@@ -107,8 +135,8 @@ public final class FogControl implements CustomChunk{
 
         var data = getDiscovered(team);
         if(data == null) return false;
-        if(x < 0 || y < 0 || x >= ww || y >= wh) return false;
-        return data.get(x + y * ww);
+        if(x < 0 || y < 0 || x >= data.width || y >= data.height) return false;
+        return data.get(x, y);
     }
 
     public boolean isVisible(Team team, float x, float y){
@@ -130,6 +158,31 @@ public final class FogControl implements CustomChunk{
         fog = null;
     }
 
+    /**
+     * Moves the positions of the tiles whose dynamic visibility changed for a team since the last call into the given lists.
+     * Changes are only recorded with {@link #incrementalDynamic}, and only after this was called once for a team.
+     * Nothing in the game polls these yet; the renderer draws dynamic fog from the sources directly, and the server does not send fog.
+     * @return false if the changes are not known, in which case the visibility of all tiles must be checked again
+     */
+    public boolean pollVisibilityChanges(Team team, IntSeq revealed, IntSeq hidden){
+        var data = data(team);
+        if(data == null || data.coverage == null) return false;
+
+        synchronized(data.revealed){
+            boolean known = data.trackChanges && !data.changesOverflowed;
+            data.trackChanges = true;
+            data.changesOverflowed = false;
+
+            if(known){
+                revealed.addAll(data.revealed);
+                hidden.addAll(data.hidden);
+            }
+            data.revealed.clear();
+            data.hidden.clear();
+            return known;
+        }
+    }
+
     @Nullable FogData data(Team team){
         return fog == null || fog[team.id] == null ? null : fog[team.id];
     }
@@ -330,7 +383,7 @@ public final class FogControl implements CustomChunk{
                 int x = FogEvent.x(event), y = FogEvent.y(event), rad = FogEvent.radius(event), team = FogEvent.team(event);
                 var data = fog[team];
                 if(data != null){
-                    circle(data.staticData, x, y, rad);
+                    circle(null, data.staticData, ww, wh, x, y, rad);
                 }
             }
             staticEvents.clear();
@@ -391,11 +444,19 @@ public final class FogControl implements CustomChunk{
                     if(!cleared.get(team)){
                         cleared.set(team);
 
-                        data.write.clear();
+                        if(data.coverage == null){
+                            data.write.clear();
+                        }else{
+                            data.coverage.begin();
+                        }
                     }
 
-                    //radius is always +1 to keep up with visuals
-                    circle(data.write, x, y, rad + 1);
+                    if(data.coverage == null){
+                        //radius is always +1 to keep up with visuals
+                        circle(data.write, null, ww, wh, x, y, rad + 1);
+                    }else{
+                        data.coverage.add(event);
+                    }
                 }
             }
             dynamicEvents.clear();
@@ -406,6 +467,11 @@ public final class FogControl implements CustomChunk{
             if(cleared.get(i)){
                 var data = fog[i];
 
+                if(data.coverage != null){
+                    updateCoverage(data);
+                    continue;
+                }
+
                 //swap buffers, flushing the data that was just drawn
                 Bits temp = data.read;
                 data.read = data.write;
@@ -414,6 +480,38 @@ public final class FogControl implements CustomChunk{
         }
     }
 
+    /** Draws the sources that were added since the last update and erases the ones that were removed, then swaps the buffers and brings the other one up to date. */
+    void updateCoverage(FogData data){
+        FogCoverage coverage = data.coverage;
+        coverage.update(data.write);
+
+        Bits temp = data.read;
+        data.read = data.write;
+        data.write = temp;
+
+        //the new write buffer is one update behind
+        for(int k = 0; k < coverage.revealed.size; k++){
+            data.write.set(coverage.revealed.items[k]);
+        }
+        for(int k = 0; k < coverage.hidden.size; k++){
+            data.write.clear(coverage.hidden.items[k]);
+        }
+
+        synchronized(data.revealed){
+            if(data.trackChanges && !data.changesOverflowed){
+                //nobody is polling the changes, so don't collect them forever
+                if(data.revealed.size + data.hidden.size > ww * wh){
+                    data.changesOverflowed = true;
+                    data.revealed.clear();
+                    data.hidden.clear();
+                }else{
+                    data.revealed.addAll(coverage.revealed);
+                    data.hidden.addAll(coverage.hidden);
+                }
+            }
+        }
+    }
+
     @Override
     public void write(DataOutput stream) throws IOException{
         int used = 0;
@@ -428,10 +526,44 @@ public final class FogControl implements CustomChunk{
         for(int i = 0; i < 256; i++){
             if(fog[i] != null){
                 stream.writeByte(i);
-                Bits data = fog[i].staticData;
-                int size = ww * wh;
+                //only chunks that changed since the last save are encoded again
+                fog[i].staticData.write(stream);
+            }
+        }
+    }
+
+    @Override
+    public void read(DataInput stream) throws IOException{
+        if(fog == null) fog = new FogData[256];
+
+        int teams = stream.readUnsignedByte();
+        ww = stream.readShort();
+        wh = stream.readShort();
+
+        for(int ti = 0; ti < teams; ti++){
+            int team = stream.readUnsignedByte();
+            fog[team] = new FogData();
+            fog[team].staticData.read(stream);
+        }
+    }
+
+    /** Writes static fog run-length encoded, the format used before it was stored in chunks. */
+    void writeLegacy(DataOutput stream) throws IOException{
+        int used = 0;
+        for(int i = 0; i < 256; i++){
+            if(fog[i] != null) used ++;
+        }
+
+        stream.writeByte(used);
+        stream.writeShort(world.width());
+        stream.writeShort(world.height());
+
+        for(int i = 0; i < 256; i++){
+            if(fog[i] != null){
+                stream.writeByte(i);
+                FogBits data = fog[i].staticData;
+                int pos = 0, size = data.width * data.height;
 
-                int pos = 0;
                 while(pos < size){
                     int consecutives = 0;
                     boolean cur = data.get(pos);
@@ -450,8 +582,8 @@ public final class FogControl implements CustomChunk{
         }
     }
 
-    @Override
-    public void read(DataInput stream) throws IOException{
+    /** Reads static fog written by {@link #writeLegacy(DataOutput)}. */
+    void readLegacy(DataInput stream) throws IOException{
         if(fog == null) fog = new FogData[256];
 
         int teams = stream.readUnsignedByte();
@@ -466,7 +598,7 @@ public final class FogControl implements CustomChunk{
             fog[team] = new FogData();
 
             int pos = 0;
-            Bits bools = fog[team].staticData;
+            FogBits bools = fog[team].staticData;
 
             while(pos < len){
                 int data = stream.readByte() & 0xff;
@@ -474,7 +606,7 @@ public final class FogControl implements CustomChunk{
                 int consec = data & 0b0111_1111;
 
                 if(sign){
-                    bools.set(pos, pos + consec);
+                    bools.set(pos, Math.min(pos + consec, len));
                     pos += consec;
                 }else{
                     pos += consec;
@@ -489,14 +621,21 @@ public final class FogControl implements CustomChunk{
         return state.rules.fog && state.rules.staticFog && fog != null;
     }
 
-    static void circle(Bits arr, int x, int y, int radius){
+    /** Only written to saves, as clients may not know this chunk. */
+    @Override
+    public boolean writeNet(){
+        return false;
+    }
+
+    /** Draws a circle into either flat or chunked bits of a map with the given size; the other one must be null. */
+    public static void circle(@Nullable Bits arr, @Nullable FogBits chunks, int width, int height, int x, int y, int radius){
         int f = 1 - radius;
         int ddFx = 1, ddFy = -2 * radius;
         int px = 0, py = radius;
 
-        hline(arr, x, x, y + radius);
-        hline(arr, x, x, y - radius);
-        hline(arr, x - radius, x + radius, y);
+        hline(arr, chunks, width, height, x, x, y + radius);
+        hline(arr, chunks, width, height, x, x, y - radius);
+        hline(arr, chunks, width, height, x - radius, x + radius, y);
 
         while(px < py){
             if(f >= 0){
@@ -507,15 +646,15 @@ public final class FogControl implements CustomChunk{
             px++;
             ddFx += 2;
             f += ddFx;
-            hline(arr, x - px, x + px, y + py);
-            hline(arr, x - px, x + px, y - py);
-            hline(arr, x - py, x + py, y + px);
-            hline(arr, x - py, x + py, y - px);
+            hline(arr, chunks, width, height, x - px, x + px, y + py);
+            hline(arr, chunks, width, height, x - px, x + px, y - py);
+            hline(arr, chunks, width, height, x - py, x + py, y + px);
+            hline(arr, chunks, width, height, x - py, x + py, y - px);
         }
     }
 
-    static void hline(Bits arr, int x1, int x2, int y){
-        if(y < 0 || y >= wh) return;
+    static void hline(@Nullable Bits arr, @Nullable FogBits chunks, int width, int height, int x1, int x2, int y){
+        if(y < 0 || y >= height) return;
         int tmp;
 
         if(x1 > x2){
@@ -524,13 +663,19 @@ public final class FogControl implements CustomChunk{
             x2 = tmp;
         }
 
-        if(x1 >= ww) return;
+        if(x1 >= width) return;
         if(x2 < 0) return;
 
         if(x1 < 0) x1 = 0;
-        if(x2 >= ww) x2 = ww - 1;
+        if(x2 >= width) x2 = width - 1;
+
+        if(chunks != null){
+            chunks.setRow(y, x1, x2);
+            return;
+        }
+
         x2++;
-        int off = y * ww;
+        int off = y * width;
 
         arr.set(off + x1, off + x2);
     }
@@ -538,20 +683,27 @@ public final class FogControl implements CustomChunk{
     static class FogData{
         /** dynamic double-buffered data for dynamic (live) coverage */
         volatile Bits read, write;
-        /** static map exploration fog*/
-        final Bits staticData;
+        /** static map exploration fog, in chunks so saves only encode what changed */
+        final FogBits staticData;
 
         /** last dynamic update timestamp. */
         long lastDynamicMs = 0;
         /** if true, a dynamic fog update must be scheduled. */
         boolean dynamicUpdated = true;
 
+        /** incremental dynamic fog: the amount of sources that cover each tile, or null if disabled. */
+        final @Nullable FogCoverage coverage;
+        /** tiles that were revealed or hidden since the changes were last polled; synchronized on revealed. */
+        final IntSeq revealed = new IntSeq(), hidden = new IntSeq();
+        boolean trackChanges, changesOverflowed;
+
         FogData(){
             int len = ww * wh;
 
             read = new Bits(len);
             write = new Bits(len);
-            staticData = new Bits(len);
+            staticData = new FogBits(ww, wh);
+            coverage = incrementalDynamic ? new FogCoverage(ww, wh) : null;
         }
     }
 
@@ -0,0 +1,116 @@
+package mindustry.game;
+
+import arc.struct.Bits;
+import arc.struct.*;
+import mindustry.gen.*;
+
+import java.util.*;
+
+/**
+ * Counts how many fog sources cover each tile, so that an update only draws the sources that were added, moved or changed their radius, and erases the ones that were removed.
+ * Sources are {@link FogEvent}s. Each source covers the same tiles as {@link FogControl#circle(Bits, FogBits, int, int, int, int, int)} with its radius + 1.
+ */
+public class FogCoverage{
+    public final int width, height;
+    /** Tiles that were revealed or hidden by the last {@link #update(Bits)}. Each tile is in these at most once. */
+    public final IntSeq revealed = new IntSeq(), hidden = new IntSeq();
+
+    final int[] counts;
+    /** sorted sources that are drawn, and the ones to draw in the next update */
+    LongSeq sources = new LongSeq(), next = new LongSeq();
+    final LongSeq removed = new LongSeq();
+    int[] spans = new int[64];
+
+    public FogCoverage(int width, int height){
+        this.width = width;
+        this.height = height;
+        counts = new int[width * height];
+    }
+
+    /** Starts collecting the sources of the next update. Sources that are not added again are removed by it. */
+    public void begin(){
+        next.clear();
+    }
+
+    public void add(long source){
+        next.add(source);
+    }
+
+    /**
+     * Draws the sources that were added since the last update and erases the ones that were removed.
+     * Sets the bits of tiles that were revealed and clears the bits of tiles that were hidden, and records them in {@link #revealed} and {@link #hidden}.
+     */
+    public void update(Bits bits){
+        LongSeq last = sources;
+        Arrays.sort(next.items, 0, next.size);
+        revealed.clear();
+        hidden.clear();
+        removed.clear();
+
+        //both lists are sorted, so unchanged sources are skipped in one pass; sources are added first, so tiles that stay covered never change
+        int i = 0, j = 0;
+        while(i < last.size || j < next.size){
+            if(i < last.size && j < next.size && last.items[i] == next.items[j]){
+                i ++;
+                j ++;
+            }else if(j >= next.size || (i < last.size && last.items[i] < next.items[j])){
+                removed.add(last.items[i++]);
+            }else{
+                long event = next.items[j++];
+                cover(bits, FogEvent.x(event), FogEvent.y(event), FogEvent.radius(event) + 1, 1);
+            }
+        }
+
+        for(int k = 0; k < removed.size; k++){
+            long event = removed.items[k];
+            cover(bits, FogEvent.x(event), FogEvent.y(event), FogEvent.radius(event) + 1, -1);
+        }
+
+        sources = next;
+        next = last;
+    }
+
+    /** Changes the coverage of the same tiles as {@link FogControl#circle(Bits, FogBits, int, int, int, int, int)}, visiting each tile once. */
+    void cover(Bits bits, int x, int y, int radius, int amount){
+        if(spans.length <= radius) spans = new int[radius + 1];
+        Arrays.fill(spans, 0, radius + 1, -1);
+
+        //same steps as circle(), but only records the widest line of each row
+        int f = 1 - radius;
+        int ddFx = 1, ddFy = -2 * radius;
+        int px = 0, py = radius;
+
+        spans[radius] = 0;
+        spans[0] = radius;
+
+        while(px < py){
+            if(f >= 0){
+                py--;
+                ddFy += 2;
+                f += ddFy;
+            }
+            px++;
+            ddFx += 2;
+            f += ddFx;
+            spans[py] = Math.max(spans[py], px);
+            spans[px] = Math.max(spans[px], py);
+        }
+
+        for(int dy = -radius; dy <= radius; dy++){
+            int cy = y + dy, half = spans[Math.abs(dy)];
+            if(cy < 0 || cy >= height || half < 0) continue;
+
+            int x1 = Math.max(x - half, 0), x2 = Math.min(x + half, width - 1), off = cy * width;
+            for(int pos = off + x1, end = off + x2; pos <= end; pos++){
+                int value = counts[pos] += amount;
+                if(amount > 0 && value == amount){
+                    bits.set(pos);
+                    revealed.add(pos);
+                }else if(amount < 0 && value == 0){
+                    bits.clear(pos);
+                    hidden.add(pos);
+                }
+            }
+        }
+    }
+}
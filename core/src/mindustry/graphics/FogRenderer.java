@@ -144,16 +144,22 @@ public final class FogRenderer{
         int ww = world.width(), wh = world.height();
 
         var data = fogControl.getDiscovered(player.team());
-        int len = world.width() * world.height();
         if(data != null){
-            for(int i = 0; i < len; i++){
-                if(data.get(i)){
-                    //TODO slow, could do scanlines instead at the very least.
-                    int x = i % ww, y = i / ww;
+            for(int cy = 0; cy < data.chunksY; cy++){
+                for(int cx = 0; cx < data.chunksX; cx++){
+                    //most chunks of a map are usually undiscovered
+                    if(data.isEmpty(cx + cy * data.chunksX)) continue;
 
                     //manually clip with 1 pixel of padding so the borders are never fully revealed
-                    if(x > 0 && y > 0 && x < ww - 1 && y < wh - 1){
-                        Fill.rect(x + 0.5f, y + 0.5f, 1f, 1f);
+                    int x1 = Math.max(cx * FogBits.chunkSize, 1), y1 = Math.max(cy * FogBits.chunkSize, 1);
+                    int x2 = Math.min((cx + 1) * FogBits.chunkSize, Math.min(data.width, ww) - 1), y2 = Math.min((cy + 1) * FogBits.chunkSize, Math.min(data.height, wh) - 1);
+
+                    for(int y = y1; y < y2; y++){
+                        for(int x = x1; x < x2; x++){
+                            if(data.get(x, y)){
+                                Fill.rect(x + 0.5f, y + 0.5f, 1f, 1f);
+                            }
+                        }
                     }
                 }
             }
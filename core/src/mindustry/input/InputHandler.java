@@ -574,6 +574,11 @@ public abstract class InputHandler implements InputProcessor, GestureListener{
 
             player.unit(unit);
 
+            //controlled turrets must update even without a target
+            if(unit instanceof BlockUnitc block){
+                block.tile().noSleep();
+            }
+
             if(before != null && !before.isNull()){
                 if(before.spawnedByCore){
                     unit.dockedType = before.type;
@@ -0,0 +1,121 @@
+package mindustry.io;
+
+import arc.*;
+import arc.files.*;
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.world.*;
+import mindustry.io.SaveFileReader.*;
+import mindustry.io.versions.*;
+
+import java.io.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Writes saves as deltas to the last full save, which only contain the parts of the map that changed since then.
+ * The map is stored in bands of rows. Bands without buildings are only encoded again if a tile in them changed, and only bands that differ from the base are written.
+ * Entities and everything else are always saved completely.
+ */
+public class DeltaSaves{
+    /** Suffix of the file names of delta saves. */
+    public static final String deltaSuffix = "-delta";
+
+    private @Nullable Base base;
+    private final Bits dirty = new Bits(), buildingBands = new Bits();
+    private int deltas;
+
+    public DeltaSaves(){
+        Events.on(WorldLoadEvent.class, e -> reset());
+        Events.on(TileChangeEvent.class, e -> {
+            if(base != null) markDirty(e.tile.y, e.tile.block().size, dirty);
+        });
+    }
+
+    public static boolean isDelta(Fi file){
+        return file.nameWithoutExtension().endsWith(deltaSuffix);
+    }
+
+    /** @return the file name of the current base, which is needed to load the following deltas */
+    public @Nullable String baseName(){
+        return base == null ? null : base.name;
+    }
+
+    /** Makes the next save a full one. */
+    public void reset(){
+        base = null;
+        dirty.clear();
+        buildingBands.clear();
+        deltas = 0;
+    }
+
+    /** @param interval the amount of saves from one full save to the next */
+    public boolean nextIsDelta(int interval){
+        return base != null && deltas < interval - 1 && base.width == world.width() && base.height == world.height() && saveDirectory.child(base.name).exists();
+    }
+
+    /**
+     * Captures the world on this thread, and writes it on a background thread like {@link SaveIO#saveInBackground(Fi, Cons)}.
+     * @param delta whether to write a delta to the current base; see {@link #nextIsDelta(int)}
+     */
+    public void save(Fi file, boolean delta, Cons<Throwable> done){
+        Save9 ver = (Save9)SaveIO.getSaveWriter(9);
+        IORunner<DataOutput> snapshot;
+
+        try{
+            Events.fire(new SaveWriteEvent());
+            if(delta && base != null){
+                int bands = (world.height() + Save8.bandRows - 1) / Save8.bandRows;
+                Bits changed = new Bits(bands);
+                for(int i = 0; i < bands; i++){
+                    if(dirty.get(i) || buildingBands.get(i)) changed.set(i);
+                }
+                snapshot = ver.snapshotDelta(new StringMap(), base, changed);
+                deltas ++;
+            }else{
+                //buildings change all the time, so bands with buildings always need to be compared; sleeping ones are not in any group, so go through the tiles
+                dirty.clear();
+                buildingBands.clear();
+                for(Tile tile : world.tiles){
+                    if(tile.build != null && tile.isCenter()) markDirty(tile.y, tile.block().size, buildingBands);
+                }
+                base = new Base(file.name(), world.width(), world.height());
+                snapshot = ver.snapshotBase(new StringMap(), base);
+                deltas = 0;
+            }
+        }catch(Throwable e){
+            reset();
+            done.get(e);
+            return;
+        }
+
+        SaveIO.saveInBackground(file, ver, snapshot, e -> {
+            //deltas to a broken base would be useless
+            if(e != null) reset();
+            done.get(e);
+        });
+    }
+
+    private static void markDirty(int y, int size, Bits bands){
+        int offset = (size - 1) / 2;
+        for(int band = Math.max(y - offset, 0) / Save8.bandRows; band <= (y - offset + size - 1) / Save8.bandRows; band++){
+            bands.set(band);
+        }
+    }
+
+    /** A full save that deltas refer to. The hashes of its bands are set on the writer thread. */
+    public static class Base{
+        public final String name;
+        public final int width, height;
+        public long[] floorHashes, blockHashes;
+        public volatile boolean written;
+
+        public Base(String name, int width, int height){
+            this.name = name;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
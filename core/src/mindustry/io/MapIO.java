@@ -47,7 +47,7 @@ public class MapIO{
 
     public static void writeMap(Fi file, Map map) throws IOException{
         try{
-            SaveIO.write(file, map.tags);
+            SaveIO.write(file, map.tags, SaveIO.getSaveWriter(SaveIO.mapVersion));
         }catch(Exception e){
             throw new IOException(e);
         }
@@ -89,7 +89,7 @@ public class MapIO{
             };
 
             ver.region("content", stream, counter, ver::readContentHeader);
-            ver.region("preview_map", stream, counter, in -> ver.readMap(in, new WorldContext(){
+            ver.region("preview_map", stream, counter, in -> ver.readMapRegion(in, new WorldContext(){
                 @Override public void resize(int width, int height){}
                 @Override public boolean isGenerating(){return false;}
                 @Override public void begin(){
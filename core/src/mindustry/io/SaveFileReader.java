@@ -216,5 +216,10 @@ public abstract class SaveFileReader{
         default boolean writeNet(){
             return true;
         }
+
+        /** @return whether this chunk should be written to save files (default true) */
+        default boolean writeSave(){
+            return true;
+        }
     }
 }
@@ -2,16 +2,19 @@ package mindustry.io;
 
 import arc.*;
 import arc.files.*;
+import arc.func.*;
 import arc.struct.*;
 import arc.util.*;
 import arc.util.io.*;
 import mindustry.*;
 import mindustry.game.EventType.*;
+import mindustry.io.SaveFileReader.*;
 import mindustry.io.versions.*;
 import mindustry.world.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static mindustry.Vars.*;
@@ -19,8 +22,11 @@ import static mindustry.Vars.*;
 public class SaveIO{
     /** Save format header. */
     public static final byte[] header = {'M', 'S', 'A', 'V'};
+    /** Version used for map files, which are shared with builds that cannot read newer save versions. */
+    public static final int mapVersion = 7;
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7());
+    private static @Nullable ExecutorService writeExecutor;
+    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7(), new Save8(), new Save9());
 
     static{
         for(SaveVersion version : versionArray){
@@ -47,6 +53,45 @@ public class SaveIO{
         }
     }
 
+    /**
+     * Captures the world on this thread, and compresses and writes it to the file on a background thread.
+     * The old file is kept as a backup in the same way as {@link #save(Fi)}.
+     * @param done called on the main thread once the file is written, with the exception if writing failed
+     */
+    public static void saveInBackground(Fi file, Cons<Throwable> done){
+        SaveVersion ver = getVersion();
+        IORunner<DataOutput> snapshot;
+        try{
+            Events.fire(new SaveWriteEvent());
+            snapshot = ver.snapshot(new StringMap());
+        }catch(Throwable e){
+            done.get(e);
+            return;
+        }
+
+        saveInBackground(file, ver, snapshot, done);
+    }
+
+    /** Writes a snapshot captured with {@link SaveVersion#snapshot(StringMap)} on a background thread, keeping a backup like {@link #save(Fi)}. */
+    public static void saveInBackground(Fi file, SaveVersion ver, IORunner<DataOutput> snapshot, Cons<Throwable> done){
+        if(writeExecutor == null) writeExecutor = Threads.executor("Save Writer", 1);
+
+        writeExecutor.submit(() -> {
+            boolean exists = file.exists();
+            if(exists) file.moveTo(backupFileFor(file));
+            try(DataOutputStream stream = new DataOutputStream(open(file, ver))){
+                stream.write(header);
+                stream.writeInt(ver.version);
+                snapshot.accept(stream);
+            }catch(Throwable e){
+                if(exists) backupFileFor(file).moveTo(file);
+                Core.app.post(() -> done.get(e));
+                return;
+            }
+            Core.app.post(() -> done.get(null));
+        });
+    }
+
     public static DataInputStream getStream(Fi file){
         return new DataInputStream(new InflaterInputStream(file.read(bufferSize)));
     }
@@ -107,7 +152,29 @@ public class SaveIO{
     }
 
     public static void write(Fi file, StringMap tags){
-        write(new FastDeflaterOutputStream(file.write(false, bufferSize)), tags);
+        write(file, tags, getVersion());
+    }
+
+    public static void write(Fi file, StringMap tags, SaveVersion ver){
+        write(open(file, ver), tags, ver);
+    }
+
+    private static OutputStream open(Fi file, SaveVersion ver){
+        OutputStream output = file.write(false, bufferSize);
+        if(!ver.compressesRegions()) return new FastDeflaterOutputStream(output);
+
+        //the regions are compressed already; the file is still a valid deflate stream, so it can be read like any other save
+        Deflater deflater = new Deflater(Deflater.NO_COMPRESSION);
+        return new DeflaterOutputStream(output, deflater, bufferSize){
+            @Override
+            public void close() throws IOException{
+                try{
+                    super.close();
+                }finally{
+                    deflater.end();
+                }
+            }
+        };
     }
 
     public static void write(Fi file){
@@ -115,9 +182,12 @@ public class SaveIO{
     }
 
     public static void write(OutputStream os, StringMap tags){
+        write(os, tags, getVersion());
+    }
+
+    public static void write(OutputStream os, StringMap tags, SaveVersion ver){
         try(DataOutputStream stream = new DataOutputStream(os)){
             Events.fire(new SaveWriteEvent());
-            SaveVersion ver = getVersion();
 
             stream.write(header);
             stream.writeInt(ver.version);
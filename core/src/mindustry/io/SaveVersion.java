@@ -46,6 +46,11 @@ public abstract class SaveVersion extends SaveFileReader{
         this.version = version;
     }
 
+    /** @return whether this version compresses its regions by itself, so the save file does not need to be compressed as a whole. */
+    public boolean compressesRegions(){
+        return false;
+    }
+
     public SaveMeta getMeta(DataInput stream) throws IOException{
         stream.readInt(); //length of data, doesn't matter here
         StringMap map = readStringMap(stream);
@@ -72,8 +77,8 @@ public abstract class SaveVersion extends SaveFileReader{
         region("content", stream, counter, this::readContentHeader);
 
         try{
-            region("map", stream, counter, in -> readMap(in, context));
-            region("entities", stream, counter, this::readEntities);
+            region("map", stream, counter, in -> readMapRegion(in, context));
+            region("entities", stream, counter, this::readEntitiesRegion);
             region("custom", stream, counter, this::readCustomChunks);
         }finally{
             content.setTemporaryMapper(null);
@@ -83,13 +88,23 @@ public abstract class SaveVersion extends SaveFileReader{
     public void write(DataOutputStream stream, StringMap extraTags) throws IOException{
         region("meta", stream, out -> writeMeta(out, extraTags));
         region("content", stream, this::writeContentHeader);
-        region("map", stream, this::writeMap);
-        region("entities", stream, this::writeEntities);
+        region("map", stream, this::writeMapRegion);
+        region("entities", stream, this::writeEntitiesRegion);
         region("custom", stream, s -> writeCustomChunks(s, false));
     }
 
+    /**
+     * Captures everything {@link #write(DataOutputStream, StringMap)} would write, so it can be written later or on another thread.
+     * Versions that compress their regions defer the compression to when the snapshot is written.
+     */
+    public IORunner<DataOutput> snapshot(StringMap extraTags) throws IOException{
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        write(new DataOutputStream(bytes), extraTags);
+        return stream -> stream.write(bytes.getBytes(), 0, bytes.size());
+    }
+
     public void writeCustomChunks(DataOutput stream, boolean net) throws IOException{
-        var chunks = customChunks.orderedKeys().select(s -> customChunks.get(s).shouldWrite() && (!net || customChunks.get(s).writeNet()));
+        var chunks = customChunks.orderedKeys().select(s -> customChunks.get(s).shouldWrite() && (net ? customChunks.get(s).writeNet() : customChunks.get(s).writeSave()));
         stream.writeInt(chunks.size);
         for(var chunkName : chunks){
             var chunk = customChunks.get(chunkName);
@@ -187,19 +202,41 @@ public abstract class SaveVersion extends SaveFileReader{
         )) : worldmap;
     }
 
+    /** Writes the map region of a save file. Unlike {@link #writeMap}, this is never sent to clients, so the format may differ between versions. */
+    public void writeMapRegion(DataOutput stream) throws IOException{
+        writeMap(stream);
+    }
+
+    public void readMapRegion(DataInput stream, WorldContext context) throws IOException{
+        readMap(stream, context);
+    }
+
+    public void writeEntitiesRegion(DataOutput stream) throws IOException{
+        writeEntities(stream);
+    }
+
+    public void readEntitiesRegion(DataInput stream) throws IOException{
+        readEntities(stream);
+    }
+
     public void writeMap(DataOutput stream) throws IOException{
         //write world size
         stream.writeShort(world.width());
         stream.writeShort(world.height());
 
-        //floor + overlay
-        for(int i = 0; i < world.width() * world.height(); i++){
+        writeFloors(stream, 0, world.width() * world.height());
+        writeBlocks(stream, 0, world.width() * world.height());
+    }
+
+    /** Writes the floors and overlays of the tiles in [start, end). */
+    public void writeFloors(DataOutput stream, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
             Tile tile = world.rawTile(i % world.width(), i / world.width());
             stream.writeShort(tile.floorID());
             stream.writeShort(tile.overlayID());
             int consecutives = 0;
 
-            for(int j = i + 1; j < world.width() * world.height() && consecutives < 255; j++){
+            for(int j = i + 1; j < end && consecutives < 255; j++){
                 Tile nextTile = world.rawTile(j % world.width(), j / world.width());
 
                 if(nextTile.floorID() != tile.floorID() || nextTile.overlayID() != tile.overlayID()){
@@ -212,9 +249,11 @@ public abstract class SaveVersion extends SaveFileReader{
             stream.writeByte(consecutives);
             i += consecutives;
         }
+    }
 
-        //blocks
-        for(int i = 0; i < world.width() * world.height(); i++){
+    /** Writes the blocks and buildings of the tiles in [start, end). */
+    public void writeBlocks(DataOutput stream, int start, int end) throws IOException{
+        for(int i = start; i < end; i++){
             Tile tile = world.rawTile(i % world.width(), i / world.width());
             stream.writeShort(tile.blockID());
 
@@ -241,7 +280,7 @@ public abstract class SaveVersion extends SaveFileReader{
                 //write consecutive non-entity blocks
                 int consecutives = 0;
 
-                for(int j = i + 1; j < world.width() * world.height() && consecutives < 255; j++){
+                for(int j = i + 1; j < end && consecutives < 255; j++){
                     Tile nextTile = world.rawTile(j % world.width(), j / world.width());
 
                     if(nextTile.blockID() != tile.blockID()){
@@ -269,75 +308,83 @@ public abstract class SaveVersion extends SaveFileReader{
             context.resize(width, height);
 
             //read floor and create tiles first
-            for(int i = 0; i < width * height; i++){
-                int x = i % width, y = i / width;
-                short floorid = stream.readShort();
-                short oreid = stream.readShort();
-                int consecutives = stream.readUnsignedByte();
-                if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
+            readFloors(stream, width, 0, width * height, context);
+            readBlocks(stream, 0, width * height, context);
+        }finally{
+            if(!generating) context.end();
+        }
+    }
 
-                context.create(x, y, floorid, oreid, (short)0);
+    /** Reads the floors of the tiles in [start, end), creating the tiles. */
+    public void readFloors(DataInput stream, int width, int start, int end, WorldContext context) throws IOException{
+        for(int i = start; i < end; i++){
+            int x = i % width, y = i / width;
+            short floorid = stream.readShort();
+            short oreid = stream.readShort();
+            int consecutives = stream.readUnsignedByte();
+            if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
 
-                for(int j = i + 1; j < i + 1 + consecutives; j++){
-                    int newx = j % width, newy = j / width;
-                    context.create(newx, newy, floorid, oreid, (short)0);
-                }
+            context.create(x, y, floorid, oreid, (short)0);
 
-                i += consecutives;
+            for(int j = i + 1; j < i + 1 + consecutives; j++){
+                int newx = j % width, newy = j / width;
+                context.create(newx, newy, floorid, oreid, (short)0);
             }
 
-            //read blocks
-            for(int i = 0; i < width * height; i++){
-                Block block = content.block(stream.readShort());
-                Tile tile = context.tile(i);
-                if(block == null) block = Blocks.air;
-                boolean isCenter = true;
-                byte packedCheck = stream.readByte();
-                boolean hadEntity = (packedCheck & 1) != 0;
-                boolean hadData = (packedCheck & 2) != 0;
-
-                if(hadEntity){
-                    isCenter = stream.readBoolean();
-                }
+            i += consecutives;
+        }
+    }
 
-                //set block only if this is the center; otherwise, it's handled elsewhere
-                if(isCenter){
-                    tile.setBlock(block);
-                }
+    /** Reads the blocks and buildings of the tiles in [start, end). The tiles must already exist. */
+    public void readBlocks(DataInput stream, int start, int end, WorldContext context) throws IOException{
+        for(int i = start; i < end; i++){
+            Block block = content.block(stream.readShort());
+            Tile tile = context.tile(i);
+            if(block == null) block = Blocks.air;
+            boolean isCenter = true;
+            byte packedCheck = stream.readByte();
+            boolean hadEntity = (packedCheck & 1) != 0;
+            boolean hadData = (packedCheck & 2) != 0;
+
+            if(hadEntity){
+                isCenter = stream.readBoolean();
+            }
 
-                if(hadEntity){
-                    if(isCenter){ //only read entity for center blocks
-                        if(block.hasBuilding()){
-                            try{
-                                readChunk(stream, true, in -> {
-                                    byte revision = in.readByte();
-                                    tile.build.readAll(Reads.get(in), revision);
-                                });
-                            }catch(Throwable e){
-                                throw new IOException("Failed to read tile entity of block: " + block, e);
-                            }
-                        }else{
-                            //skip the entity region, as the entity and its IO code are now gone
-                            skipChunk(stream, true);
-                        }
+            //set block only if this is the center; otherwise, it's handled elsewhere
+            if(isCenter){
+                tile.setBlock(block);
+            }
 
-                        context.onReadBuilding();
+            if(hadEntity){
+                if(isCenter){ //only read entity for center blocks
+                    if(block.hasBuilding()){
+                        try{
+                            readChunk(stream, true, in -> {
+                                byte revision = in.readByte();
+                                tile.build.readAll(Reads.get(in), revision);
+                            });
+                        }catch(Throwable e){
+                            throw new IOException("Failed to read tile entity of block: " + block, e);
+                        }
+                    }else{
+                        //skip the entity region, as the entity and its IO code are now gone
+                        skipChunk(stream, true);
                     }
-                }else if(hadData){
-                    tile.setBlock(block);
-                    tile.data = stream.readByte();
-                }else{
-                    int consecutives = stream.readUnsignedByte();
 
-                    for(int j = i + 1; j < i + 1 + consecutives; j++){
-                        context.tile(j).setBlock(block);
-                    }
+                    context.onReadBuilding();
+                }
+            }else if(hadData){
+                tile.setBlock(block);
+                tile.data = stream.readByte();
+            }else{
+                int consecutives = stream.readUnsignedByte();
 
-                    i += consecutives;
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    context.tile(j).setBlock(block);
                 }
+
+                i += consecutives;
             }
-        }finally{
-            if(!generating) context.end();
         }
     }
 
@@ -0,0 +1,265 @@
+package mindustry.io.versions;
+
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.io.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * This version splits the map into bands of rows, and compresses the floors and blocks of each band and the entities as separate regions.
+ * Floors are encoded and all regions are compressed in parallel on the common fork-join pool, while buildings and entities are still serialized on the calling thread.
+ * As all game state is encoded before anything is compressed, a {@link #snapshot(StringMap)} can be compressed and written on another thread.
+ * The save file itself is only stored, not compressed again.
+ */
+public class Save8 extends SaveVersion{
+    /** Rows of tiles in each band. */
+    public static final int bandRows = 64;
+
+    public Save8(){
+        this(8);
+    }
+
+    protected Save8(int version){
+        super(version);
+    }
+
+    @Override
+    public boolean compressesRegions(){
+        return true;
+    }
+
+    @Override
+    public void write(DataOutputStream stream, StringMap extraTags) throws IOException{
+        snapshot(extraTags).accept(stream);
+    }
+
+    @Override
+    public IORunner<DataOutput> snapshot(StringMap extraTags) throws IOException{
+        MapData map = encodeMap(null);
+        return snapshot(extraTags, map::write);
+    }
+
+    /** @param map writes the contents of the map region, which must already be encoded */
+    protected IORunner<DataOutput> snapshot(StringMap extraTags, IORunner<DataOutput> map) throws IOException{
+        //everything that reads game state is encoded here; compression happens when the snapshot is written
+        ReusableByteOutStream meta = encode(out -> writeMeta(out, extraTags)), contentHeader = encode(this::writeContentHeader);
+        ReusableByteOutStream entities = encode(this::writeEntities), custom = encode(out -> writeCustomChunks(out, false));
+
+        return stream -> {
+            var entityTask = compress(entities);
+            writeRegion(stream, "meta", out -> out.write(meta.getBytes(), 0, meta.size()));
+            writeRegion(stream, "content", out -> out.write(contentHeader.getBytes(), 0, contentHeader.size()));
+            writeRegion(stream, "map", map);
+            writeRegion(stream, "entities", out -> entityTask.join().write(out));
+            writeRegion(stream, "custom", out -> out.write(custom.getBytes(), 0, custom.size()));
+        };
+    }
+
+    @Override
+    public void writeMapRegion(DataOutput stream) throws IOException{
+        encodeMap(null).write(stream);
+    }
+
+    @Override
+    public void readMapRegion(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int rows = stream.readUnsignedShort();
+        int bands = (height + rows - 1) / rows;
+
+        //the stream is read sequentially, but all bands can be decompressed at once
+        Seq<ForkJoinTask<byte[]>> floors = new Seq<>(bands), blocks = new Seq<>(bands);
+        for(int i = 0; i < bands; i++){
+            floors.add(decompress(Region.read(stream)));
+        }
+        for(int i = 0; i < bands; i++){
+            blocks.add(decompress(Region.read(stream)));
+        }
+
+        readBands(context, width, height, rows, floors, blocks);
+    }
+
+    /** Creates the tiles from the decompressed bands of a map. */
+    void readBands(WorldContext context, int width, int height, int rows, Seq<ForkJoinTask<byte[]>> floors, Seq<ForkJoinTask<byte[]>> blocks) throws IOException{
+        int bands = floors.size;
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            for(int i = 0; i < bands; i++){
+                readFloors(new DataInputStream(new ByteArrayInputStream(floors.get(i).join())), width, i * rows * width, Math.min((i + 1) * rows, height) * width, context);
+            }
+            for(int i = 0; i < bands; i++){
+                readBlocks(new DataInputStream(new ByteArrayInputStream(blocks.get(i).join())), i * rows * width, Math.min((i + 1) * rows, height) * width, context);
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    @Override
+    public void writeEntitiesRegion(DataOutput stream) throws IOException{
+        compress(encode(this::writeEntities)).join().write(stream);
+    }
+
+    @Override
+    public void readEntitiesRegion(DataInput stream) throws IOException{
+        Region region = Region.read(stream);
+        readEntities(new DataInputStream(new ByteArrayInputStream(region.decompress())));
+    }
+
+    /** @param blockBands the bands to encode the blocks of, or null to encode all of them. The blocks of other bands are null. */
+    MapData encodeMap(@Nullable Bits blockBands) throws IOException{
+        int width = world.width(), height = world.height();
+        int bands = (height + bandRows - 1) / bandRows;
+        MapData map = new MapData(width, height, bands);
+
+        for(int i = 0; i < bands; i++){
+            int start = i * bandRows * width, end = Math.min((i + 1) * bandRows, height) * width;
+
+            //floors are plain tile data, so they can be encoded on another thread while this one serializes buildings
+            map.floorTasks.add(ForkJoinPool.commonPool().submit(() -> {
+                ReusableByteOutStream bytes = new ReusableByteOutStream();
+                try{
+                    writeFloors(new DataOutputStream(bytes), start, end);
+                }catch(IOException e){
+                    throw new RuntimeException(e);
+                }
+                return bytes;
+            }));
+
+            //buildings are serialized here, as their write methods are not thread-safe
+            map.blocks.add(blockBands == null || blockBands.get(i) ? encode(out -> writeBlocks(out, start, end)) : null);
+        }
+
+        //the world may change once this returns, so wait for the floors
+        for(var task : map.floorTasks){
+            map.floors.add(task.join());
+        }
+        map.floorTasks.clear();
+        return map;
+    }
+
+    static ReusableByteOutStream encode(IORunner<DataOutput> runner) throws IOException{
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        runner.accept(new DataOutputStream(bytes));
+        return bytes;
+    }
+
+    /** Writes a region with its length. This does not use the shared chunk buffers, so it can be called from any thread. */
+    static void writeRegion(DataOutput stream, String name, IORunner<DataOutput> runner) throws IOException{
+        try{
+            ReusableByteOutStream bytes = encode(runner);
+            stream.writeInt(bytes.size());
+            stream.write(bytes.getBytes(), 0, bytes.size());
+        }catch(Throwable e){
+            throw new IOException("Error writing region \"" + name + "\".", e);
+        }
+    }
+
+    static ForkJoinTask<Region> compress(ReusableByteOutStream bytes){
+        return ForkJoinPool.commonPool().submit(() -> Region.compress(bytes));
+    }
+
+    static ForkJoinTask<byte[]> decompress(Region region){
+        return ForkJoinPool.commonPool().submit(region::decompress);
+    }
+
+    /** The uncompressed floor and block bands of the map. */
+    static class MapData{
+        final int width, height;
+        final Seq<ForkJoinTask<ReusableByteOutStream>> floorTasks;
+        final Seq<ReusableByteOutStream> floors, blocks;
+
+        MapData(int width, int height, int bands){
+            this.width = width;
+            this.height = height;
+            floorTasks = new Seq<>(bands);
+            floors = new Seq<>(bands);
+            blocks = new Seq<>(bands);
+        }
+
+        void write(DataOutput stream) throws IOException{
+            Seq<ForkJoinTask<Region>> tasks = new Seq<>(floors.size + blocks.size);
+            for(var bytes : floors) tasks.add(compress(bytes));
+            for(var bytes : blocks) tasks.add(compress(bytes));
+
+            stream.writeShort(width);
+            stream.writeShort(height);
+            stream.writeShort(bandRows);
+            for(var task : tasks){
+                task.join().write(stream);
+            }
+        }
+    }
+
+    /** A compressed region, stored as its raw length, compressed length and the compressed bytes. */
+    static class Region{
+        final int size;
+        final byte[] data;
+
+        Region(int size, byte[] data){
+            this.size = size;
+            this.data = data;
+        }
+
+        static Region compress(ReusableByteOutStream bytes){
+            Deflater deflater = new Deflater();
+            try{
+                deflater.setInput(bytes.getBytes(), 0, bytes.size());
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(bytes.size() / 4, 64));
+                byte[] buffer = new byte[8192];
+                while(!deflater.finished()){
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return new Region(bytes.size(), out.toByteArray());
+            }finally{
+                deflater.end();
+            }
+        }
+
+        static Region read(DataInput stream) throws IOException{
+            int size = stream.readInt();
+            byte[] data = new byte[stream.readInt()];
+            stream.readFully(data);
+            return new Region(size, data);
+        }
+
+        void write(DataOutput stream) throws IOException{
+            stream.writeInt(size);
+            stream.writeInt(data.length);
+            stream.write(data);
+        }
+
+        byte[] decompress(){
+            Inflater inflater = new Inflater();
+            try{
+                inflater.setInput(data);
+                byte[] out = new byte[size];
+                int read = 0;
+                while(read < size){
+                    int amount = inflater.inflate(out, read, size - read);
+                    if(amount == 0 && (inflater.finished() || inflater.needsInput())){
+                        throw new IOException("Region is truncated: expected " + size + " bytes, got " + read);
+                    }
+                    read += amount;
+                }
+                return out;
+            }catch(IOException | DataFormatException e){
+                throw new RuntimeException(e);
+            }finally{
+                inflater.end();
+            }
+        }
+    }
+}
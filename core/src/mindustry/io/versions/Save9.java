@@ -0,0 +1,173 @@
+package mindustry.io.versions;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.io.*;
+import mindustry.io.*;
+import mindustry.io.DeltaSaves.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * This version can store the map as a delta to a full save: only the bands that differ from the base are stored, and the others are read from the base file.
+ * Deltas always refer to a full save, so any of them can be loaded with only its base.
+ */
+public class Save9 extends Save8{
+    static final byte mapFull = 0, mapDelta = 1;
+
+    public Save9(){
+        super(9);
+    }
+
+    @Override
+    public IORunner<DataOutput> snapshot(StringMap extraTags) throws IOException{
+        MapData map = encodeMap(null);
+        return snapshot(extraTags, out -> {
+            out.writeByte(mapFull);
+            map.write(out);
+        });
+    }
+
+    @Override
+    public void writeMapRegion(DataOutput stream) throws IOException{
+        stream.writeByte(mapFull);
+        super.writeMapRegion(stream);
+    }
+
+    /** Captures a full save, and records the contents of its bands in the base once it is written. */
+    public IORunner<DataOutput> snapshotBase(StringMap extraTags, Base base) throws IOException{
+        MapData map = encodeMap(null);
+        return snapshot(extraTags, out -> {
+            base.floorHashes = hashes(map.floors);
+            base.blockHashes = hashes(map.blocks);
+            out.writeByte(mapFull);
+            map.write(out);
+            base.written = true;
+        });
+    }
+
+    /**
+     * Captures a save that only contains the bands that differ from the base.
+     * @param blockBands the bands that may have changed blocks; the blocks of other bands are not even encoded
+     */
+    public IORunner<DataOutput> snapshotDelta(StringMap extraTags, Base base, Bits blockBands) throws IOException{
+        MapData map = encodeMap(blockBands);
+        return snapshot(extraTags, out -> {
+            //the base is written by the same thread, so it is always finished by now unless it failed
+            if(!base.written) throw new IOException("Base save \"" + base.name + "\" was not written.");
+
+            out.writeByte(mapDelta);
+            out.writeUTF(base.name);
+            out.writeShort(map.width);
+            out.writeShort(map.height);
+            out.writeShort(bandRows);
+            writeChanged(out, map.floors, base.floorHashes);
+            writeChanged(out, map.blocks, base.blockHashes);
+        });
+    }
+
+    @Override
+    public void readMapRegion(DataInput stream, WorldContext context) throws IOException{
+        if(stream.readByte() == mapFull){
+            super.readMapRegion(stream, context);
+            return;
+        }
+
+        String baseName = stream.readUTF();
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int rows = stream.readUnsignedShort();
+        int bands = (height + rows - 1) / rows;
+
+        Region[] floors = readChanged(stream, bands), blocks = readChanged(stream, bands);
+        Region[][] base = null;
+
+        Seq<ForkJoinTask<byte[]>> floorTasks = new Seq<>(bands), blockTasks = new Seq<>(bands);
+        for(int i = 0; i < bands * 2; i++){
+            Region[] regions = i < bands ? floors : blocks;
+            int band = i % bands;
+
+            if(regions[band] == null){
+                if(base == null) base = readBase(baseName, width, height, rows, bands);
+                regions[band] = base[i < bands ? 0 : 1][band];
+            }
+
+            (i < bands ? floorTasks : blockTasks).add(decompress(regions[band]));
+        }
+
+        readBands(context, width, height, rows, floorTasks, blockTasks);
+    }
+
+    /** Reads the floor and block bands of a full save. */
+    private Region[][] readBase(String name, int width, int height, int rows, int bands) throws IOException{
+        Fi file = saveDirectory.child(name);
+        if(!file.exists()) throw new IOException("Base save \"" + name + "\" of delta save not found.");
+
+        try(DataInputStream stream = SaveIO.getStream(file)){
+            SaveIO.readHeader(stream);
+            int version = stream.readInt();
+            if(version != this.version) throw new IOException("Base save \"" + name + "\" has version " + version + ", expected " + this.version + ".");
+
+            //meta and content are not needed
+            skipChunk(stream);
+            skipChunk(stream);
+            stream.readInt();
+
+            if(stream.readByte() != mapFull) throw new IOException("Base save \"" + name + "\" is not a full save.");
+            if(stream.readUnsignedShort() != width || stream.readUnsignedShort() != height || stream.readUnsignedShort() != rows){
+                throw new IOException("Base save \"" + name + "\" has a different map size.");
+            }
+
+            Region[][] regions = new Region[2][bands];
+            for(int i = 0; i < bands * 2; i++){
+                regions[i / bands][i % bands] = Region.read(stream);
+            }
+            return regions;
+        }
+    }
+
+    private static void writeChanged(DataOutput stream, Seq<ReusableByteOutStream> bands, long[] hashes) throws IOException{
+        //compress all changed bands at once before writing them in order
+        Seq<ForkJoinTask<Region>> tasks = new Seq<>(bands.size);
+        for(int i = 0; i < bands.size; i++){
+            ReusableByteOutStream bytes = bands.get(i);
+            tasks.add(bytes == null || hash(bytes) == hashes[i] ? null : compress(bytes));
+        }
+
+        for(var task : tasks){
+            stream.writeBoolean(task != null);
+            if(task != null) task.join().write(stream);
+        }
+    }
+
+    private static Region[] readChanged(DataInput stream, int bands) throws IOException{
+        Region[] regions = new Region[bands];
+        for(int i = 0; i < bands; i++){
+            if(stream.readBoolean()) regions[i] = Region.read(stream);
+        }
+        return regions;
+    }
+
+    private static long[] hashes(Seq<ReusableByteOutStream> bands){
+        long[] out = new long[bands.size];
+        for(int i = 0; i < out.length; i++){
+            out[i] = hash(bands.get(i));
+        }
+        return out;
+    }
+
+    /** 64-bit FNV-1a hash of the bytes. */
+    private static long hash(ReusableByteOutStream bytes){
+        byte[] data = bytes.getBytes();
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0, size = bytes.size(); i < size; i++){
+            hash ^= data[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash ^ bytes.size();
+    }
+}
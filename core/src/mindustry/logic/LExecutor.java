@@ -18,6 +18,7 @@ import mindustry.game.*;
 import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.logic.LogicFx.*;
+import mindustry.net.Administration.*;
 import mindustry.type.*;
 import mindustry.world.*;
 import mindustry.world.blocks.environment.*;
@@ -46,8 +47,25 @@ public class LExecutor{
     maxTextBuffer = 400;
 
     public LInstruction[] instructions = {};
+    /** Compiled form of each instruction, see {@link #compile()}. Null if the instructions are only interpreted. */
+    public @Nullable int[] compiledKinds;
+    /** Names of the variables of this processor, indexed by variable ID. Global constants are not included. */
+    public String[] names = {};
+    /** Numeric values of the variables. Only meaningful for variables that are not in {@link #objects}. */
+    public double[] numvals = {};
+    /** Object values of the variables. Only meaningful for variables that are in {@link #objects}. */
+    public Object[] objvals = {};
+    /** Variables that currently hold an object, and variables that can't be changed by instructions. */
+    public Bits objects = new Bits(), constants = new Bits();
+    /** ms timestamps for when each variable was last synced; used in the sync instruction. Allocated on first use. */
+    long[] syncTimes;
+    /**
+     * Variables of this processor as objects, kept for mods. Empty until {@link #var(int)} is first called, and each entry is null until that variable is fetched.
+     * <b>These are copies.</b> Values are only updated when a variable is fetched with {@link #var(int)}, and writing to them does not change the processor.
+     * @deprecated use {@link #names}, {@link #numvals} and {@link #objvals}.
+     */
+    @Deprecated
     public Var[] vars = {};
-    public Var counter;
     public int[] binds;
 
     public int iptIndex = -1;
@@ -59,6 +77,13 @@ public class LExecutor{
     public Team team = Team.derelict;
     public boolean privileged = false;
 
+    /** Whether to count how often each instruction runs, see {@link LogicScheduler}. */
+    public boolean profiling;
+    /** Profiling data: amount of times each instruction ran. Null if this processor was never profiled. */
+    public @Nullable int[] profiledCounts;
+    /** Profiling data: total instructions run and time taken. */
+    public long profiledInstructions, profiledNanos;
+
     //yes, this is a minor memory leak, but it's probably not significant enough to matter
     protected IntFloatMap unitTimeouts = new IntFloatMap();
 
@@ -76,93 +101,314 @@ public class LExecutor{
 
     /** Runs a single instruction. */
     public void runOnce(){
+        double[] numvals = this.numvals;
+
         //reset to start
-        if(counter.numval >= instructions.length || counter.numval < 0){
-            counter.numval = 0;
+        if(numvals[varCounter] >= instructions.length || numvals[varCounter] < 0){
+            numvals[varCounter] = 0;
         }
 
-        if(counter.numval < instructions.length){
-            instructions[(int)(counter.numval++)].run(this);
+        if(numvals[varCounter] < instructions.length){
+            int index = (int)(numvals[varCounter]++);
+
+            if(profiling && profiledCounts != null){
+                profiledCounts[index] ++;
+            }
+
+            //compiled instructions skip the virtual call, anything with side effects is interpreted
+            if(compiledKinds == null || !runCompiled(index)){
+                instructions[index].run(this);
+            }
         }
     }
 
-    /** Loads with a specified assembler. Resets all variables. */
+    /** Loads with a specified assembler. Resets all variables. Compiles instructions if enabled in the config. */
     public void load(LAssembler builder){
-        vars = new Var[builder.vars.size];
+        load(builder, Config.compileLogic.bool());
+    }
+
+    /** Loads with a specified assembler. Resets all variables. */
+    public void load(LAssembler builder, boolean compile){
+        int count = builder.vars.size;
+        names = new String[count];
+        numvals = new double[count];
+        objvals = new Object[count];
+        objects = new Bits(count);
+        constants = new Bits(count);
+        syncTimes = null;
+        vars = new Var[0];
         instructions = builder.instructions;
+        if(profiledCounts != null){
+            profiledCounts = new int[instructions.length];
+        }
         iptIndex = -1;
 
         builder.vars.each((name, var) -> {
-            Var dest = new Var(name);
-            vars[var.id] = dest;
-            if(dest.name.equals("@ipt")){
+            names[var.id] = name;
+            if(name.equals("@ipt")){
                 iptIndex = var.id;
             }
 
-            dest.constant = var.constant;
+            if(var.constant){
+                constants.set(var.id);
+            }
 
             if(var.value instanceof Number number){
-                dest.isobj = false;
-                dest.numval = number.doubleValue();
+                numvals[var.id] = number.doubleValue();
             }else{
-                dest.isobj = true;
-                dest.objval = var.value;
+                objects.set(var.id);
+                objvals[var.id] = var.value;
             }
         });
 
-        counter = vars[varCounter];
+        if(compile){
+            compile();
+        }else{
+            compiledKinds = null;
+        }
+    }
+
+    //region compilation
+
+    private static final int
+    kindInterpret = 0,
+    kindNoop = 1,
+    kindSet = 2,
+    kindJump = 3,
+    kindJumpCondition = 4,
+    kindOp = 5,
+    kindOpUnary = 6;
+
+    /** Operands of each compiled instruction, 3 per instruction. */
+    int[] compiledArgs;
+    /** Operators of compiled op instructions. */
+    LogicOp[] compiledOps;
+    /** Conditions of compiled jump instructions. */
+    ConditionOp[] compiledConditions;
+
+    /**
+     * Translates set, op and jump instructions into a compact form that is executed directly in {@link #runCompiled(int)},
+     * without a virtual call per instruction. Only the exact base instruction classes are compiled, as subclasses may change their behavior.
+     */
+    void compile(){
+        int len = instructions.length;
+        compiledKinds = new int[len];
+        compiledArgs = new int[len * 3];
+        compiledOps = new LogicOp[len];
+        compiledConditions = new ConditionOp[len];
+
+        for(int i = 0; i < len; i++){
+            LInstruction inst = instructions[i];
+            Class<?> type = inst.getClass();
+            int base = i * 3;
+
+            if(type == NoopI.class){
+                compiledKinds[i] = kindNoop;
+            }else if(type == SetI.class){
+                SetI set = (SetI)inst;
+                compiledKinds[i] = kindSet;
+                compiledArgs[base] = set.from;
+                compiledArgs[base + 2] = set.to;
+            }else if(type == JumpI.class){
+                JumpI jump = (JumpI)inst;
+                compiledKinds[i] =
+                    jump.address == -1 ? kindNoop :
+                    jump.op == ConditionOp.always ? kindJump :
+                    jump.op == ConditionOp.strictEqual ? kindInterpret :
+                    kindJumpCondition;
+                compiledArgs[base] = jump.value;
+                compiledArgs[base + 1] = jump.compare;
+                compiledArgs[base + 2] = jump.address;
+                compiledConditions[i] = jump.op;
+            }else if(type == OpI.class){
+                OpI op = (OpI)inst;
+                compiledKinds[i] =
+                    op.op == LogicOp.strictEqual ? kindInterpret :
+                    op.op.unary ? kindOpUnary :
+                    kindOp;
+                compiledArgs[base] = op.a;
+                compiledArgs[base + 1] = op.b;
+                compiledArgs[base + 2] = op.dest;
+                compiledOps[i] = op.op;
+            }
+        }
     }
 
+    /**
+     * Runs a compiled instruction. Must behave exactly like the run() method of the original instruction.
+     * @return false if the instruction must be interpreted instead.
+     */
+    boolean runCompiled(int index){
+        int[] args = compiledArgs;
+        int base = index * 3;
+
+        switch(compiledKinds[index]){
+            case kindNoop -> {}
+            case kindSet -> copy(args[base], args[base + 2]);
+            case kindJump -> numvals[varCounter] = args[base + 2];
+            case kindJumpCondition -> {
+                ConditionOp op = compiledConditions[index];
+                int a = args[base], b = args[base + 1];
+
+                //object comparisons are left to the interpreter
+                if(op.objFunction != null && isobj(a) && isobj(b)) return false;
+
+                if(compare(op, num(a), num(b))){
+                    numvals[varCounter] = args[base + 2];
+                }
+            }
+            case kindOp -> {
+                LogicOp op = compiledOps[index];
+                int a = args[base], b = args[base + 1];
+
+                if(op.objFunction2 != null && isobj(a) && isobj(b)) return false;
+
+                setnum(args[base + 2], operate(op, num(a), num(b)));
+            }
+            case kindOpUnary -> setnum(args[base + 2], compiledOps[index].function1.get(num(args[base])));
+            default -> {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** Same as {@link LogicOp#function2}, with the common operators inlined. */
+    static double operate(LogicOp op, double a, double b){
+        return switch(op){
+            case add -> a + b;
+            case sub -> a - b;
+            case mul -> a * b;
+            case div -> a / b;
+            case idiv -> Math.floor(a / b);
+            case mod -> a % b;
+            case equal -> Math.abs(a - b) < 0.000001 ? 1 : 0;
+            case notEqual -> Math.abs(a - b) < 0.000001 ? 0 : 1;
+            case land -> a != 0 && b != 0 ? 1 : 0;
+            case lessThan -> a < b ? 1 : 0;
+            case lessThanEq -> a <= b ? 1 : 0;
+            case greaterThan -> a > b ? 1 : 0;
+            case greaterThanEq -> a >= b ? 1 : 0;
+            case max -> Math.max(a, b);
+            case min -> Math.min(a, b);
+            default -> op.function2.get(a, b);
+        };
+    }
+
+    /** Same as {@link ConditionOp#function}, with the common conditions inlined. */
+    static boolean compare(ConditionOp op, double a, double b){
+        return switch(op){
+            case equal -> Math.abs(a - b) < 0.000001;
+            case notEqual -> Math.abs(a - b) >= 0.000001;
+            case lessThan -> a < b;
+            case lessThanEq -> a <= b;
+            case greaterThan -> a > b;
+            case greaterThanEq -> a >= b;
+            default -> op.function.get(a, b);
+        };
+    }
+
+    //endregion
     //region utility
 
     private static boolean invalid(double d){
         return Double.isNaN(d) || Double.isInfinite(d);
     }
 
+    /** @return the amount of variables in this processor, not including global constants. */
+    public int varCount(){
+        return names.length;
+    }
+
+    /**
+     * @return a global constant, or a copy of a variable of this processor with its current value. Changing the copy does not change the variable.
+     * @deprecated use the accessors of this class, such as {@link #num(int)}, {@link #obj(int)} and {@link #setnum(int, double)}.
+     */
+    @Deprecated
     public Var var(int index){
-        //global constants have variable IDs < 0, and they are fetched from the global constants object after being negated
-        return index < 0 ? logicVars.get(-index) : vars[index];
+        if(index < 0) return logicVars.get(-index);
+
+        //only processors used by mods pay for these
+        if(vars.length != names.length){
+            vars = new Var[names.length];
+        }
+
+        Var v = vars[index];
+        if(v == null){
+            v = vars[index] = new Var(names[index]);
+        }
+        v.constant = constants.get(index);
+        v.isobj = objects.get(index);
+        v.numval = numvals[index];
+        v.objval = objvals[index];
+        return v;
     }
 
-    /** @return a Var from this processor, never a global constant. May be null if out of bounds. */
+    /**
+     * @return a copy of a variable from this processor, never a global constant. May be null if out of bounds.
+     * @deprecated see {@link #var(int)}.
+     */
+    @Deprecated
     public @Nullable Var optionalVar(int index){
-        return index < 0 || index >= vars.length ? null : vars[index];
+        return index < 0 || index >= names.length ? null : var(index);
+    }
+
+    /** @return whether this variable currently holds an object. */
+    public boolean isobj(int index){
+        //global constants have variable IDs < 0, and they are fetched from the global constants object after being negated
+        return index < 0 ? logicVars.get(-index).isobj : objects.get(index);
+    }
+
+    /** @return whether this variable can't be changed by instructions. Global constants are always constant. */
+    public boolean constant(int index){
+        return index < 0 || constants.get(index);
+    }
+
+    /** @return the raw numeric value of a variable, without checking whether it holds an object. */
+    public double numval(int index){
+        return index < 0 ? logicVars.get(-index).numval : numvals[index];
+    }
+
+    /** @return the value of a variable, with numbers boxed as doubles. */
+    public @Nullable Object value(int index){
+        return isobj(index) ? obj(index) : numval(index);
     }
 
     public @Nullable Building building(int index){
-        Object o = var(index).objval;
-        return var(index).isobj && o instanceof Building building ? building : null;
+        return obj(index) instanceof Building building ? building : null;
     }
 
     public @Nullable Object obj(int index){
-        Object o = var(index).objval;
-        return var(index).isobj ? o : null;
+        if(index < 0){
+            Var v = logicVars.get(-index);
+            return v.isobj ? v.objval : null;
+        }
+        return objects.get(index) ? objvals[index] : null;
     }
 
     public @Nullable Team team(int index){
-        Var v = var(index);
-        if(v.isobj){
-            return v.objval instanceof Team t ? t : null;
+        if(isobj(index)){
+            return obj(index) instanceof Team t ? t : null;
         }else{
-            int t = (int)v.numval;
+            int t = (int)numval(index);
             if(t < 0 || t >= Team.all.length) return null;
             return Team.all[t];
         }
     }
 
     public boolean bool(int index){
-        Var v = var(index);
-        return v.isobj ? v.objval != null : Math.abs(v.numval) >= 0.00001;
+        return isobj(index) ? obj(index) != null : Math.abs(numval(index)) >= 0.00001;
     }
 
     public double num(int index){
-        Var v = var(index);
-        return v.isobj ? v.objval != null ? 1 : 0 : invalid(v.numval) ? 0 : v.numval;
+        if(isobj(index)) return obj(index) != null ? 1 : 0;
+        double value = numval(index);
+        return invalid(value) ? 0 : value;
     }
 
     public float numf(int index){
-        Var v = var(index);
-        return v.isobj ? v.objval != null ? 1 : 0 : invalid(v.numval) ? 0 : (float)v.numval;
+        return (float)num(index);
     }
 
     public int numi(int index){
@@ -174,34 +420,46 @@ public class LExecutor{
     }
 
     public void setnum(int index, double value){
-        Var v = var(index);
-        if(v.constant) return;
+        if(constant(index)) return;
+        objvals[index] = null;
         if(invalid(value)){
-            v.objval = null;
-            v.isobj = true;
+            objects.set(index);
         }else{
-            v.numval = value;
-            v.objval = null;
-            v.isobj = false;
+            numvals[index] = value;
+            objects.clear(index);
         }
     }
 
     public void setobj(int index, Object value){
-        Var v = var(index);
-        if(v.constant) return;
-        v.objval = value;
-        v.isobj = true;
+        if(constant(index)) return;
+        objvals[index] = value;
+        objects.set(index);
     }
 
+    /** Sets a variable of this processor to an object, even if it is constant. */
     public void setconst(int index, Object value){
-        Var v = var(index);
-        v.objval = value;
-        v.isobj = true;
+        if(index < 0) return;
+        objvals[index] = value;
+        objects.set(index);
+    }
+
+    /** Copies the value of one variable into another, the same way the set instruction does. */
+    public void copy(int from, int to){
+        if(constant(to)) return;
+        if(isobj(from)){
+            objvals[to] = obj(from);
+            objects.set(to);
+        }else{
+            double value = numval(from);
+            numvals[to] = invalid(value) ? 0 : value;
+            objvals[to] = null;
+            objects.clear(to);
+        }
     }
 
     //endregion
 
-    /** A logic variable. */
+    /** A global logic constant. Variables of a processor are stored in the register arrays of its executor instead. */
     public static class Var{
         public final String name;
 
@@ -210,7 +468,8 @@ public class LExecutor{
         public Object objval;
         public double numval;
 
-        //ms timestamp for when this was last synced; used in the sync instruction
+        /** @deprecated sync times are stored by the executor; this is never updated. */
+        @Deprecated
         public long syncTime;
 
         public Var(String name){
@@ -619,7 +878,7 @@ public class LExecutor{
                     b.noSleep();
                 }
 
-                if(type.isObj && exec.var(p1).isobj){
+                if(type.isObj && exec.isobj(p1)){
                     b.control(type, exec.obj(p1), exec.num(p2), exec.num(p3), exec.num(p4));
                 }else{
                     b.control(type, exec.num(p1), exec.num(p2), exec.num(p3), exec.num(p4));
@@ -855,18 +1114,7 @@ public class LExecutor{
 
         @Override
         public void run(LExecutor exec){
-            Var v = exec.var(to);
-            Var f = exec.var(from);
-
-            if(!v.constant){
-                if(f.isobj){
-                    v.objval = f.objval;
-                    v.isobj = true;
-                }else{
-                    v.numval = invalid(f.numval) ? 0 : f.numval;
-                    v.isobj = false;
-                }
-            }
+            exec.copy(from, to);
         }
     }
 
@@ -886,15 +1134,12 @@ public class LExecutor{
         @Override
         public void run(LExecutor exec){
             if(op == LogicOp.strictEqual){
-                Var v = exec.var(a), v2 = exec.var(b);
-                exec.setnum(dest, v.isobj == v2.isobj && ((v.isobj && Structs.eq(v.objval, v2.objval)) || (!v.isobj && v.numval == v2.numval)) ? 1 : 0);
+                boolean obj = exec.isobj(a);
+                exec.setnum(dest, obj == exec.isobj(b) && ((obj && Structs.eq(exec.obj(a), exec.obj(b))) || (!obj && exec.numval(a) == exec.numval(b))) ? 1 : 0);
             }else if(op.unary){
                 exec.setnum(dest, op.function1.get(exec.num(a)));
             }else{
-                Var va = exec.var(a);
-                Var vb = exec.var(b);
-
-                if(op.objFunction2 != null && va.isobj && vb.isobj){
+                if(op.objFunction2 != null && exec.isobj(a) && exec.isobj(b)){
                     //use object function if both are objects
                     exec.setnum(dest, op.objFunction2.get(exec.obj(a), exec.obj(b)));
                 }else{
@@ -910,7 +1155,7 @@ public class LExecutor{
 
         @Override
         public void run(LExecutor exec){
-            exec.var(varCounter).numval = exec.instructions.length;
+            exec.numvals[varCounter] = exec.instructions.length;
         }
     }
 
@@ -1016,17 +1261,17 @@ public class LExecutor{
             if(exec.textBuffer.length() >= maxTextBuffer) return;
 
             //this should avoid any garbage allocation
-            Var v = exec.var(value);
-            if(v.isobj && value != 0){
-                String strValue = toString(v.objval);
+            if(exec.isobj(value) && value != 0){
+                String strValue = toString(exec.obj(value));
 
                 exec.textBuffer.append(strValue);
             }else{
+                double num = exec.numval(value);
                 //display integer version when possible
-                if(Math.abs(v.numval - (long)v.numval) < 0.00001){
-                    exec.textBuffer.append((long)v.numval);
+                if(Math.abs(num - (long)num) < 0.00001){
+                    exec.textBuffer.append((long)num);
                 }else{
-                    exec.textBuffer.append(v.numval);
+                    exec.textBuffer.append(num);
                 }
             }
         }
@@ -1087,13 +1332,12 @@ public class LExecutor{
         @Override
         public void run(LExecutor exec){
             if(address != -1){
-                Var va = exec.var(value);
-                Var vb = exec.var(compare);
+                boolean obja = exec.isobj(value), objb = exec.isobj(compare);
                 boolean cmp;
 
                 if(op == ConditionOp.strictEqual){
-                    cmp = va.isobj == vb.isobj && ((va.isobj && va.objval == vb.objval) || (!va.isobj && va.numval == vb.numval));
-                }else if(op.objFunction != null && va.isobj && vb.isobj){
+                    cmp = obja == objb && ((obja && exec.obj(value) == exec.obj(compare)) || (!obja && exec.numval(value) == exec.numval(compare)));
+                }else if(op.objFunction != null && obja && objb){
                     //use object function if both are objects
                     cmp = op.objFunction.get(exec.obj(value), exec.obj(compare));
                 }else{
@@ -1101,7 +1345,7 @@ public class LExecutor{
                 }
 
                 if(cmp){
-                    exec.var(varCounter).numval = address;
+                    exec.numvals[varCounter] = address;
                 }
             }
         }
@@ -1126,7 +1370,7 @@ public class LExecutor{
                 curTime = 0f;
             }else{
                 //skip back to self.
-                exec.var(varCounter).numval --;
+                exec.numvals[varCounter] --;
             }
 
             if(state.updateId != frameId){
@@ -1141,7 +1385,7 @@ public class LExecutor{
         @Override
         public void run(LExecutor exec){
             //skip back to self.
-            exec.var(varCounter).numval --;
+            exec.numvals[varCounter] --;
         }
     }
 
@@ -1543,7 +1787,7 @@ public class LExecutor{
                 type == MessageType.notify && ui.hudfrag.hasToast() ||
                 type == MessageType.toast && ui.hasAnnouncement()
             ){
-                exec.var(varCounter).numval --;
+                exec.numvals[varCounter] --;
                 return;
             }
 
@@ -1649,8 +1893,8 @@ public class LExecutor{
         public void run(LExecutor exec){
             if(exec.build != null && exec.build.block.privileged){
                 exec.build.ipt = Mathf.clamp(exec.numi(amount), 1, ((LogicBlock)exec.build.block).maxInstructionsPerTick);
-                if(exec.iptIndex >= 0 && exec.vars.length > exec.iptIndex){
-                    exec.vars[exec.iptIndex].numval = exec.build.ipt;
+                if(exec.iptIndex >= 0 && exec.varCount() > exec.iptIndex){
+                    exec.numvals[exec.iptIndex] = exec.build.ipt;
                 }
             }
         }
@@ -1659,14 +1903,14 @@ public class LExecutor{
     @Remote(unreliable = true)
     public static void syncVariable(Building building, int variable, Object value){
         if(building instanceof LogicBuild build){
-            Var v = build.executor.optionalVar(variable);
-            if(v != null && !v.constant){
+            LExecutor exec = build.executor;
+            if(variable >= 0 && variable < exec.varCount() && !exec.constant(variable)){
                 if(value instanceof Double d){
-                    v.isobj = false;
-                    v.numval = d;
+                    exec.objects.clear(variable);
+                    exec.numvals[variable] = d;
                 }else{
-                    v.isobj = true;
-                    v.objval = value;
+                    exec.objects.set(variable);
+                    exec.objvals[variable] = value;
                 }
             }
         }
@@ -1688,10 +1932,15 @@ public class LExecutor{
         @Override
         public void run(LExecutor exec){
             if(exec.build != null && exec.build.block.privileged){
-                Var v = exec.var(variable);
-                if(!v.constant && Time.timeSinceMillis(v.syncTime) > syncInterval){
-                    v.syncTime = Time.millis();
-                    Call.syncVariable(exec.build, variable, v.isobj ? v.objval : v.numval);
+                if(exec.constant(variable)) return;
+
+                if(exec.syncTimes == null){
+                    exec.syncTimes = new long[exec.varCount()];
+                }
+
+                if(Time.timeSinceMillis(exec.syncTimes[variable]) > syncInterval){
+                    exec.syncTimes[variable] = Time.millis();
+                    Call.syncVariable(exec.build, variable, exec.value(variable));
                 }
             }
         }
@@ -1810,11 +2059,10 @@ public class LExecutor{
 
             if(target instanceof Settable sp){
                 if(key instanceof LAccess property){
-                    Var var = exec.var(value);
-                    if(var.isobj){
-                        sp.setProp(property, var.objval);
+                    if(exec.isobj(value)){
+                        sp.setProp(property, exec.obj(value));
                     }else{
-                        sp.setProp(property, var.numval);
+                        sp.setProp(property, exec.numval(value));
                     }
                 }else if(key instanceof UnlockableContent content){
                     sp.setProp(content, exec.num(value));
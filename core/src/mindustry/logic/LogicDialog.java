@@ -21,7 +21,6 @@ import mindustry.game.Team;
 import mindustry.gen.*;
 import mindustry.graphics.Pal;
 import mindustry.logic.LExecutor.PrintI;
-import mindustry.logic.LExecutor.Var;
 import mindustry.logic.LStatements.InvalidStatement;
 import mindustry.ui.Fonts;
 import mindustry.ui.Styles;
@@ -140,18 +139,21 @@ public class LogicDialog extends BaseDialog{
         varTable.row();
             varTable.pane(t->{
                 if(executor==null) return;
-                for(var s : executor.vars){
-                    if(s.name.startsWith("___")) continue;
-                    String text = arcVarsText(s);
+                LExecutor exec = executor;
+                for(int index = 0; index < exec.varCount(); index++){
+                    int s = index;
+                    String name = exec.names[s];
+                    if(name.startsWith("___")) continue;
+                    String text = arcVarsText(exec, s);
                     t.table(tt->{
                         tt.background(Tex.whitePane);
 
                         tt.table(tv->{
-                            tv.labelWrap(s.name).width(100f);
+                            tv.labelWrap(name).width(100f);
                             tv.touchable = Touchable.enabled;
                             tv.tapped(()->{
-                                Core.app.setClipboardText(s.name);
-                                ui.arcInfo("[cyan]复制变量名[white]\n " + s.name);
+                                Core.app.setClipboardText(name);
+                                ui.arcInfo("[cyan]复制变量名[white]\n " + name);
                             });
                         });
                         tt.table(tv->{
@@ -163,14 +165,14 @@ public class LogicDialog extends BaseDialog{
                             });
                             tv.update(()->{
                                 if(counter + Time.delta>period && refreshing){
-                                    varPro.setText(arcVarsText(s));
+                                    varPro.setText(arcVarsText(exec, s));
                                 }
                             });
                         }).padLeft(20f);
 
                         tt.update(()->{
                             if(counter + Time.delta>period && refreshing){
-                                tt.setColor(arcVarsColor(s));
+                                tt.setColor(arcVarsColor(exec, s));
                             }
                         });
 
@@ -203,40 +205,48 @@ public class LogicDialog extends BaseDialog{
             }).width(400f).padLeft(20f);
     }
 
-    public static String arcVarsText(Var s){
-        return s.isobj ? PrintI.toString(s.objval) : Math.abs(s.numval - (long)s.numval) < 0.00001 ? (long)s.numval + "" : s.numval + "";
+    /** The executor may have been reloaded with fewer variables since the UI was built, so all of these check the index. */
+    public static String arcVarsText(LExecutor exec, int index){
+        if(index >= exec.varCount()) return "";
+        double num = exec.numval(index);
+        return exec.isobj(index) ? PrintI.toString(exec.obj(index)) : Math.abs(num - (long)num) < 0.00001 ? (long)num + "" : num + "";
     }
 
-    public static Color arcVarsColor(Var s){
-        if(s.constant && s.name.startsWith("@")) return Color.goldenrod;
-        else if (s.constant) return Color.valueOf("00cc7e");
-        else return typeColor(s,new Color());
+    public static Color arcVarsColor(LExecutor exec, int index){
+        boolean constant = index < exec.varCount() && exec.constant(index);
+        if(constant && exec.names[index].startsWith("@")) return Color.goldenrod;
+        else if (constant) return Color.valueOf("00cc7e");
+        else return typeColor(exec, index, new Color());
     }
 
-    private static Color typeColor(Var s, Color color){
+    private static Color typeColor(LExecutor exec, int index, Color color){
+        Object obj = index < exec.varCount() ? exec.obj(index) : null;
         return color.set(
-            !s.isobj ? Pal.place :
-            s.objval == null ? Color.darkGray :
-            s.objval instanceof String ? Pal.ammo :
-            s.objval instanceof Content ? Pal.logicOperations :
-            s.objval instanceof Building ? Pal.logicBlocks :
-            s.objval instanceof Unit ? Pal.logicUnits :
-            s.objval instanceof Team ? Pal.logicUnits :
-            s.objval instanceof Enum<?> ? Pal.logicIo :
+            index >= exec.varCount() ? Color.white :
+            !exec.isobj(index) ? Pal.place :
+            obj == null ? Color.darkGray :
+            obj instanceof String ? Pal.ammo :
+            obj instanceof Content ? Pal.logicOperations :
+            obj instanceof Building ? Pal.logicBlocks :
+            obj instanceof Unit ? Pal.logicUnits :
+            obj instanceof Team ? Pal.logicUnits :
+            obj instanceof Enum<?> ? Pal.logicIo :
             Color.white
         );
     }
 
-    private String typeName(Var s){
+    private String typeName(LExecutor exec, int index){
+        Object obj = index < exec.varCount() ? exec.obj(index) : null;
         return
-            !s.isobj ? "number" :
-            s.objval == null ? "null" :
-            s.objval instanceof String ? "string" :
-            s.objval instanceof Content ? "content" :
-            s.objval instanceof Building ? "building" :
-            s.objval instanceof Team ? "team" :
-            s.objval instanceof Unit ? "unit" :
-            s.objval instanceof Enum<?> ? "enum" :
+            index >= exec.varCount() ? "unknown" :
+            !exec.isobj(index) ? "number" :
+            obj == null ? "null" :
+            obj instanceof String ? "string" :
+            obj instanceof Content ? "content" :
+            obj instanceof Building ? "building" :
+            obj instanceof Team ? "team" :
+            obj instanceof Unit ? "unit" :
+            obj instanceof Enum<?> ? "enum" :
             "unknown";
     }
 
@@ -306,14 +316,16 @@ public class LogicDialog extends BaseDialog{
                 p.margin(10f).marginRight(16f);
                 p.table(Tex.button, t -> {
                     t.defaults().fillX().height(45f);
-                    for(var s : executor.vars){
-                        if(s.constant) continue;
+                    LExecutor exec = executor;
+                    for(int index = 0; index < exec.varCount(); index++){
+                        int s = index;
+                        if(exec.constant(s)) continue;
 
                         Color varColor = Pal.gray;
                         float stub = 8f, mul = 0.5f, pad = 4;
 
                         t.add(new Image(Tex.whiteui, varColor.cpy().mul(mul))).width(stub);
-                        t.stack(new Image(Tex.whiteui, varColor), new Label(" " + s.name + " ", Styles.outlineLabel){{
+                        t.stack(new Image(Tex.whiteui, varColor), new Label(" " + exec.names[s] + " ", Styles.outlineLabel){{
                             setColor(Pal.accent);
                         }}).padRight(pad);
 
@@ -323,7 +335,7 @@ public class LogicDialog extends BaseDialog{
                             Label label = out.add("").style(Styles.outlineLabel).padLeft(4).padRight(4).width(140f).wrap().get();
                             label.update(() -> {
                                 if(counter[0] < 0 || (counter[0] += Time.delta) >= period){
-                                    String text = s.isobj ? PrintI.toString(s.objval) : Math.abs(s.numval - (long)s.numval) < 0.00001 ? (long)s.numval + "" : s.numval + "";
+                                    String text = arcVarsText(exec, s);
                                     if(!label.textEquals(text)){
                                         label.setText(text);
                                         if(counter[0] >= 0f){
@@ -336,11 +348,11 @@ public class LogicDialog extends BaseDialog{
                             label.act(1f);
                         }).padRight(pad);
 
-                        t.add(new Image(Tex.whiteui, typeColor(s, new Color()).mul(mul))).update(i -> i.setColor(typeColor(s, i.color).mul(mul))).width(stub);
+                        t.add(new Image(Tex.whiteui, typeColor(exec, s, new Color()).mul(mul))).update(i -> i.setColor(typeColor(exec, s, i.color).mul(mul))).width(stub);
 
-                        t.stack(new Image(Tex.whiteui, typeColor(s, new Color())){{
-                            update(() -> setColor(typeColor(s, color)));
-                        }}, new Label(() -> " " + typeName(s) + " "){{
+                        t.stack(new Image(Tex.whiteui, typeColor(exec, s, new Color())){{
+                            update(() -> setColor(typeColor(exec, s, color)));
+                        }}, new Label(() -> " " + typeName(exec, s) + " "){{
                             setStyle(Styles.outlineLabel);
                         }});
 
@@ -353,7 +365,7 @@ public class LogicDialog extends BaseDialog{
 
             dialog.addCloseButton();
             dialog.show();
-        }).name("variables").disabled(b -> executor == null || executor.vars.length == 0);
+        }).name("variables").disabled(b -> executor == null || executor.varCount() == 0);
 
         buttons.button("@add", Icon.add, () -> {
             BaseDialog dialog = new BaseDialog("@add");
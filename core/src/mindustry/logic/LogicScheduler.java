@@ -0,0 +1,147 @@
+package mindustry.logic;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.logic.LExecutor.*;
+import mindustry.net.Administration.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Runs the instructions of all logic processors in one batch at the end of each tick.
+ * If a global instruction budget is configured, privileged processors run first, and the rest of the budget is shared evenly between all other processors.
+ * Processors that are throttled keep their accumulated instructions and catch up in later ticks.
+ */
+public class LogicScheduler{
+    private Seq<LogicBuild> queued = new Seq<>(LogicBuild.class), shared = new Seq<>(LogicBuild.class);
+
+    /** Stats of the last update. */
+    public int lastProcessors, lastInstructions, lastThrottled;
+
+    public LogicScheduler(){
+        Events.on(ResetEvent.class, e -> queued.clear());
+    }
+
+    /** Queues a processor to run its pending instructions at the end of this tick. */
+    public void submit(LogicBuild build){
+        queued.add(build);
+    }
+
+    public void update(){
+        int budget = net.client() ? 0 : Config.logicInstructionBudget.num();
+        boolean profile = Config.logicProfiling.bool();
+
+        lastProcessors = queued.size;
+        lastInstructions = 0;
+        lastThrottled = 0;
+
+        if(budget <= 0){
+            for(LogicBuild build : queued){
+                run(build, build.pendingInstructions(), profile);
+            }
+        }else{
+            int remaining = budget;
+            shared.clear();
+
+            //privileged processors are part of the map, so they are never starved by player processors
+            for(LogicBuild build : queued){
+                if(build.block.privileged){
+                    remaining -= run(build, Math.min(build.pendingInstructions(), remaining), profile);
+                }else{
+                    shared.add(build);
+                }
+            }
+
+            //max-min fair share: processors that need less than an even share leave the rest to the others
+            shared.sort(b -> b.pendingInstructions());
+
+            for(int i = 0; i < shared.size; i++){
+                LogicBuild build = shared.items[i];
+                int share = remaining / (shared.size - i);
+                remaining -= run(build, Math.min(build.pendingInstructions(), share), profile);
+            }
+
+            shared.clear();
+        }
+
+        queued.clear();
+    }
+
+    private int run(LogicBuild build, int amount, boolean profile){
+        //the processor may have been removed by another building this tick
+        if(!build.isValid()) return 0;
+
+        if(amount < build.pendingInstructions()){
+            lastThrottled ++;
+        }
+
+        LExecutor exec = build.executor;
+        exec.profiling = profile;
+
+        if(profile){
+            if(exec.profiledCounts == null || exec.profiledCounts.length != exec.instructions.length){
+                exec.profiledCounts = new int[exec.instructions.length];
+            }
+
+            long start = Time.nanos();
+            build.runInstructions(amount);
+            exec.profiledNanos += Time.timeSinceNanos(start);
+            exec.profiledInstructions += amount;
+        }else{
+            build.runInstructions(amount);
+        }
+
+        lastInstructions += amount;
+        return amount;
+    }
+
+    /** @return all processors with profiling data, sorted by the time they took, most expensive first. */
+    public Seq<LogicBuild> profiled(){
+        Seq<LogicBuild> out = new Seq<>();
+        Groups.build.each(b -> b instanceof LogicBuild l && l.executor.profiledInstructions > 0, b -> out.add((LogicBuild)b));
+        out.sort(b -> -b.executor.profiledNanos);
+        return out;
+    }
+
+    /** Clears the profiling data of all processors. */
+    public void resetProfiles(){
+        Groups.build.each(b -> {
+            if(b instanceof LogicBuild l){
+                l.executor.profiledInstructions = 0;
+                l.executor.profiledNanos = 0;
+                l.executor.profiledCounts = null;
+            }
+        });
+    }
+
+    /** @return the instruction types that ran most often in a profiled processor, formatted as a list. */
+    public String topInstructions(LExecutor exec, int amount){
+        if(exec.profiledCounts == null) return "";
+
+        ObjectIntMap<String> counts = new ObjectIntMap<>();
+        for(int i = 0; i < exec.profiledCounts.length && i < exec.instructions.length; i++){
+            String name = instructionName(exec.instructions[i]);
+            counts.put(name, counts.get(name, 0) + exec.profiledCounts[i]);
+        }
+
+        Seq<String> names = counts.keys().toArray();
+        names.sort(n -> -counts.get(n, 0));
+
+        StringBuilder out = new StringBuilder();
+        for(int i = 0; i < Math.min(amount, names.size); i++){
+            if(i > 0) out.append(", ");
+            out.append(names.get(i)).append(" x").append(counts.get(names.get(i), 0));
+        }
+        return out.toString();
+    }
+
+    private static String instructionName(LInstruction inst){
+        String name = inst.getClass().getSimpleName();
+        //instruction classes are named like OpI or UnitBindI
+        return name.endsWith("I") && name.length() > 1 ? Character.toLowerCase(name.charAt(0)) + name.substring(1, name.length() - 1) : name;
+    }
+}
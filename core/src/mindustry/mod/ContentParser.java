@@ -773,18 +773,37 @@ public class ContentParser{
      * @return the content that was parsed
      */
     public Content parse(LoadedMod mod, String name, String json, Fi file, ContentType type) throws Exception{
-        if(contentTypes.isEmpty()){
-            init();
-        }
+        return parse(mod, name, readJson(json, file), file, type);
+    }
+
+    /**
+     * Parses the JSON or HJSON of a content file into a tree, without creating any content.
+     * This does not use any state of the parser, so it can be called from any thread.
+     */
+    public JsonValue readJson(String json, Fi file){
+        return new JsonReader().parse(toPlainJson(json, file));
+    }
 
+    /** Converts the JSON or HJSON of a content file to plain JSON, which is what is parsed into a tree. Can be called from any thread. */
+    public String toPlainJson(String json, Fi file){
         //remove extra # characters to make it valid json... apparently some people have *unquoted* # characters in their json
         if(file.extension().equals("json")){
             json = json.replace("#", "\\#");
         }
 
+        return Jval.read(json).toString(Jformat.plain);
+    }
+
+    /** Creates content from a tree returned by {@link #readJson(String, Fi)}. Must be called in load order. */
+    public Content parse(LoadedMod mod, String name, JsonValue json, Fi file, ContentType type) throws Exception{
+        if(contentTypes.isEmpty()){
+            init();
+        }
+
         currentMod = mod;
 
-        JsonValue value = parser.fromJson(null, Jval.read(json).toString(Jformat.plain));
+        //this notifies parse listeners of the root, like reading it from the string did
+        JsonValue value = parser.readValue((Class<JsonValue>)null, null, json, null);
 
         if(!parsers.containsKey(type)){
             throw new SerializationException("No parsers for content type '" + type + "'");
@@ -0,0 +1,310 @@
+package mindustry.mod;
+
+import arc.*;
+import arc.files.*;
+import arc.graphics.*;
+import arc.graphics.g2d.*;
+import arc.graphics.g2d.TextureAtlas.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.core.*;
+import mindustry.graphics.*;
+import mindustry.graphics.MultiPacker.*;
+import mindustry.io.SaveFileReader.*;
+import mindustry.mod.Mods.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Caches what enabled mods generate at startup, so it is only generated again when something changed:
+ * the JSON of content files after conversion from HJSON, and the sprite pages packed with mod sprites, including generated icons.
+ * <p>
+ * The cache has a key made from the game version, the settings that affect packing, and the order and hashes of all enabled mod files.
+ * When the key changes, the whole cache is deleted. Files of the cache are written to a temporary file first, so a missing or unreadable file only means that part is generated again.
+ */
+public class ModCache{
+    private static final int version = 1;
+
+    private final Fi dir;
+    private final String key;
+
+    /** content file -> JSON; accessed from multiple threads */
+    private final ConcurrentHashMap<String, String> json = new ConcurrentHashMap<>();
+    private volatile boolean jsonChanged;
+
+    public ModCache(Fi dir, Seq<LoadedMod> mods){
+        this.dir = dir;
+        this.key = key(mods);
+
+        Fi keyFile = dir.child("key.txt");
+        if(!keyFile.exists() || !keyFile.readString().equals(key)){
+            if(dir.exists()){
+                Log.info("Mods changed, clearing mod cache.");
+                dir.deleteDirectory();
+            }
+            dir.mkdirs();
+            keyFile.writeString(key);
+        }
+
+        readJson();
+    }
+
+    /** @return the cached JSON of a content file, or null if it was not cached */
+    public @Nullable String getJson(String file){
+        return json.get(file);
+    }
+
+    public void putJson(String file, String value){
+        json.put(file, value);
+        jsonChanged = true;
+    }
+
+    /** Writes JSON that was added since the cache was loaded. */
+    public void saveJson(){
+        if(!jsonChanged) return;
+        jsonChanged = false;
+
+        write(dir.child("content.bin"), stream -> {
+            stream.writeInt(json.size());
+            for(var entry : json.entrySet()){
+                stream.writeUTF(entry.getKey());
+                byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                stream.writeInt(bytes.length);
+                stream.write(bytes);
+            }
+        });
+    }
+
+    public boolean hasAtlas(){
+        return dir.child("atlas.bin").exists();
+    }
+
+    /**
+     * Reads the cached sprite pages. Can be called from any thread; the textures are created by {@link CachedAtlas#create(TextureFilter)}.
+     * @return null if the pages could not be read, in which case the sprites have to be packed again
+     */
+    public @Nullable CachedAtlas readAtlas(){
+        CachedAtlas atlas = new CachedAtlas();
+        try(DataInputStream stream = new DataInputStream(dir.child("atlas.bin").read(1024 * 32))){
+            int pages = stream.readInt();
+            Seq<Future<Pixmap>> pixmaps = new Seq<>();
+            for(int i = 0; i < pages; i++){
+                Fi file = dir.child("page" + i + ".png");
+                //decoding is the slow part, so pages are decoded in parallel
+                pixmaps.add(mainExecutor.submit(() -> new Pixmap(file.readBytes())));
+            }
+
+            int regions = stream.readInt();
+            for(int i = 0; i < regions; i++){
+                atlas.regions.add(new CachedRegion(stream.readUTF(), stream.readInt(), stream.readInt(), stream.readInt(), stream.readInt(), stream.readInt(), readInts(stream), readInts(stream), stream.readFloat()));
+            }
+
+            for(var pixmap : pixmaps){
+                atlas.pages.add(pixmap.get());
+            }
+            return atlas;
+        }catch(Exception e){
+            Log.err("Failed to read cached mod sprites, packing them again", e);
+            atlas.dispose();
+            dir.child("atlas.bin").delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the pages of a packer after it was flushed into an atlas, and disposes the packer once they are written.
+     * The pages are encoded straight from the packer instead of copies, so it must not be used or disposed by the caller after this.
+     */
+    public void writeAtlas(MultiPacker packer, TextureAtlas atlas){
+        Seq<Pixmap> pages = new Seq<>();
+        ObjectIntMap<Texture> pageIndex = new ObjectIntMap<>();
+
+        for(PageType type : PageType.all){
+            for(var page : packer.getPacker(type).getPages()){
+                pageIndex.put(page.getTexture(), pages.size);
+                pages.add(page.getPixmap());
+            }
+        }
+
+        Seq<CachedRegion> regions = new Seq<>();
+        for(AtlasRegion region : atlas.getRegions()){
+            int page = pageIndex.get(region.texture, -1);
+            if(page != -1){
+                regions.add(new CachedRegion(region.name, page, region.getX(), region.getY(), region.width, region.height, region.splits, region.pads, region.scale));
+            }
+        }
+
+        //encoding the pages takes a while, so it does not delay startup
+        mainExecutor.submit(() -> {
+            try{
+                for(int i = 0; i < pages.size; i++){
+                    Fi temp = dir.child("page" + i + ".png.tmp");
+                    temp.writePng(pages.get(i));
+                    Files.move(temp.file().toPath(), dir.child("page" + i + ".png").file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                write(dir.child("atlas.bin"), stream -> {
+                    stream.writeInt(pages.size);
+                    stream.writeInt(regions.size);
+                    for(var region : regions){
+                        stream.writeUTF(region.name);
+                        stream.writeInt(region.page);
+                        stream.writeInt(region.x);
+                        stream.writeInt(region.y);
+                        stream.writeInt(region.width);
+                        stream.writeInt(region.height);
+                        writeInts(stream, region.splits);
+                        writeInts(stream, region.pads);
+                        stream.writeFloat(region.scale);
+                    }
+                });
+                Log.debug("Cached @ mod sprite pages.", pages.size);
+            }catch(Exception e){
+                Log.err("Failed to cache mod sprites", e);
+            }finally{
+                Core.app.post(packer::dispose);
+            }
+        });
+    }
+
+    private void readJson(){
+        Fi file = dir.child("content.bin");
+        if(!file.exists()) return;
+
+        try(DataInputStream stream = new DataInputStream(file.read(1024 * 32))){
+            for(int i = stream.readInt(); i > 0; i--){
+                String name = stream.readUTF();
+                byte[] bytes = new byte[stream.readInt()];
+                stream.readFully(bytes);
+                json.put(name, new String(bytes, StandardCharsets.UTF_8));
+            }
+        }catch(IOException e){
+            Log.err("Failed to read cached mod content, parsing it again", e);
+            json.clear();
+            file.delete();
+        }
+    }
+
+    /** Writes a file of the cache, replacing the old one only once it was written completely. */
+    private void write(Fi file, IORunner<DataOutputStream> writer){
+        Fi temp = file.sibling(file.name() + ".tmp");
+        try{
+            try(DataOutputStream stream = new DataOutputStream(temp.write(false, 1024 * 32))){
+                writer.accept(stream);
+            }
+            Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }catch(IOException e){
+            Log.err("Failed to write mod cache file " + file.name(), e);
+            temp.delete();
+        }
+    }
+
+    private static void writeInts(DataOutput stream, @Nullable int[] values) throws IOException{
+        stream.writeShort(values == null ? -1 : values.length);
+        if(values != null){
+            for(int value : values) stream.writeInt(value);
+        }
+    }
+
+    private static @Nullable int[] readInts(DataInput stream) throws IOException{
+        int length = stream.readShort();
+        if(length < 0) return null;
+        int[] values = new int[length];
+        for(int i = 0; i < length; i++) values[i] = stream.readInt();
+        return values;
+    }
+
+    private static String key(Seq<LoadedMod> mods){
+        StringBuilder out = new StringBuilder();
+        out.append("cache ").append(version)
+            .append("\ngame ").append(Version.build).append('.').append(Version.revision).append(' ').append(Version.type).append(' ').append(Version.modifier).append(' ').append(Version.arcBuild)
+            .append("\nlinear ").append(Core.settings.getBool("linear", true))
+            .append("\nmaxTextureSize ").append(maxTextureSize);
+
+        for(LoadedMod mod : mods){
+            out.append("\nmod ").append(mod.name).append(' ').append(mod.meta.version).append(' ').append(Long.toHexString(hash(mod.file)));
+        }
+        return out.toString();
+    }
+
+    /** Zipped mods are hashed by content. Mod folders are hashed by the paths, sizes and modification times of their files, as reading all of them would take a while. */
+    private static long hash(Fi file){
+        CRC32 crc = new CRC32();
+        if(file.isDirectory()){
+            Seq<Fi> files = file.findAll(f -> true);
+            files.sort(Structs.comparing(Fi::path));
+            for(Fi child : files){
+                crc.update(child.path().getBytes(StandardCharsets.UTF_8));
+                crc.update(Long.toString(child.length()).getBytes(StandardCharsets.UTF_8));
+                crc.update(Long.toString(child.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+        }else{
+            byte[] buffer = new byte[1024 * 64];
+            try(InputStream stream = file.read()){
+                int read;
+                while((read = stream.read(buffer)) > 0){
+                    crc.update(buffer, 0, read);
+                }
+            }catch(IOException e){
+                //an unreadable mod file never matches the cache
+                return System.nanoTime();
+            }
+        }
+        return crc.getValue() ^ ((long)file.length() << 32);
+    }
+
+    /** Sprite pages read from the cache. */
+    public static class CachedAtlas implements Disposable{
+        final Seq<Pixmap> pages = new Seq<>();
+        final Seq<CachedRegion> regions = new Seq<>();
+
+        /** Creates the textures and an atlas that contains all regions. The pixmaps are kept for {@link TextureAtlas#getPixmap(AtlasRegion)}. */
+        public TextureAtlas create(TextureFilter filter){
+            TextureAtlas atlas = new TextureAtlas();
+            Texture[] textures = new Texture[pages.size];
+            for(int i = 0; i < pages.size; i++){
+                textures[i] = new Texture(pages.get(i));
+                textures[i].setFilter(filter);
+                atlas.getTextures().add(textures[i]);
+            }
+
+            for(var cached : regions){
+                AtlasRegion region = atlas.addRegion(cached.name, textures[cached.page], cached.x, cached.y, cached.width, cached.height);
+                region.splits = cached.splits;
+                region.pads = cached.pads;
+                region.scale = cached.scale;
+            }
+            return atlas;
+        }
+
+        @Override
+        public void dispose(){
+            pages.each(Pixmap::dispose);
+        }
+    }
+
+    static class CachedRegion{
+        final String name;
+        final int page, x, y, width, height;
+        final @Nullable int[] splits, pads;
+        final float scale;
+
+        CachedRegion(String name, int page, int x, int y, int width, int height, @Nullable int[] splits, @Nullable int[] pads, float scale){
+            this.name = name;
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.splits = splits;
+            this.pads = pads;
+            this.scale = scale;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import mindustry.gen.*;
 import mindustry.graphics.*;
 import mindustry.graphics.MultiPacker.*;
 import mindustry.mod.ContentParser.*;
+import mindustry.mod.ModCache.*;
 import mindustry.type.*;
 import mindustry.ui.*;
 
@@ -43,6 +44,9 @@ public class Mods implements Loadable{
     private int totalSprites;
     private ObjectFloatMap<String> textureResize = new ObjectFloatMap<>();
     private MultiPacker packer;
+    /** sprite pages read from the cache in loadAsync(), replacing the packer */
+    private @Nullable CachedAtlas cachedAtlas;
+    private @Nullable ModCache cache;
 
     /** Ordered mods cache. Set to null to invalidate. */
     private @Nullable Seq<LoadedMod> lastOrderedMods = new Seq<>();
@@ -137,6 +141,15 @@ public class Mods implements Loadable{
         if(!mods.contains(LoadedMod::enabled)) return;
         Time.mark();
 
+        ModCache cache = cache();
+        if(cache != null && cache.hasAtlas()){
+            cachedAtlas = cache.readAtlas();
+            if(cachedAtlas != null){
+                Log.debug("Time to load cached textures: @", Time.elapsed());
+                return;
+            }
+        }
+
         //TODO this should estimate sprite sizes per page
         packer = new MultiPacker();
         //all packing tasks to await
@@ -237,6 +250,11 @@ public class Mods implements Loadable{
     public void loadSync(){
         loadIcons();
 
+        if(cachedAtlas != null){
+            loadCachedAtlas();
+            return;
+        }
+
         if(packer == null) return;
         Time.mark();
 
@@ -366,13 +384,51 @@ public class Mods implements Loadable{
             Log.debug("Total pages: @", Core.atlas.getTextures().size);
 
             packer.printStats();
+
+            if(cache() != null){
+                //disposes the packer once its pages are cached
+                cache().writeAtlas(packer, Core.atlas);
+                packer = null;
+            }
         }
 
-        packer.dispose();
-        packer = null;
+        if(packer != null){
+            packer.dispose();
+            packer = null;
+        }
         Log.debug("Total time to generate & flush textures synchronously: @", Time.elapsed());
     }
 
+    /** Replaces the atlas with the cached pages, which already contain all sprites and generated icons of mods. */
+    private void loadCachedAtlas(){
+        Time.mark();
+        TextureFilter filter = Core.settings.getBool("linear", true) ? TextureFilter.linear : TextureFilter.nearest;
+
+        Core.atlas.dispose();
+        Core.atlas = cachedAtlas.create(filter);
+        Core.atlas.setErrorRegion("error");
+        cachedAtlas = null;
+
+        for(Seq<Content> arr : content.getContentMap()){
+            arr.each(c -> {
+                if(c instanceof UnlockableContent u && c.minfo.mod != null){
+                    u.load();
+                    u.loadIcon();
+                }
+            });
+        }
+
+        Log.debug("Time to load cached atlas with @ pages: @", Core.atlas.getTextures().size, Time.elapsed());
+    }
+
+    /** @return the startup cache of the enabled mods, or null if it is disabled or there are no mods to cache */
+    private @Nullable ModCache cache(){
+        if(cache == null && Core.settings.getBool("modcache", true) && orderedMods().any()){
+            cache = new ModCache(dataDirectory.child("cache/mods/"), orderedMods());
+        }
+        return cache;
+    }
+
     private PageType getPage(Fi file){
         String path = file.path();
         return
@@ -684,6 +740,10 @@ public class Mods implements Loadable{
             final ContentType type;
             final Fi file;
             final LoadedMod mod;
+            /** the parsed file, read on another thread */
+            Future<JsonValue> json;
+            /** time spent reading and parsing the file, in nanoseconds */
+            long readTime;
 
             public LoadRun(ContentType type, Fi file, LoadedMod mod){
                 this.type = type;
@@ -718,11 +778,47 @@ public class Mods implements Loadable{
 
         //make sure mod content is in proper order
         runs.sort();
+
+        long start = Time.nanos();
+
+        //files are read and parsed into trees in parallel, as that does not depend on other content
+        ModCache cache = runs.any() ? cache() : null;
+        for(LoadRun l : runs){
+            l.json = mainExecutor.submit(() -> {
+                long begin = Time.nanos();
+                try{
+                    if(cache == null){
+                        return parser.readJson(l.file.readString("UTF-8"), l.file);
+                    }
+
+                    //converting HJSON is the slow part, so the result of that is cached
+                    String key = l.mod.name + ":" + l.file.path(), json = cache.getJson(key);
+                    if(json == null){
+                        json = parser.toPlainJson(l.file.readString("UTF-8"), l.file);
+                        cache.putJson(key, json);
+                    }
+                    return new JsonReader().parse(json);
+                }finally{
+                    l.readTime = Time.nanos() - begin;
+                }
+            });
+        }
+
+        //content is created in order, since it may reference content of earlier files
+        ObjectMap<LoadedMod, long[]> times = new ObjectMap<>();
         for(LoadRun l : runs){
             Content current = content.getLastAdded();
+            long begin = Time.nanos();
             try{
+                JsonValue json;
+                try{
+                    json = l.json.get();
+                }catch(ExecutionException e){
+                    throw e.getCause();
+                }
+
                 //this binds the content but does not load it entirely
-                Content loaded = parser.parse(l.mod, l.file.nameWithoutExtension(), l.file.readString("UTF-8"), l.file, l.type);
+                Content loaded = parser.parse(l.mod, l.file.nameWithoutExtension(), json, l.file, l.type);
                 Log.debug("[@] Loaded '@'.", l.mod.meta.name, (loaded instanceof UnlockableContent u ? u.localizedName : loaded));
             }catch(Throwable e){
                 if(current != content.getLastAdded() && content.getLastAdded() != null){
@@ -732,10 +828,31 @@ public class Mods implements Loadable{
                     parser.markError(error, l.mod, l.file, e);
                 }
             }
+
+            //files, read time and parse time of each mod
+            long[] time = times.get(l.mod, () -> new long[3]);
+            time[0] ++;
+            time[1] += l.readTime;
+            time[2] += Time.nanos() - begin;
+        }
+
+        for(LoadedMod mod : orderedMods()){
+            long[] time = times.get(mod);
+            if(time != null){
+                Log.info("Loaded @ content files of mod '@' in @ms (@ms reading in parallel)", time[0], mod.meta.name, time[2] / 1000000, time[1] / 1000000);
+            }
+        }
+
+        if(cache != null){
+            cache.saveJson();
         }
 
         //this finishes parsing content fields
         parser.finishParsing();
+
+        if(runs.any()){
+            Log.info("Time to load mod content: @ms", (Time.nanos() - start) / 1000000);
+        }
     }
 
     public void handleContentError(Content content, Throwable error){
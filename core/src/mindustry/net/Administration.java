@@ -1,6 +1,7 @@
 package mindustry.net;
 
 import arc.*;
+import arc.files.*;
 import arc.func.*;
 import arc.struct.*;
 import arc.util.*;
@@ -13,6 +14,8 @@ import mindustry.type.*;
 import mindustry.world.*;
 import mindustry.world.blocks.payloads.*;
 
+import java.io.*;
+
 import static mindustry.Vars.*;
 import static mindustry.game.EventType.*;
 
@@ -27,7 +30,12 @@ public class Administration{
 
 
     private boolean modified, loaded;
-    /** All player info. Maps UUIDs to info. This persists throughout restarts. Do not modify directly. */
+    /** Stores all player info; see {@link Config#playerDatabase}. */
+    public PlayerStore players;
+    /**
+     * Player info that is kept in memory. Maps UUIDs to info. This persists throughout restarts. Do not modify directly.
+     * With {@link Config#playerDatabase} enabled, this only contains the info that was used since the server started; use {@link #players} to go through all of it.
+     */
     public ObjectMap<String, PlayerInfo> playerInfo = new ObjectMap<>();
 
     public Administration(){
@@ -198,6 +206,7 @@ public class Administration{
         info.timesJoined++;
         if(!info.names.contains(name, false)) info.names.add(name);
         if(!info.ips.contains(ip, false)) info.ips.add(ip);
+        players.changed(info);
     }
 
     public boolean banPlayer(String uuid){
@@ -212,10 +221,9 @@ public class Administration{
         if(bannedIPs.contains(ip, false))
             return false;
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                info.banned = true;
-            }
+        for(PlayerInfo info : findByIPs(ip)){
+            info.banned = true;
+            players.changed(info);
         }
 
         bannedIPs.add(ip);
@@ -226,10 +234,12 @@ public class Administration{
 
     /** Bans a player by UUID; returns whether this player was already banned. */
     public boolean banPlayerID(String id){
-        if(playerInfo.containsKey(id) && playerInfo.get(id).banned)
+        PlayerInfo info = getCreateInfo(id);
+        if(info.banned)
             return false;
 
-        getCreateInfo(id).banned = true;
+        info.banned = true;
+        players.changed(info);
 
         save();
         Events.fire(new PlayerBanEvent(Groups.player.find(p -> id.equals(p.uuid())), id));
@@ -243,11 +253,10 @@ public class Administration{
     public boolean unbanPlayerIP(String ip){
         boolean found = bannedIPs.contains(ip, false);
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
-                info.banned = false;
-                found = true;
-            }
+        for(PlayerInfo info : findByIPs(ip)){
+            info.banned = false;
+            players.changed(info);
+            found = true;
         }
 
         bannedIPs.remove(ip, false);
@@ -269,6 +278,7 @@ public class Administration{
         if(!info.banned) return false;
 
         info.banned = false;
+        players.changed(info);
         bannedIPs.removeAll(info.ips, false);
         save();
         Events.fire(new PlayerUnbanEvent(Groups.player.find(p -> id.equals(p.uuid())), id));
@@ -280,8 +290,9 @@ public class Administration{
      */
     public Seq<PlayerInfo> getAdmins(){
         Seq<PlayerInfo> result = new Seq<>();
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.admin){
+        for(String id : players.index().admins.toSeq()){
+            PlayerInfo info = players.get(id);
+            if(info != null && info.admin){
                 result.add(info);
             }
         }
@@ -293,8 +304,9 @@ public class Administration{
      */
     public Seq<PlayerInfo> getBanned(){
         Seq<PlayerInfo> result = new Seq<>();
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.banned){
+        for(String id : players.index().banned.toSeq()){
+            PlayerInfo info = players.get(id);
+            if(info != null && info.banned){
                 result.add(info);
             }
         }
@@ -319,6 +331,7 @@ public class Administration{
 
         info.adminUsid = usid;
         info.admin = true;
+        players.changed(info);
         save();
 
         return wasAdmin;
@@ -334,6 +347,7 @@ public class Administration{
         if(!info.admin) return false;
 
         info.admin = false;
+        players.changed(info);
         save();
 
         return true;
@@ -381,11 +395,16 @@ public class Administration{
     /** Finds player info by IP, UUID and name. */
     public ObjectSet<PlayerInfo> findByName(String name){
         ObjectSet<PlayerInfo> result = new ObjectSet<>();
-
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.lastName.equalsIgnoreCase(name) || info.names.contains(name, false)
+        ObjectSet<String> ids = new ObjectSet<>();
+        ids.addAll(players.index().name(name));
+        ids.addAll(players.index().ip(name));
+        ids.add(name);
+
+        for(String id : ids){
+            PlayerInfo info = players.get(id);
+            if(info != null && (info.lastName.equalsIgnoreCase(name) || info.names.contains(name, false)
             || Strings.stripColors(Strings.stripColors(info.lastName)).equals(name)
-            || info.ips.contains(name, false) || info.id.equals(name)){
+            || info.ips.contains(name, false) || info.id.equals(name))){
                 result.add(info);
             }
         }
@@ -396,9 +415,12 @@ public class Administration{
     /** Finds by name, using contains(). */
     public ObjectSet<PlayerInfo> searchNames(String name){
         ObjectSet<PlayerInfo> result = new ObjectSet<>();
+        ObjectSet<String> ids = new ObjectSet<>();
+        players.index().searchNames(name, ids);
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.names.contains(n -> n.toLowerCase().contains(name.toLowerCase()) || Strings.stripColors(n).trim().toLowerCase().contains(name))){
+        for(String id : ids){
+            PlayerInfo info = players.get(id);
+            if(info != null && info.names.contains(n -> n.toLowerCase().contains(name.toLowerCase()) || Strings.stripColors(n).trim().toLowerCase().contains(name))){
                 result.add(info);
             }
         }
@@ -409,8 +431,23 @@ public class Administration{
     public Seq<PlayerInfo> findByIPs(String ip){
         Seq<PlayerInfo> result = new Seq<>();
 
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
+        for(String id : players.index().ip(ip).toSeq()){
+            PlayerInfo info = players.get(id);
+            if(info != null && info.ips.contains(ip, false)){
+                result.add(info);
+            }
+        }
+
+        return result;
+    }
+
+    /** @return all players that were made admins with this USID */
+    public Seq<PlayerInfo> findByUsid(String usid){
+        Seq<PlayerInfo> result = new Seq<>();
+
+        for(String id : players.index().usid(usid).toSeq()){
+            PlayerInfo info = players.get(id);
+            if(info != null && usid.equals(info.adminUsid)){
                 result.add(info);
             }
         }
@@ -423,12 +460,13 @@ public class Administration{
     }
 
     public PlayerInfo getInfoOptional(String id){
-        return playerInfo.get(id);
+        return players.get(id);
     }
 
     public PlayerInfo findByIP(String ip){
-        for(PlayerInfo info : playerInfo.values()){
-            if(info.ips.contains(ip, false)){
+        for(String id : players.index().ip(ip).toSeq()){
+            PlayerInfo info = players.get(id);
+            if(info != null && info.ips.contains(ip, false)){
                 return info;
             }
         }
@@ -436,18 +474,21 @@ public class Administration{
     }
 
     public Seq<PlayerInfo> getWhitelisted(){
-        return playerInfo.values().toSeq().select(p -> isWhitelisted(p.id, p.adminUsid));
+        Seq<PlayerInfo> result = new Seq<>();
+        players.each(p -> {
+            if(isWhitelisted(p.id, p.adminUsid)) result.add(p);
+        });
+        return result;
     }
 
     private PlayerInfo getCreateInfo(String id){
-        if(playerInfo.containsKey(id)){
-            return playerInfo.get(id);
-        }else{
-            PlayerInfo info = new PlayerInfo(id);
-            playerInfo.put(id, info);
+        PlayerInfo info = players.get(id);
+        if(info == null){
+            info = new PlayerInfo(id);
+            players.add(info);
             save();
-            return info;
         }
+        return info;
     }
 
     public void save(){
@@ -455,8 +496,15 @@ public class Administration{
     }
 
     public void forceSave(){
+        if(loaded){
+            try{
+                players.save(modified);
+            }catch(IOException e){
+                Log.err("Failed to write player info", e);
+            }
+        }
+
         if(modified && loaded){
-            Core.settings.putJson("player-data", playerInfo);
             Core.settings.putJson("ip-kicks", kickedIPs);
             Core.settings.putJson("ip-bans", String.class, bannedIPs);
             Core.settings.putJson("whitelist-ids", String.class, whitelist);
@@ -469,13 +517,55 @@ public class Administration{
     private void load(){
         loaded = true;
         //load default data
-        playerInfo = Core.settings.getJson("player-data", ObjectMap.class, ObjectMap::new);
+        players = loadPlayers();
+        playerInfo = players.loaded();
         kickedIPs = Core.settings.getJson("ip-kicks", ObjectMap.class, ObjectMap::new);
         bannedIPs = Core.settings.getJson("ip-bans", Seq.class, Seq::new);
         whitelist = Core.settings.getJson("whitelist-ids", Seq.class, Seq::new);
         subnetBans = Core.settings.getJson("banned-subnets", Seq.class, Seq::new);
     }
 
+    private PlayerStore loadPlayers(){
+        if(!Config.playerDatabase.bool()) return new SettingsPlayerStore();
+
+        Fi file = Vars.dataDirectory.child("player-data.bin");
+        try{
+            LogPlayerStore store = new LogPlayerStore(file);
+
+            //move the info from the settings on the first start
+            if(store.size() == 0 && Core.settings.has(SettingsPlayerStore.key)){
+                SettingsPlayerStore old = new SettingsPlayerStore();
+                try{
+                    LogPlayerStore target = store;
+                    old.each(target::add);
+                    store.save(true);
+                    store.close();
+
+                    //only remove the old info once all of it can be read back
+                    store = new LogPlayerStore(file);
+                    if(store.size() != old.size()){
+                        throw new IOException("Player database has " + store.size() + " players after moving " + old.size());
+                    }
+                }catch(Throwable e){
+                    //partially written info would stop the move from being retried
+                    try{
+                        store.close();
+                    }catch(IOException ignored){
+                    }
+                    file.delete();
+                    throw e;
+                }
+
+                Core.settings.remove(SettingsPlayerStore.key);
+                Log.info("Moved info of @ players to the player database.", old.size());
+            }
+            return store;
+        }catch(Throwable e){
+            Log.err("Failed to open the player database, using the settings instead", e);
+            return new SettingsPlayerStore();
+        }
+    }
+
     /**
      * Server configuration definition. Each config value can be a string, boolean or number.
      * Creating a new Config instance implicitly adds it to the list of server configs. This can be used for custom plugin configuration.
@@ -515,7 +605,21 @@ public class Administration{
         snapshotInterval = new Config("snapshotInterval", "Client entity snapshot interval in ms.", 200),
         autoPause = new Config("autoPause", "Whether the game should pause when nobody is online.", false),
         roundExtraTime = new Config("roundExtraTime", "Time before loading a new map after the gameover, in seconds.", 12),
-        maxLogLength = new Config("maxLogLength", "The Maximum log file size, in bytes.", 1024 * 1024 * 5);
+        maxLogLength = new Config("maxLogLength", "The Maximum log file size, in bytes.", 1024 * 1024 * 5),
+        pathfinderThreads = new Config("pathfinderThreads", "Amount of worker threads used to update flow fields in parallel. 1 updates every field on the pathfinding thread. Applied on map load.", 1),
+        incrementalPathfinding = new Config("incrementalPathfinding", "Whether flow fields are repaired around changed tiles instead of being recalculated for the entire map.", true),
+        hierarchicalPathfinding = new Config("hierarchicalPathfinding", "Whether long unit command paths are found on a graph of map clusters before being refined. Applied on map load.", true),
+        sharedUnitPaths = new Config("sharedUnitPaths", "Whether units commanded to the same tile share one flow field instead of each searching for a path. Applied on map load.", true),
+        compileLogic = new Config("compileLogic", "Whether set, op and jump instructions of logic processors are compiled to skip the interpreter. Applied when code is loaded.", true),
+        logicInstructionBudget = new Config("logicInstructionBudget", "Maximum amount of logic instructions run by all processors each tick. Privileged processors run first, the rest is shared evenly. 0 to disable.", 0),
+        logicProfiling = new Config("logicProfiling", "Whether to record the instructions and time used by each logic processor. See the 'processors' command.", false),
+        deltaSnapshots = new Config("deltaSnapshots", "Whether clients that support it only receive the entities that changed since the last snapshot they acknowledged.", true),
+        syncMargin = new Config("syncMargin", "Distance in tiles outside of a player's view in which units are synced at the full rate.", 12),
+        farSyncInterval = new Config("farSyncInterval", "Units outside of a player's view are only synced every this many snapshots. 1 syncs everything at the full rate, 0 never syncs them.", 4),
+        snapshotThreads = new Config("snapshotThreads", "Amount of worker threads used to assemble the entity snapshots of players in parallel. 1 assembles them on the main thread.", 1),
+        backgroundAutosave = new Config("backgroundAutosave", "Whether autosaves are compressed and written to disk on a background thread. Only capturing the world pauses the game.", true),
+        autosaveBaseInterval = new Config("autosaveBaseInterval", "Amount of autosaves from one full save to the next. The autosaves in between only store the parts of the map that changed, and are always written in the background. 1 disables delta autosaves.", 1),
+        playerDatabase = new Config("playerDatabase", "Whether player info is kept in an indexed log file and only loaded when needed, instead of being stored in the settings. Existing info is moved on the first start. Applied on restart.", false);
 
         public final Object defaultValue;
         public final String name, key, description;
@@ -0,0 +1,258 @@
+package mindustry.net;
+
+import arc.files.*;
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.io.*;
+import mindustry.net.Administration.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Stores player info in a log file that is only ever appended to. Every time info changes, a new record of it is appended, which replaces the previous ones.
+ * Only the indexed fields of each record are read when the file is opened; the rest of the info is loaded when it is first needed, and kept in memory from then on.
+ * The file is compacted once most of it consists of replaced records.
+ * <p>
+ * Each record is its length, followed by the UUID, the ban and admin flags, the USID, the IPs, the names and the last name of the player, and the info as JSON.
+ */
+public class LogPlayerStore implements PlayerStore{
+    private static final int magic = 0x4d504c47, version = 1;
+    /** The file is only compacted once it has at least this many bytes of replaced records. */
+    private static final long minCompactBytes = 1024 * 1024;
+
+    private final Fi file;
+    private RandomAccessFile output;
+    private final PlayerIndex index = new PlayerIndex();
+    private final ObjectMap<String, PlayerInfo> cache = new ObjectMap<>();
+    /** Position and size of the latest record of each player. */
+    private final ObjectMap<String, long[]> records = new ObjectMap<>();
+    /** The last written JSON of loaded info, so unchanged info is not written again. */
+    private final ObjectMap<String, String> written = new ObjectMap<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private long liveBytes, staleBytes;
+
+    public LogPlayerStore(Fi file) throws IOException{
+        this.file = file;
+        open();
+    }
+
+    @Override
+    public synchronized @Nullable PlayerInfo get(String id){
+        PlayerInfo info = cache.get(id);
+        if(info == null && records.containsKey(id)){
+            String json = readJson(id);
+            info = JsonIO.json.fromJson(PlayerInfo.class, json);
+            cache.put(id, info);
+            written.put(id, json);
+        }
+        return info;
+    }
+
+    @Override
+    public synchronized void add(PlayerInfo info){
+        cache.put(info.id, info);
+        index.add(info);
+    }
+
+    @Override
+    public synchronized void changed(PlayerInfo info){
+        index.add(info);
+    }
+
+    @Override
+    public PlayerIndex index(){
+        return index;
+    }
+
+    @Override
+    public synchronized void each(Cons<PlayerInfo> cons){
+        for(PlayerInfo info : cache.values()){
+            cons.get(info);
+        }
+
+        for(String id : records.keys().toSeq()){
+            if(!cache.containsKey(id)){
+                cons.get(JsonIO.json.fromJson(PlayerInfo.class, readJson(id)));
+            }
+        }
+    }
+
+    @Override
+    public ObjectMap<String, PlayerInfo> loaded(){
+        return cache;
+    }
+
+    @Override
+    public synchronized int size(){
+        int size = records.size;
+        for(String id : cache.keys()){
+            if(!records.containsKey(id)) size ++;
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void save(boolean changed) throws IOException{
+        for(PlayerInfo info : cache.values()){
+            String json = JsonIO.json.toJson(info, PlayerInfo.class);
+            if(!json.equals(written.get(info.id))){
+                append(info, json);
+                written.put(info.id, json);
+                //fields may have been changed directly
+                index.add(info);
+            }
+        }
+
+        if(staleBytes >= minCompactBytes && staleBytes > liveBytes){
+            compact();
+        }
+    }
+
+    /** Closes the file. The store can not be used after this. */
+    public synchronized void close() throws IOException{
+        output.close();
+    }
+
+    private void open() throws IOException{
+        records.clear();
+        liveBytes = staleBytes = 0;
+
+        if(!file.exists() || file.length() == 0){
+            file.parent().mkdirs();
+            try(DataOutputStream out = new DataOutputStream(file.write(false))){
+                out.writeInt(magic);
+                out.writeInt(version);
+            }
+        }
+
+        long length = file.length(), position = 8;
+        try(DataInputStream in = new DataInputStream(file.read(1024 * 64))){
+            if(in.readInt() != magic) throw new IOException("Not a player database: " + file);
+            int fileVersion = in.readInt();
+            if(fileVersion != version) throw new IOException("Unknown player database version: " + fileVersion);
+
+            byte[] buffer = new byte[256];
+            while(position + 4 <= length){
+                int size = in.readInt();
+                //a record that was not written completely, most likely because the server stopped
+                if(size < 0 || position + 4 + size > length) break;
+
+                if(buffer.length < size) buffer = new byte[Math.max(size, buffer.length * 2)];
+                in.readFully(buffer, 0, size);
+                readHeader(new DataInputStream(new ByteArrayInputStream(buffer, 0, size)), position, size + 4);
+                position += 4 + size;
+            }
+        }
+
+        output = new RandomAccessFile(file.file(), "rw");
+        if(position < length){
+            Log.warn("Discarding @ bytes of incomplete player info in @", length - position, file.name());
+            output.setLength(position);
+        }
+        output.seek(position);
+    }
+
+    /** Reads the indexed fields of a record, and makes it the latest record of its player. */
+    private void readHeader(DataInputStream in, long position, int size) throws IOException{
+        String id = in.readUTF();
+        byte flags = in.readByte();
+        String usid = in.readUTF();
+        Seq<String> ips = new Seq<>(), names = new Seq<>();
+        for(int i = in.readShort(); i > 0; i--) ips.add(in.readUTF());
+        for(int i = in.readShort(); i > 0; i--) names.add(in.readUTF());
+        String lastName = in.readUTF();
+
+        index.add(id, ips, names, lastName, usid.isEmpty() ? null : usid, (flags & 1) != 0, (flags & 2) != 0);
+
+        long[] last = records.get(id);
+        if(last != null){
+            liveBytes -= last[1];
+            staleBytes += last[1];
+        }
+        records.put(id, new long[]{position, size});
+        liveBytes += size;
+    }
+
+    private String readJson(String id){
+        long[] record = records.get(id);
+        try{
+            output.seek(record[0]);
+            byte[] data = new byte[output.readInt()];
+            output.readFully(data);
+            output.seek(output.length());
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            in.readUTF();
+            in.readByte();
+            in.readUTF();
+            for(int i = in.readShort(); i > 0; i--) in.readUTF();
+            for(int i = in.readShort(); i > 0; i--) in.readUTF();
+            in.readUTF();
+
+            int offset = data.length - in.available();
+            return new String(data, offset, data.length - offset, StandardCharsets.UTF_8);
+        }catch(IOException e){
+            throw new RuntimeException("Failed to read player info of " + id, e);
+        }
+    }
+
+    private void append(PlayerInfo info, String json) throws IOException{
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeUTF(info.id);
+        out.writeByte((info.banned ? 1 : 0) | (info.admin ? 2 : 0));
+        out.writeUTF(info.adminUsid == null ? "" : info.adminUsid);
+        out.writeShort(info.ips.size);
+        for(String ip : info.ips) out.writeUTF(ip);
+        out.writeShort(info.names.size);
+        for(String name : info.names) out.writeUTF(name);
+        out.writeUTF(info.lastName == null ? "" : info.lastName);
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+
+        byte[] data = bytes.toByteArray();
+        int size = data.length - 4;
+        data[0] = (byte)(size >>> 24);
+        data[1] = (byte)(size >>> 16);
+        data[2] = (byte)(size >>> 8);
+        data[3] = (byte)size;
+
+        long position = output.length();
+        output.seek(position);
+        output.write(data);
+
+        long[] last = records.get(info.id);
+        if(last != null){
+            liveBytes -= last[1];
+            staleBytes += last[1];
+        }
+        records.put(info.id, new long[]{position, data.length});
+        liveBytes += data.length;
+    }
+
+    /** Rewrites the file with only the latest record of each player. */
+    private void compact() throws IOException{
+        Fi temp = file.sibling(file.name() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(temp.write(false, 1024 * 64))){
+            out.writeInt(magic);
+            out.writeInt(version);
+
+            byte[] buffer = new byte[256];
+            for(var entry : records){
+                int size = (int)entry.value[1];
+                if(buffer.length < size) buffer = new byte[Math.max(size, buffer.length * 2)];
+                output.seek(entry.value[0]);
+                output.readFully(buffer, 0, size);
+                out.write(buffer, 0, size);
+            }
+        }
+
+        output.close();
+        Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Log.info("Compacted player info of @ players, removed @ bytes of old records", records.size, staleBytes);
+        open();
+    }
+}
@@ -27,6 +27,10 @@ public abstract class NetConnection{
     public int snapshotsSent;
     /** Timestamp of last received snapshot. */
     public long lastReceivedClientTime;
+    /** Whether this client acknowledges entity snapshots, so that only entities that changed since the last acknowledged one need to be sent. */
+    public boolean deltaSnapshots;
+    /** Sync hashes of the entities in recently sent snapshots, which decide what delta snapshots contain. */
+    public final SnapshotHistory snapshotHistory = new SnapshotHistory();
     /** Build requests that have been recently rejected. This is cleared every snapshot. */
     public Seq<BuildPlan> rejectedRequests = new Seq<>();
     /** Handles chat spam rate limits. */
@@ -41,6 +45,11 @@ public abstract class NetConnection{
         this.address = address;
     }
 
+    /** Forgets all sent snapshots, so that the next one contains every entity. Called when the client reloads the world. */
+    public void resetSnapshots(){
+        snapshotHistory.reset();
+    }
+
     /** Kick with the standard kick reason. */
     public void kick(){
         kick(KickReason.kick);
@@ -0,0 +1,75 @@
+package mindustry.net;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.net.Administration.*;
+
+/**
+ * Indexes player IDs by IP, name and USID, and keeps track of banned players and admins.
+ * Keys are only ever added, so lookups return candidates whose info still has to be checked.
+ */
+public class PlayerIndex{
+    private static final ObjectSet<String> empty = new ObjectSet<>();
+
+    private final ObjectMap<String, ObjectSet<String>> ips = new ObjectMap<>(), names = new ObjectMap<>(), usids = new ObjectMap<>();
+    public final ObjectSet<String> banned = new ObjectSet<>(), admins = new ObjectSet<>();
+
+    public void add(PlayerInfo info){
+        add(info.id, info.ips, info.names, info.lastName, info.adminUsid, info.banned, info.admin);
+    }
+
+    public void add(String id, Iterable<String> ips, Iterable<String> names, @Nullable String lastName, @Nullable String usid, boolean banned, boolean admin){
+        for(String ip : ips){
+            put(this.ips, ip, id);
+        }
+        for(String name : names){
+            nameKeys(name, key -> put(this.names, key, id));
+        }
+        if(lastName != null) nameKeys(lastName, key -> put(this.names, key, id));
+        if(usid != null) put(usids, usid, id);
+
+        if(banned) this.banned.add(id);
+        else this.banned.remove(id);
+        if(admin) this.admins.add(id);
+        else this.admins.remove(id);
+    }
+
+    /** @return the IDs of players that may have used this IP */
+    public ObjectSet<String> ip(String ip){
+        return ips.get(ip, empty);
+    }
+
+    /** @return the IDs of players that may have used this name, ignoring case and colors */
+    public ObjectSet<String> name(String name){
+        return names.get(name.toLowerCase(), empty);
+    }
+
+    /** @return the IDs of players that may have this admin USID */
+    public ObjectSet<String> usid(String usid){
+        return usids.get(usid, empty);
+    }
+
+    /** Adds the IDs of players that may have used a name that contains this one. This goes through all names, but does not load any info. */
+    public void searchNames(String name, ObjectSet<String> out){
+        String lower = name.toLowerCase();
+        for(var entry : names){
+            if(entry.key.contains(lower) || entry.key.contains(name)){
+                out.addAll(entry.value);
+            }
+        }
+    }
+
+    private static void nameKeys(String name, Cons<String> cons){
+        String stripped = Strings.stripColors(name);
+        cons.get(name.toLowerCase());
+        cons.get(stripped.toLowerCase());
+        cons.get(Strings.stripColors(stripped).toLowerCase());
+    }
+
+    private static void put(ObjectMap<String, ObjectSet<String>> map, String key, String id){
+        ObjectSet<String> set = map.get(key);
+        if(set == null) map.put(key, set = new ObjectSet<>());
+        set.add(id);
+    }
+}
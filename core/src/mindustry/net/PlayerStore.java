@@ -0,0 +1,36 @@
+package mindustry.net;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.net.Administration.*;
+
+import java.io.*;
+
+/** Stores the info of every player that ever joined, mapped by UUID. See {@link Administration}. */
+public interface PlayerStore{
+    @Nullable PlayerInfo get(String id);
+
+    /** Adds info of a new player. */
+    void add(PlayerInfo info);
+
+    /** Call after the names, IPs, USID, ban or admin status of a player changed, so the indexes find it. */
+    void changed(PlayerInfo info);
+
+    PlayerIndex index();
+
+    /** Calls the consumer with all info. Info that is not loaded may be read for this call only, so it must not be changed. */
+    void each(Cons<PlayerInfo> cons);
+
+    /** @return the info that is kept in memory, mapped by UUID. This is all info, unless the store loads it lazily. */
+    ObjectMap<String, PlayerInfo> loaded();
+
+    int size();
+
+    /**
+     * Writes the info that changed.
+     * @param changed whether any info was marked as changed with {@link Administration#save()}. Info is also changed directly without marking it.
+     * @throws IOException if the info could not be written completely
+     */
+    void save(boolean changed) throws IOException;
+}
@@ -0,0 +1,73 @@
+package mindustry.net;
+
+import arc.*;
+import arc.func.*;
+import arc.struct.*;
+import mindustry.net.Administration.*;
+
+/** Keeps all player info in memory, and writes all of it to the settings when any of it changed. */
+@SuppressWarnings("unchecked")
+public class SettingsPlayerStore implements PlayerStore{
+    public static final String key = "player-data";
+
+    private final ObjectMap<String, PlayerInfo> infos;
+    private PlayerIndex index = new PlayerIndex();
+
+    public SettingsPlayerStore(){
+        infos = Core.settings.getJson(key, ObjectMap.class, ObjectMap::new);
+        for(PlayerInfo info : infos.values()){
+            index.add(info);
+        }
+    }
+
+    @Override
+    public PlayerInfo get(String id){
+        return infos.get(id);
+    }
+
+    @Override
+    public void add(PlayerInfo info){
+        infos.put(info.id, info);
+        index.add(info);
+    }
+
+    @Override
+    public void changed(PlayerInfo info){
+        index.add(info);
+    }
+
+    @Override
+    public PlayerIndex index(){
+        return index;
+    }
+
+    @Override
+    public void each(Cons<PlayerInfo> cons){
+        for(PlayerInfo info : infos.values()){
+            cons.get(info);
+        }
+    }
+
+    @Override
+    public ObjectMap<String, PlayerInfo> loaded(){
+        return infos;
+    }
+
+    @Override
+    public int size(){
+        return infos.size;
+    }
+
+    @Override
+    public void save(boolean changed){
+        if(!changed) return;
+
+        Core.settings.putJson(key, infos);
+
+        //everything is written anyway, so also index what was changed directly
+        index = new PlayerIndex();
+        for(PlayerInfo info : infos.values()){
+            index.add(info);
+        }
+    }
+}
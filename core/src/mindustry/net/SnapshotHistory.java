@@ -0,0 +1,117 @@
+package mindustry.net;
+
+import arc.struct.*;
+
+import java.util.*;
+
+/**
+ * Remembers the sync hashes of the entities in the last entity snapshots sent to one client, and decides which entities a delta snapshot has to contain.
+ * <p>
+ * An entity can only be left out if the client is known to have its current state: the last acknowledged snapshot and every snapshot sent after it
+ * must all have recorded the same hash for it. Acknowledgements can be lost, and the client may have applied newer snapshots that were never acknowledged,
+ * so comparing with the acknowledged snapshot alone would leave the client stuck on a state that was sent later.
+ * <p>
+ * Unchanged entities are still sent every {@link #keepaliveInterval} snapshots. Clients interpolate over the time between two updates of an entity,
+ * so an entity that starts moving after a long time without updates would barely move until the next update, and then jump.
+ */
+public class SnapshotHistory{
+    static final int capacity = 16;
+    /** An entity that was not sent in this many snapshots is sent even if it did not change. Must be less than {@link #capacity}. */
+    public static final int keepaliveInterval = 5;
+
+    private final IntIntMap[] hashes = new IntIntMap[capacity];
+    private final IntSet[] sent = new IntSet[capacity];
+    private final int[] ids = new int[capacity];
+    private int lastAcked = -1;
+
+    private IntIntMap current, baseline;
+    private IntSet currentSent;
+    private int from, to;
+    private boolean full;
+
+    public SnapshotHistory(){
+        Arrays.fill(ids, -1);
+    }
+
+    /** Starts recording a new snapshot. Snapshot IDs must increase. */
+    public void begin(int id){
+        baseline = get(lastAcked);
+        from = lastAcked + 1;
+        to = id;
+        //recording overwrites the oldest snapshot, which must not be one of those compared to
+        full = baseline == null || id - lastAcked >= capacity;
+        for(int i = from; i < to && !full; i++){
+            if(get(i) == null) full = true;
+        }
+
+        int index = id % capacity;
+        if(hashes[index] == null){
+            hashes[index] = new IntIntMap();
+            sent[index] = new IntSet();
+        }
+        hashes[index].clear();
+        sent[index].clear();
+        ids[index] = id;
+        current = hashes[index];
+        currentSent = sent[index];
+    }
+
+    /**
+     * Records the hash of an entity in the current snapshot. Must be called for every entity the snapshot may contain, even if it is not sent.
+     * @return whether the entity has to be sent
+     */
+    public boolean include(int entity, int hash){
+        current.put(entity, hash);
+        if(full || changed(entity, hash) || !sentRecently(entity)){
+            currentSent.add(entity);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean changed(int entity, int hash){
+        //the default can never equal the hash, so missing entities are always sent
+        if(baseline.get(entity, ~hash) != hash) return true;
+        for(int i = from; i < to; i++){
+            if(hashes[i % capacity].get(entity, ~hash) != hash) return true;
+        }
+        return false;
+    }
+
+    /** @return whether the entity was sent in one of the last {@link #keepaliveInterval} - 1 snapshots */
+    private boolean sentRecently(int entity){
+        for(int i = Math.max(to - keepaliveInterval + 1, 0); i < to; i++){
+            int index = i % capacity;
+            if(ids[index] == i && sent[index].contains(entity)) return true;
+        }
+        return false;
+    }
+
+    /** @return whether the current snapshot contains every entity, because there is no usable baseline */
+    public boolean isFull(){
+        return full;
+    }
+
+    /** Called when the client received a snapshot completely. */
+    public void ack(int id){
+        if(id > lastAcked){
+            lastAcked = id;
+        }
+    }
+
+    public int lastAcked(){
+        return lastAcked;
+    }
+
+    /** Forgets all sent snapshots, so that the next one contains every entity. */
+    public void reset(){
+        lastAcked = -1;
+        Arrays.fill(ids, -1);
+    }
+
+    private IntIntMap get(int id){
+        if(id < 0) return null;
+        int index = id % capacity;
+        return ids[index] == id ? hashes[index] : null;
+    }
+}
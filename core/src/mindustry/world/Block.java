@@ -149,6 +149,8 @@ public class Block extends UnlockableContent implements Senseable{
     public boolean autoResetEnabled = true;
     /** if true, the block stops updating when disabled */
     public boolean noUpdateDisabled = false;
+    /** the longest time in ticks that an idle building of this block sleeps before it checks its state again; see {@link Building#sleepFor(float)} */
+    public float idleSleepTime = 60f;
     /** if true, this block updates when it's a payload in a unit. */
     public boolean updateInUnits = true;
     /** if true, this block updates in payloads in units regardless of the experimental game rule */
@@ -43,6 +43,11 @@ public class ContinuousTurret extends Turret{
             //TODO how does coolant work here, if at all?
         }
 
+        @Override
+        protected boolean canSleep(){
+            return bullets.isEmpty() && super.canSleep();
+        }
+
         @Override
         public BulletType useAmmo(){
             //nothing used directly
@@ -47,6 +47,12 @@ public class LaserTurret extends PowerTurret{
             //do nothing, cooling is irrelevant here
         }
 
+        @Override
+        protected boolean canSleep(){
+            //the reload counts down here, and depends on coolant; keep updating, as there are few of these
+            return false;
+        }
+
         @Override
         public boolean shouldConsume(){
             //still consumes power when bullet is around
@@ -110,6 +110,7 @@ public class PayloadAmmoTurret extends Turret{
 
         @Override
         public void handlePayload(Building source, Payload payload){
+            noSleep();
             payloads.add(payload.content());
         }
 
@@ -269,6 +269,7 @@ public class Turret extends ReloadTurret{
         @Override
         public void control(LAccess type, double p1, double p2, double p3, double p4){
             if(type == LAccess.shoot && !unit.isPlayer()){
+                noSleep();
                 targetPos.set(World.unconv((float)p1), World.unconv((float)p2));
                 logicControlTime = logicControlCooldown;
                 logicShooting = !Mathf.zero(p3);
@@ -280,6 +281,7 @@ public class Turret extends ReloadTurret{
         @Override
         public void control(LAccess type, Object p1, double p2, double p3, double p4){
             if(type == LAccess.shootp && (unit == null || !unit.isPlayer())){
+                noSleep();
                 logicControlTime = logicControlCooldown;
                 logicShooting = !Mathf.zero(p2);
 
@@ -535,6 +537,24 @@ public class Turret extends ReloadTurret{
             if(coolant != null){
                 updateCooling();
             }
+
+            if(canSleep()){
+                //nothing to do until the next target search, which is due after one more tick at most; ammo, power and logic control wake it up earlier
+                sleepFor(hasAmmo() ? targetInterval + 1f : idleSleepTime);
+            }
+        }
+
+        /** @return whether this turret is idle and settled, so updating it does nothing until it finds a target */
+        protected boolean canSleep(){
+            if(target != null || !enabled || alwaysShooting || isControlled() || logicControlled() || charging() || queuedBullets > 0) return false;
+            if(reloadCounter < reload || curRecoil > 0f || heat > 0f || charge > 0f || warmupHold > 0f || shootWarmup > 0.001f) return false;
+
+            if(curRecoils != null){
+                for(float recoil : curRecoils){
+                    if(recoil > 0f) return false;
+                }
+            }
+            return true;
         }
 
         @Override
@@ -32,6 +32,11 @@ public class Conveyor extends Block implements Autotiler{
     public float displayedSpeed = 0f;
 
     public @Nullable Block junctionReplacement, bridgeReplacement;
+    /**
+     * Whether straight runs of this conveyor are updated as a {@link ConveyorLine}.
+     * Items pass along a line without going through acceptItem and handleItem, so this is disabled in {@link #init()} if the buildings override either of them.
+     */
+    public boolean groupLines = true;
 
     public Conveyor(String name){
         super(name);
@@ -64,6 +69,21 @@ public class Conveyor extends Block implements Autotiler{
 
         if(junctionReplacement == null) junctionReplacement = Blocks.junction;
         if(bridgeReplacement == null || !(bridgeReplacement instanceof ItemBridge)) bridgeReplacement = Blocks.itemBridge;
+
+        if(groupLines && overridesItemHandling(newBuilding().getClass())){
+            groupLines = false;
+        }
+    }
+
+    /** @return whether a building class changes how items are accepted or handled, compared to {@link ConveyorBuild} */
+    static boolean overridesItemHandling(Class<?> type){
+        try{
+            return
+                type.getMethod("acceptItem", Building.class, Item.class).getDeclaringClass() != ConveyorBuild.class ||
+                type.getMethod("handleItem", Building.class, Item.class).getDeclaringClass() != ConveyorBuild.class;
+        }catch(NoSuchMethodException e){
+            return true;
+        }
     }
 
     @Override
@@ -128,6 +148,9 @@ public class Conveyor extends Block implements Autotiler{
         public @Nullable ConveyorBuild nextc;
         //whether the next conveyor's rotation == tile rotation
         public boolean aligned;
+        //whether the next conveyor is part of the same line
+        public boolean linked;
+        public @Nullable ConveyorLine line;
 
         public int lastInserted, mid;
         public float minitem = 1;
@@ -215,9 +238,24 @@ public class Conveyor extends Block implements Autotiler{
             blendscly = bits[2];
             blending = bits[4];
 
+            ConveyorBuild lastc = nextc;
+            boolean lastLinked = linked;
+
             next = front();
             nextc = next instanceof ConveyorBuild && next.team == team ? (ConveyorBuild)next : null;
             aligned = nextc != null && rotation == next.rotation;
+            linked = aligned && ((Conveyor)block).groupLines && nextc.block == block;
+
+            if(line != null && (nextc != lastc || linked != lastLinked)){
+                line.invalidate();
+            }
+        }
+
+        @Override
+        public void onRemoved(){
+            super.onRemoved();
+
+            if(line != null) line.invalidate();
         }
 
         @Override
@@ -225,7 +263,7 @@ public class Conveyor extends Block implements Autotiler{
 
             if(clogHeat > 0.5f || !enabled) return;
 
-            noSleep();
+            wakeLine();
 
             float mspeed = speed * tilesize * 55f;
             float centerSpeed = 0.1f;
@@ -249,14 +287,45 @@ public class Conveyor extends Block implements Autotiler{
 
         @Override
         public void updateTile(){
+            if(((Conveyor)block).groupLines && (line == null || !line.valid)){
+                ConveyorLine.rebuild(this);
+            }
+
+            boolean moving;
+            if(line == null){
+                moving = advance();
+            }else if(line.head() == this){
+                moving = line.update();
+            }else{
+                //the head of the line moves the items and keeps the state of this conveyor up to date, so there is nothing to do here
+                if(len > 0){
+                    line.head().noSleep();
+                    sleepFor(idleSleepTime);
+                }else{
+                    sleep();
+                }
+                return;
+            }
+
+            //skip updates if possible
+            if(moving){
+                noSleep();
+            }else{
+                sleep();
+            }
+        }
+
+        /**
+         * Moves the items of this conveyor forward, and passes the ones that reached the end on.
+         * @return whether this conveyor has any items left
+         */
+        public boolean advance(){
             minitem = 1f;
             mid = 0;
 
-            //skip updates if possible
             if(len == 0){
                 clogHeat = 0f;
-                sleep();
-                return;
+                return false;
             }
 
             float nextMax = aligned ? 1f - Math.max(itemSpace - nextc.minitem, 0) : 1f;
@@ -272,9 +341,9 @@ public class Conveyor extends Block implements Autotiler{
                 if(ys[i] > 0.5 && i > 0) mid = i - 1;
                 xs[i] = Mathf.approach(xs[i], 0, moved*2);
 
-                if(ys[i] >= 1f && pass(ids[i])){
+                if(ys[i] >= 1f && (linked ? passLinked(ids[i], xs[i]) : pass(ids[i]))){
                     //align X position if passing forwards
-                    if(aligned){
+                    if(aligned && !linked){
                         nextc.xs[nextc.lastInserted] = xs[i];
                     }
                     //remove last item
@@ -291,7 +360,35 @@ public class Conveyor extends Block implements Autotiler{
                 clogHeat = 0f;
             }
 
-            noSleep();
+            return true;
+        }
+
+        /** Passes an item to the next conveyor of the same line, without going through {@link #acceptItem(Building, Item)} and {@link #handleItem(Building, Item)}. */
+        boolean passLinked(Item item, float x){
+            ConveyorBuild next = linkedNext();
+            if(next == null || next.len >= capacity || next.minitem < itemSpace) return false;
+
+            next.add(0);
+            next.xs[0] = x;
+            next.ys[0] = 0;
+            next.ids[0] = item;
+            next.items.add(item, 1);
+            next.wakeLine();
+            return true;
+        }
+
+        /** Wakes up whatever moves the items of this conveyor: the head of its line, or this conveyor if it is not part of one. */
+        public void wakeLine(){
+            if(line != null && line.valid && line.head() != this){
+                line.head().noSleep();
+            }else{
+                noSleep();
+            }
+        }
+
+        /** @return the next conveyor if it is part of the same line */
+        public @Nullable ConveyorBuild linkedNext(){
+            return linked && nextc.isValid() ? nextc : null;
         }
 
         public boolean pass(Item item){
@@ -304,7 +401,7 @@ public class Conveyor extends Block implements Autotiler{
 
         @Override
         public int removeStack(Item item, int amount){
-            noSleep();
+            wakeLine();
             int removed = 0;
 
             for(int j = 0; j < amount; j++){
@@ -343,7 +440,7 @@ public class Conveyor extends Block implements Autotiler{
                 items.add(item, 1);
             }
 
-            noSleep();
+            wakeLine();
         }
 
         @Override
@@ -364,7 +461,7 @@ public class Conveyor extends Block implements Autotiler{
             int ang = ((facing.relativeTo(tile.x, tile.y) - r));
             float x = (ang == -1 || ang == 3) ? 1 : (ang == 1 || ang == -3) ? -1 : 0;
 
-            noSleep();
+            wakeLine();
             items.add(item, 1);
 
             if(Math.abs(facing.relativeTo(tile.x, tile.y) - r) == 0){ //idx = 0
@@ -409,7 +506,7 @@ public class Conveyor extends Block implements Autotiler{
             }
 
             //this updates some state
-            updateTile();
+            advance();
         }
 
         @Override
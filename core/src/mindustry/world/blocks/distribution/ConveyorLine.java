@@ -0,0 +1,78 @@
+package mindustry.world.blocks.distribution;
+
+import arc.struct.*;
+import mindustry.world.blocks.distribution.Conveyor.*;
+
+/**
+ * A straight run of conveyors of the same block, which pass items to each other directly.
+ * The conveyor at the front of the line moves the items of all conveyors in one pass, from front to back, so every conveyor sees the space that the one in front of it freed up in the same tick.
+ * The other conveyors sleep, and the front conveyor keeps their time scale and efficiency up to date.
+ * <p>
+ * Lines are created lazily when a conveyor updates, and are invalidated when one of their conveyors is removed or the conveyor in front of it changes.
+ * Invalidating a line wakes all of its conveyors, so that the ones holding items build their new lines right away.
+ */
+public class ConveyorLine{
+    private static final Seq<ConveyorBuild> tmpBuilds = new Seq<>(false, 16, ConveyorBuild.class);
+
+    /** The conveyors of this line, from front to back. */
+    public final ConveyorBuild[] builds;
+    /** Whether this line still matches its conveyors. Invalid lines are rebuilt by the next conveyor that updates. */
+    public boolean valid = true;
+
+    ConveyorLine(ConveyorBuild[] builds){
+        this.builds = builds;
+    }
+
+    /** @return the conveyor at the front of this line, which updates all of them. */
+    public ConveyorBuild head(){
+        return builds[0];
+    }
+
+    /**
+     * Moves the items of all conveyors in this line forward.
+     * @return whether any conveyor has items left
+     */
+    public boolean update(){
+        boolean moving = false;
+        for(ConveyorBuild build : builds){
+            if(build.isSleeping()){
+                build.updateAsleep();
+            }
+            moving |= build.advance();
+        }
+        return moving;
+    }
+
+    /** Marks this line as invalid, and wakes up its conveyors so they rebuild their lines. */
+    public void invalidate(){
+        if(!valid) return;
+        valid = false;
+
+        for(ConveyorBuild build : builds){
+            if(build.isValid()){
+                build.noSleep();
+            }
+        }
+    }
+
+    /** Creates the line that a conveyor belongs to, and assigns it to all of its conveyors. */
+    public static ConveyorLine rebuild(ConveyorBuild build){
+        //lines are straight, so following the conveyors forward always ends
+        ConveyorBuild head = build;
+        for(ConveyorBuild next = head.linkedNext(); next != null; next = next.linkedNext()){
+            head = next;
+        }
+
+        tmpBuilds.clear();
+        for(ConveyorBuild current = head; current != null; current = current.back() instanceof ConveyorBuild prev && prev.linkedNext() == current ? prev : null){
+            tmpBuilds.add(current);
+        }
+
+        ConveyorLine line = new ConveyorLine(tmpBuilds.toArray(ConveyorBuild.class));
+        for(int i = 0; i < tmpBuilds.size; i++){
+            tmpBuilds.items[i].line = line;
+        }
+        tmpBuilds.clear();
+        return line;
+    }
+}
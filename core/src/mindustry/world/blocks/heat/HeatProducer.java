@@ -48,6 +48,12 @@ public class HeatProducer extends GenericCrafter{
             heat = Mathf.approachDelta(heat, heatOutput * efficiency, warmupRate * delta());
         }
 
+        @Override
+        protected boolean canSleep(){
+            //consumers keep drawing the remaining heat, so it has to decay first
+            return heat <= 0f && super.canSleep();
+        }
+
         @Override
         public float heatFrac(){
             return heat / heatOutput;
@@ -374,12 +374,12 @@ public class LogicBlock extends Block{
 
                     if(keep){
                         //store any older variables
-                        for(Var var : executor.vars){
-                            boolean unit = var.name.equals("@unit");
-                            if(!var.constant || unit){
-                                BVar dest = asm.getVar(var.name);
+                        for(int i = 0; i < executor.varCount(); i++){
+                            boolean unit = executor.names[i].equals("@unit");
+                            if(!executor.constant(i) || unit){
+                                BVar dest = asm.getVar(executor.names[i]);
                                 if(dest != null && (!dest.constant || unit)){
-                                    dest.value = var.isobj ? var.objval : var.numval;
+                                    dest.value = executor.value(i);
                                 }
                             }
                         }
@@ -524,13 +524,27 @@ public class LogicBlock extends Block{
 
                 if(accumulator > maxInstructionScale * ipt) accumulator = maxInstructionScale * ipt;
 
-                for(int i = 0; i < (int)accumulator; i++){
-                    executor.runOnce();
-                    accumulator --;
+                //instructions are run at the end of the tick, together with all other processors
+                if(accumulator >= 1f){
+                    logicScheduler.submit(this);
                 }
             }
         }
 
+        /** @return how many instructions this processor wants to run this tick. */
+        public int pendingInstructions(){
+            //processors have always run half of their accumulated instructions per tick (rounded up), as the loop re-read the accumulator
+            return ((int)accumulator + 1) / 2;
+        }
+
+        /** Runs accumulated instructions. Called by the {@link LogicScheduler}. */
+        public void runInstructions(int amount){
+            for(int i = 0; i < amount; i++){
+                executor.runOnce();
+                accumulator --;
+            }
+        }
+
         @Override
         public byte[] config(){
             return compress(code, relativeConnections());
@@ -620,15 +634,17 @@ public class LogicBlock extends Block{
             if (showContent && !code.isEmpty()) {
                 settingTable.row();
                 settingTable.pane(t -> {
-                    for (var s : executor.vars) {
-                        if(s.name.startsWith("___")) continue;
-                        String text = arcVarsText(s);
+                    for (int index = 0; index < executor.varCount(); index++) {
+                        int s = index;
+                        String name = executor.names[s];
+                        if(name.startsWith("___")) continue;
+                        String text = arcVarsText(executor, s);
                         t.table(tt -> {
-                            tt.labelWrap(s.name + "").color(arcVarsColor(s)).width(100f);
+                            tt.labelWrap(name + "").color(arcVarsColor(executor, s)).width(100f);
                             Label label = tt.labelWrap(" : " + text).width(200f).get();
                             tt.update(() -> {
                                 if (counter + Time.delta > period && refreshing) {
-                                    label.setText(arcVarsText(s));
+                                    label.setText(arcVarsText(executor, s));
                                 }
                             });
                         });
@@ -694,22 +710,23 @@ public class LogicBlock extends Block{
             write.b(compressed);
 
             //write only the non-constant variables
-            int count = Structs.count(executor.vars, v -> (!v.constant || v == executor.vars[LExecutor.varUnit]) && !(v.isobj && v.objval == null));
+            int count = 0;
+            for(int i = 0; i < executor.varCount(); i++){
+                if((!executor.constant(i) || i == LExecutor.varUnit) && executor.value(i) != null) count ++;
+            }
 
             write.i(count);
-            for(int i = 0; i < executor.vars.length; i++){
-                Var v = executor.vars[i];
+            for(int i = 0; i < executor.varCount(); i++){
+                Object value = executor.value(i);
 
                 //null is the default variable value, so waste no time serializing that
-                if(v.isobj && v.objval == null) continue;
+                if(value == null) continue;
 
                 //skip constants
-                if(v.constant && i != LExecutor.varUnit) continue;
+                if(executor.constant(i) && i != LExecutor.varUnit) continue;
 
                 //write the name and the object value
-                write.str(v.name);
-
-                Object value = v.isobj ? v.objval : v.numval;
+                write.str(executor.names[i]);
                 TypeIO.writeObject(write, value);
             }
 
@@ -194,15 +194,8 @@ public class BeamNode extends PowerBlock{
                         prev.power.links.removeValue(pos());
                         power.links.removeValue(prev.pos());
 
-                        PowerGraph newgraph = new PowerGraph();
-                        //reflow from this point, covering all tiles on this side
-                        newgraph.reflow(this);
-
-                        if(prev.power.graph != newgraph){
-                            //reflow power for other end
-                            PowerGraph og = new PowerGraph();
-                            og.reflow(prev);
-                        }
+                        //split off the side that is no longer connected, if any
+                        power.graph.removeLink(this, prev);
                     }
 
                     //linked to a new one, connect graphs
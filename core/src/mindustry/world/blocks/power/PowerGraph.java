@@ -6,6 +6,7 @@ import arc.struct.*;
 import arc.util.*;
 import mindustry.gen.*;
 import mindustry.world.consumers.*;
+import mindustry.world.modules.*;
 import mindustry.game.Team;
 import mindustry.Vars;
 import mindustry.ui.*;
@@ -15,6 +16,11 @@ public class PowerGraph{
     private static final Seq<Building> outArray1 = new Seq<>();
     private static final Seq<Building> outArray2 = new Seq<>();
     private static final IntSet closedSet = new IntSet();
+    private static final Seq<Building> roots = new Seq<>();
+    private static final IntIntMap searchOf = new IntIntMap();
+    private static final IntSeq searchParents = new IntSeq();
+    private static final Seq<Queue<Building>> searchQueues = new Seq<>();
+    private static final Seq<Seq<Building>> searchFound = new Seq<>();
 
     //do not modify any of these unless you know what you're doing!
     public final Seq<Building> producers = new Seq<>(false, 16, Building.class);
@@ -31,6 +37,14 @@ public class PowerGraph{
     //diodes workaround for correct energy production info
     private float energyDelta = 0f;
 
+    /**
+     * Values of the buildings in this graph, indexed like the building lists. They are gathered once per update, so the balance is computed in primitive loops,
+     * and every building is only asked for its production, request and validity once. Battery capacities are only copied again when the buildings change.
+     */
+    private float[] produced = {}, requested = {}, deltas = {}, charges = {}, capacities = {};
+    private boolean[] valid = {}, enabled = {};
+    private boolean capacitiesDirty = true;
+
     private long lastFrameUpdated = -1;
     private final int graphID;
     private static int lastGraphID;
@@ -247,16 +261,18 @@ public class PowerGraph{
 
         lastFrameUpdated = Core.graphics.getFrameId();
 
-        float powerNeeded = getPowerNeeded();
-        float powerProduced = getPowerProduced();
+        gather();
+
+        float powerNeeded = sumNeeded();
+        float powerProduced = sumProduced();
 
         lastPowerNeeded = powerNeeded;
         lastPowerProduced = powerProduced;
 
         lastScaledPowerIn = (powerProduced + energyDelta) / Time.delta;
         lastScaledPowerOut = powerNeeded / Time.delta;
-        lastCapacity = getTotalBatteryCapacity();
-        lastPowerStored = getBatteryStored();
+        lastCapacity = sumTotalCapacity();
+        lastPowerStored = sumStored();
 
         powerBalance.add((lastPowerProduced - lastPowerNeeded + energyDelta) / Time.delta);
         energyDelta = 0f;
@@ -266,17 +282,174 @@ public class PowerGraph{
 
             if(!Mathf.equal(powerNeeded, powerProduced)){
                 if(powerNeeded > powerProduced){
-                    float powerBatteryUsed = useBatteries(powerNeeded - powerProduced);
+                    float powerBatteryUsed = useCharges(powerNeeded - powerProduced);
                     powerProduced += powerBatteryUsed;
                     lastPowerProduced += powerBatteryUsed;
                 }else if(powerProduced > powerNeeded){
                     charged = true;
-                    powerProduced -= chargeBatteries(powerProduced - powerNeeded);
+                    powerProduced -= addCharges(powerProduced - powerNeeded);
                 }
             }
 
-            distributePower(powerNeeded, powerProduced, charged);
+            distribute(powerNeeded, powerProduced, charged);
+
+            var items = batteries.items;
+            for(int i = 0; i < batteries.size; i++){
+                if(enabled[i]) items[i].power.status = charges[i];
+            }
+        }
+    }
+
+    /** Copies the values that {@link #update()} needs from the buildings. */
+    private void gather(){
+        int np = producers.size, nc = consumers.size, nb = batteries.size;
+
+        produced = ensureCapacity(produced, np);
+        var producerItems = producers.items;
+        for(int i = 0; i < np; i++){
+            produced[i] = producerItems[i].getPowerProduction() * producerItems[i].delta();
+        }
+
+        requested = ensureCapacity(requested, nc);
+        deltas = ensureCapacity(deltas, nc);
+        valid = ensureCapacity(valid, nc);
+        var consumerItems = consumers.items;
+        for(int i = 0; i < nc; i++){
+            var consumer = consumerItems[i];
+            var consumePower = consumer.block.consPower;
+            requested[i] = consumePower.requestedPower(consumer);
+            deltas[i] = consumer.delta();
+            valid[i] = otherConsumersAreValid(consumer, consumePower);
+        }
+
+        if(capacitiesDirty || capacities.length < nb){
+            capacities = ensureCapacity(capacities, nb);
+            for(int i = 0; i < nb; i++){
+                capacities[i] = batteries.items[i].block.consPower.capacity;
+            }
+            capacitiesDirty = false;
+        }
+
+        charges = ensureCapacity(charges, nb);
+        enabled = ensureCapacity(enabled, nb);
+        var batteryItems = batteries.items;
+        for(int i = 0; i < nb; i++){
+            charges[i] = batteryItems[i].power.status;
+            enabled[i] = batteryItems[i].enabled;
+        }
+    }
+
+    //the methods below compute the same as the public methods that read from the buildings, in the same order, but use the gathered values
+
+    private float sumProduced(){
+        float powerProduced = 0f;
+        for(int i = 0; i < producers.size; i++){
+            powerProduced += produced[i];
         }
+        return powerProduced;
+    }
+
+    private float sumNeeded(){
+        float powerNeeded = 0f;
+        for(int i = 0; i < consumers.size; i++){
+            if(valid[i]){
+                powerNeeded += requested[i] * deltas[i];
+            }
+        }
+        return powerNeeded;
+    }
+
+    private float sumStored(){
+        float totalAccumulator = 0f;
+        for(int i = 0; i < batteries.size; i++){
+            if(enabled[i]){
+                totalAccumulator += charges[i] * capacities[i];
+            }
+        }
+        return totalAccumulator;
+    }
+
+    private float sumCapacity(){
+        float totalCapacity = 0f;
+        for(int i = 0; i < batteries.size; i++){
+            if(enabled[i]){
+                totalCapacity += (1f - charges[i]) * capacities[i];
+            }
+        }
+        return totalCapacity;
+    }
+
+    private float sumTotalCapacity(){
+        float totalCapacity = 0f;
+        for(int i = 0; i < batteries.size; i++){
+            if(enabled[i]){
+                totalCapacity += capacities[i];
+            }
+        }
+        return totalCapacity;
+    }
+
+    private float useCharges(float needed){
+        float stored = sumStored();
+        if(Mathf.equal(stored, 0f)) return 0f;
+
+        float used = Math.min(stored, needed);
+        float consumedPowerPercentage = Math.min(1.0f, needed / stored);
+        for(int i = 0; i < batteries.size; i++){
+            if(enabled[i]){
+                charges[i] *= (1f-consumedPowerPercentage);
+            }
+        }
+        return used;
+    }
+
+    private float addCharges(float excess){
+        float capacity = sumCapacity();
+        float chargedPercent = Math.min(excess/capacity, 1f);
+        if(Mathf.equal(capacity, 0f)) return 0f;
+
+        for(int i = 0; i < batteries.size; i++){
+            if(enabled[i] && capacities[i] > 0f){
+                charges[i] += (1f - charges[i]) * chargedPercent;
+            }
+        }
+        return Math.min(excess, capacity);
+    }
+
+    private void distribute(float needed, float totalProduced, boolean charged){
+        float coverage = Mathf.zero(needed) && Mathf.zero(totalProduced) && !charged && Mathf.zero(lastPowerStored) ? 0f : Mathf.zero(needed) ? 1f : Math.min(1, totalProduced / needed);
+        var items = consumers.items;
+        for(int i = 0; i < consumers.size; i++){
+            var consumer = items[i];
+            var cons = consumer.block.consPower;
+            float lastStatus = consumer.power.status;
+            if(cons.buffered){
+                if(!Mathf.zero(cons.capacity)){
+                    float maximumRate = requested[i] * coverage * deltas[i];
+                    consumer.power.status = Mathf.clamp(consumer.power.status + maximumRate / cons.capacity);
+                }
+            }else if(valid[i]){
+                consumer.power.status = coverage;
+            }else{
+                consumer.power.status = Math.min(1, totalProduced / (needed + cons.usage * deltas[i]));
+                if(Float.isNaN(consumer.power.status)){
+                    consumer.power.status = 0f;
+                }
+            }
+
+            //power was restored, so a sleeping consumer may be able to work again
+            if(lastStatus <= 0f && consumer.power.status > 0f){
+                consumer.noSleep();
+            }
+        }
+    }
+
+    private static float[] ensureCapacity(float[] array, int size){
+        return array.length >= size ? array : new float[Math.max(size, array.length * 2)];
+    }
+
+    private static boolean[] ensureCapacity(boolean[] array, int size){
+        return array.length >= size ? array : new boolean[Math.max(size, array.length * 2)];
     }
 
     public void addGraph(PowerGraph graph){
@@ -307,21 +480,67 @@ public class PowerGraph{
             }
 
             team = build.team;
+            capacitiesDirty = true;
             build.power.graph = this;
             build.power.init = true;
-            all.add(build);
+
+            //positions in the lists of the previous graph are meaningless here
+            PowerModule power = build.power;
+            power.allIndex = power.producerIndex = power.consumerIndex = power.batteryIndex = -1;
+            power.allIndex = push(all, build);
 
             if(build.block.outputsPower && build.block.consumesPower && !build.block.consPower.buffered){
-                producers.add(build);
-                consumers.add(build);
+                power.producerIndex = push(producers, build);
+                power.consumerIndex = push(consumers, build);
             }else if(build.block.outputsPower && build.block.consumesPower){
-                batteries.add(build);
+                power.batteryIndex = push(batteries, build);
             }else if(build.block.outputsPower){
-                producers.add(build);
+                power.producerIndex = push(producers, build);
             }else if(build.block.consumesPower && build.block.consPower != null){
-                consumers.add(build);
+                power.consumerIndex = push(consumers, build);
+            }
+        }
+    }
+
+    private static int push(Seq<Building> list, Building build){
+        list.add(build);
+        return list.size - 1;
+    }
+
+    /** Removes a building from all lists of this graph, moving the last building of each list into its position. */
+    private void removeFromLists(Building build){
+        PowerModule power = build.power;
+        pull(all, build, power.allIndex, 0);
+        pull(producers, build, power.producerIndex, 1);
+        pull(consumers, build, power.consumerIndex, 2);
+        pull(batteries, build, power.batteryIndex, 3);
+        power.allIndex = power.producerIndex = power.consumerIndex = power.batteryIndex = -1;
+    }
+
+    /** @param list which position of the building is stored: 0 for all, 1 for producers, 2 for consumers, 3 for batteries */
+    private static void pull(Seq<Building> items, Building build, int index, int list){
+        if(index == -1) return;
+
+        //the list was changed without updating the positions
+        if(index >= items.size || items.items[index] != build){
+            index = items.indexOf(build, true);
+            if(index == -1) return;
+        }
+
+        int last = items.size - 1;
+        if(index != last){
+            Building moved = items.items[last];
+            items.items[index] = moved;
+            PowerModule power = moved.power;
+            switch(list){
+                case 0 -> power.allIndex = index;
+                case 1 -> power.producerIndex = index;
+                case 2 -> power.consumerIndex = index;
+                default -> power.batteryIndex = index;
             }
         }
+        items.items[last] = null;
+        items.size = last;
     }
 
     public void checkAdd(){
@@ -329,6 +548,13 @@ public class PowerGraph{
     }
 
     public void clear(){
+        capacitiesDirty = true;
+        for(int i = 0; i < all.size; i++){
+            PowerModule power = all.items[i].power;
+            if(power.graph == this){
+                power.allIndex = power.producerIndex = power.consumerIndex = power.batteryIndex = -1;
+            }
+        }
         all.clear();
         producers.clear();
         consumers.clear();
@@ -355,49 +581,156 @@ public class PowerGraph{
 
     /** Used for unit tests only. */
     public void removeList(Building build){
-        all.remove(build);
-        producers.remove(build);
-        consumers.remove(build);
-        batteries.remove(build);
+        capacitiesDirty = true;
+        removeFromLists(build);
     }
 
-    /** Note that this does not actually remove the building from the graph;
-     * it creates *new* graphs that contain the correct buildings. Doing this invalidates the graph. */
+    /**
+     * Removes a building from this graph, and moves the parts of the graph that are no longer connected to new graphs.
+     * The largest part stays in this graph; see {@link #split(Building, Seq)}.
+     */
     public void remove(Building tile){
+        roots.clear();
+        roots.addAll(tile.getPowerConnections(outArray1));
+        split(tile, roots);
+        roots.clear();
+    }
+
+    /** Moves the parts of this graph that are no longer connected to new graphs after the link between two of its buildings was removed. */
+    public void removeLink(Building a, Building b){
+        roots.clear();
+        roots.add(a);
+        roots.add(b);
+        split(null, roots);
+        roots.clear();
+    }
+
+    /**
+     * Splits off the parts of this graph that are no longer connected after a building or link was removed.
+     * All roots are searched at once, one building each in turn, and searches that reach each other are merged, as they are still connected.
+     * The search stops as soon as all searches are merged, or at most one of them is left with buildings to visit; only the searches that ran out
+     * of buildings are moved to new graphs. This way, the cost scales with the size of the parts that were split off instead of the whole graph.
+     * @param removed the building that was removed, which is not visited, or null
+     */
+    private void split(@Nullable Building removed, Seq<Building> roots){
+        searchOf.clear();
+        searchParents.clear();
+
+        int count = 0;
+        for(Building root : roots){
+            if(root == removed || root.power == null || root.power.graph != this || searchOf.containsKey(root.pos())) continue;
+
+            if(searchQueues.size <= count){
+                searchQueues.add(new Queue<>());
+                searchFound.add(new Seq<>(false, 16, Building.class));
+            }
+            Queue<Building> queue = searchQueues.get(count);
+            Seq<Building> found = searchFound.get(count);
+            queue.clear();
+            found.clear();
+            queue.addLast(root);
+            found.add(root);
+            searchOf.put(root.pos(), count);
+            searchParents.add(count);
+            count++;
+        }
 
-        //go through all the connections of this tile
-        for(Building other : tile.getPowerConnections(outArray1)){
-            //a graph has already been assigned to this tile from a previous call, skip it
-            if(other.power.graph != this) continue;
+        int groups = count, alive = count;
+        while(groups > 1 && alive > 1){
+            alive = 0;
+            for(int i = 0; i < count; i++){
+                Queue<Building> queue = searchQueues.get(i);
+                if(searchParents.get(i) != i || queue.isEmpty()) continue;
 
-            //create graph for this branch
-            PowerGraph graph = new PowerGraph();
-            graph.checkAdd();
-            graph.add(other);
-            //add to queue for BFS
-            queue.clear();
-            queue.addLast(other);
-            while(queue.size > 0){
-                //get child from queue
                 Building child = queue.removeFirst();
-                //add it to the new branch graph
-                graph.add(child);
-                //go through connections
                 for(Building next : child.getPowerConnections(outArray2)){
-                    //make sure it hasn't looped back, and that the new graph being assigned hasn't already been assigned
-                    //also skip closed tiles
-                    if(next != tile && next.power.graph != graph){
-                        graph.add(next);
+                    if(next == removed) continue;
+
+                    int other = searchOf.get(next.pos(), -1);
+                    if(other == -1){
+                        searchOf.put(next.pos(), i);
+                        searchFound.get(i).add(next);
                         queue.addLast(next);
+                    }else if((other = findSearch(other)) != i){
+                        //the searches met, so they cover the same part of the graph; continue with the buildings left to visit of both
+                        searchParents.set(other, i);
+                        Queue<Building> otherQueue = searchQueues.get(other);
+                        while(!otherQueue.isEmpty()){
+                            queue.addLast(otherQueue.removeFirst());
+                        }
+                        groups--;
                     }
                 }
+
+                if(!queue.isEmpty()) alive++;
             }
-            //update the graph once so direct consumers without any connected producer lose their power
-            graph.update();
         }
 
-        //implied empty graph here
-        if(entity != null) entity.remove();
+        boolean changed = removed != null;
+
+        if(groups > 1){
+            int[] sizes = new int[count];
+            for(int i = 0; i < count; i++){
+                sizes[findSearch(i)] += searchFound.get(i).size;
+            }
+
+            //the search that has not run out of buildings is never finished, so it has to stay; otherwise, keep the largest part
+            int kept = -1;
+            for(int i = 0; i < count; i++){
+                if(searchParents.get(i) != i) continue;
+                if(!searchQueues.get(i).isEmpty()){
+                    kept = i;
+                    break;
+                }
+                if(kept == -1 || sizes[i] > sizes[kept]) kept = i;
+            }
+
+            for(int group = 0; group < count; group++){
+                if(searchParents.get(group) != group || group == kept) continue;
+
+                PowerGraph graph = new PowerGraph();
+                for(int i = 0; i < count; i++){
+                    if(findSearch(i) != group) continue;
+
+                    for(Building build : searchFound.get(i)){
+                        //only the buildings that are moved are removed from this graph, which needs their positions in it, so remove them before they are added to the new one
+                        removeFromLists(build);
+                        //unset the graph first, as adding a building removes the entity of its previous graph
+                        build.power.graph = null;
+                        graph.add(build);
+                    }
+                }
+                graph.checkAdd();
+                //update the graph once so direct consumers without any connected producer lose their power
+                graph.update();
+            }
+            changed = true;
+        }
+
+        for(int i = 0; i < count; i++){
+            searchQueues.get(i).clear();
+            searchFound.get(i).clear();
+        }
+
+        if(changed){
+            if(removed != null && removed.power.graph == this){
+                removeFromLists(removed);
+                removed.power.graph = new PowerGraph(false);
+            }
+
+            capacitiesDirty = true;
+
+            //implied empty graph here
+            if(all.isEmpty() && entity != null) entity.remove();
+        }
+    }
+
+    private static int findSearch(int i){
+        while(searchParents.get(i) != i){
+            searchParents.set(i, searchParents.get(searchParents.get(i)));
+            i = searchParents.get(i);
+        }
+        return i;
     }
 
     public int getId(){
@@ -61,18 +61,11 @@ public class PowerNode extends PowerBlock{
             if(contains){
                 //unlink
                 power.links.removeValue(value);
-                if(valid) other.power.links.removeValue(entity.pos());
+                if(valid){
+                    other.power.links.removeValue(entity.pos());
 
-                PowerGraph newgraph = new PowerGraph();
-
-                //reflow from this point, covering all tiles on this side
-                newgraph.reflow(entity);
-
-                if(valid && other.power.graph != newgraph){
-                    //create new graph for other end
-                    PowerGraph og = new PowerGraph();
-                    //reflow from other end
-                    og.reflow(other);
+                    //split off the side that is no longer connected, if any
+                    power.graph.removeLink(entity, other);
                 }
             }else if(linkValid(entity, other) && valid && power.links.size < maxNodes){
 
@@ -299,11 +299,13 @@ public class Drill extends Block{
 
         @Override
         public void updateTile(){
+            boolean dumpFailed = false;
             if(timer(timerDump, dumpTime)){
-                dump(dominantItem != null && items.has(dominantItem) ? dominantItem : null);
+                dumpFailed = !dump(dominantItem != null && items.has(dominantItem) ? dominantItem : null);
             }
 
             if(dominantItem == null){
+                checkSleep(dumpFailed);
                 return;
             }
 
@@ -323,6 +325,7 @@ public class Drill extends Block{
             }else{
                 lastDrillSpeed = 0f;
                 warmup = Mathf.approachDelta(warmup, 0f, warmupSpeed);
+                checkSleep(dumpFailed);
                 return;
             }
 
@@ -335,6 +338,16 @@ public class Drill extends Block{
             }
         }
 
+        /**
+         * Sleeps when the drill is not drilling and holds nothing to dump.
+         * A drill that still holds items stays awake, as nothing signals that a neighbour has room again and it has to keep dumping at its usual rate.
+         */
+        protected void checkSleep(boolean dumpFailed){
+            if(dumpFailed && enabled && warmup <= 0.0001f && items.total() == 0){
+                sleepFor(idleSleepTime);
+            }
+        }
+
         @Override
         public float progress(){
             return dominantItem == null ? 0f : Mathf.clamp(progress / getDrillTime(dominantItem));
@@ -242,6 +242,31 @@ public class GenericCrafter extends Block{
             }
 
             dumpOutputs();
+
+            //nothing to do until inputs or power arrive
+            if(canSleep()){
+                sleepFor(idleSleepTime);
+            }
+        }
+
+        /** @return whether this crafter is idle and has nothing left to update, so it can sleep until inputs or power arrive */
+        protected boolean canSleep(){
+            return efficiency <= 0f && enabled && warmup <= 0.0001f && !hasOutputs();
+        }
+
+        /** @return whether this crafter holds any of its outputs, which still need to be dumped */
+        public boolean hasOutputs(){
+            if(outputItems != null){
+                for(var output : outputItems){
+                    if(items.has(output.item)) return true;
+                }
+            }
+            if(outputLiquids != null){
+                for(var output : outputLiquids){
+                    if(liquids.get(output.liquid) > 0.0001f) return true;
+                }
+            }
+            return false;
         }
 
         @Override
@@ -52,6 +52,12 @@ public class HeatCrafter extends GenericCrafter{
             super.updateTile();
         }
 
+        @Override
+        protected boolean canSleep(){
+            //heat arrives from neighbours without any event that would wake this up
+            return false;
+        }
+
         @Override
         public float heatRequirement(){
             return heatRequirement;
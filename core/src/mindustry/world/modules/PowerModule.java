@@ -14,6 +14,8 @@ public class PowerModule extends BlockModule{
     public boolean init;
     public PowerGraph graph = new PowerGraph();
     public IntSeq links = new IntSeq();
+    /** Positions of this building in the lists of its graph, or -1 if it is not in a list. Maintained by {@link PowerGraph}, so it can be removed without a search. */
+    public int allIndex = -1, producerIndex = -1, consumerIndex = -1, batteryIndex = -1;
 
     @Override
     public void write(Writes write){
@@ -24,6 +24,7 @@ import mindustry.net.Administration.*;
 import mindustry.net.Packets.*;
 import mindustry.net.*;
 import mindustry.type.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
 
 import java.io.*;
 import java.net.*;
@@ -47,6 +48,7 @@ public class ServerControl implements ApplicationListener{
     public final Fi logFolder = Core.settings.getDataDirectory().child("logs/");
 
     private final Interval autosaveCount = new Interval();
+    private final DeltaSaves deltaSaves = new DeltaSaves();
 
     public Runnable serverInput = () -> {
         Scanner scan = new Scanner(System.in);
@@ -230,20 +232,51 @@ public class ServerControl implements ApplicationListener{
 
                     //delete older saves
                     if(autosaves.size >= max){
+                        //delta saves can only be loaded with the full save before them
+                        boolean keepBase = max > 1 && DeltaSaves.isDelta(autosaves.get(max - 2));
                         for(int i = max - 1; i < autosaves.size; i++){
-                            autosaves.get(i).delete();
+                            Fi save = autosaves.get(i);
+                            if(keepBase && !DeltaSaves.isDelta(save)){
+                                keepBase = false;
+                            }else if(!save.name().equals(deltaSaves.baseName())){
+                                save.delete();
+                            }
                         }
                     }
 
-                    String fileName = "auto_" + mapName + "_" + date + "." + saveExtension;
-                    Fi file = saveDirectory.child(fileName);
-                    info("Autosaving...");
+                    int baseInterval = Config.autosaveBaseInterval.num();
+                    boolean delta = baseInterval > 1 && deltaSaves.nextIsDelta(baseInterval);
 
-                    try{
-                        SaveIO.save(file);
-                        info("Autosave completed.");
-                    }catch(Throwable e){
-                        err("Autosave failed.", e);
+                    String fileName = "auto_" + mapName + "_" + date + (delta ? DeltaSaves.deltaSuffix : "") + "." + saveExtension;
+                    Fi file = saveDirectory.child(fileName);
+                    info(delta ? "Autosaving changes..." : "Autosaving...");
+
+                    long start = Time.nanos();
+                    if(baseInterval > 1){
+                        deltaSaves.save(file, delta, e -> {
+                            if(e == null){
+                                info("Autosave completed.");
+                            }else{
+                                err("Autosave failed.", e);
+                            }
+                        });
+                        info("Autosave snapshot paused the game for @ms.", Strings.fixed(Time.timeSinceNanos(start) / 1000000f, 2));
+                    }else if(Config.backgroundAutosave.bool()){
+                        SaveIO.saveInBackground(file, e -> {
+                            if(e == null){
+                                info("Autosave completed.");
+                            }else{
+                                err("Autosave failed.", e);
+                            }
+                        });
+                        info("Autosave snapshot paused the game for @ms.", Strings.fixed(Time.timeSinceNanos(start) / 1000000f, 2));
+                    }else{
+                        try{
+                            SaveIO.save(file);
+                            info("Autosave completed, paused the game for @ms.", Strings.fixed(Time.timeSinceNanos(start) / 1000000f, 2));
+                        }catch(Throwable e){
+                            err("Autosave failed.", e);
+                        }
                     }
                 }
             }
@@ -458,6 +491,9 @@ public class ServerControl implements ApplicationListener{
                 info("  @ units / @ enemies", Groups.unit.size(), state.enemies);
 
                 info("  @ FPS, @ MB used.", Core.graphics.getFramesPerSecond(), Core.app.getJavaHeap() / 1024 / 1024);
+                info("  @ unit path searches, @ coalesced.", controlPath.searchCount(), controlPath.coalescedCount());
+                info("  @ processors ran @ instructions last tick, @ throttled.", logicScheduler.lastProcessors, logicScheduler.lastInstructions, logicScheduler.lastThrottled);
+                info("  @ buildings updated last tick, @ asleep, @ woken by timers.", sleepScheduler.lastUpdated, sleepScheduler.lastSleeping, sleepScheduler.lastWoken);
 
                 if(Groups.player.size() > 0){
                     info("  Players: @", Groups.player.size());
@@ -470,6 +506,44 @@ public class ServerControl implements ApplicationListener{
             }
         });
 
+        handler.register("processors", "[amount/reset]", "List the logic processors that took the most time while profiling was enabled.", arg -> {
+            if(state.isMenu()){
+                err("Not hosting. Host a game first.");
+                return;
+            }
+
+            if(arg.length > 0 && arg[0].equals("reset")){
+                logicScheduler.resetProfiles();
+                info("Processor profiles reset.");
+                return;
+            }
+
+            if(arg.length > 0 && !Strings.canParsePositiveInt(arg[0])){
+                err("Amount must be a number.");
+                return;
+            }
+
+            if(!Config.logicProfiling.bool()){
+                info("Profiling is disabled. Enable it with 'config logicProfiling true'.");
+            }
+
+            Seq<LogicBuild> builds = logicScheduler.profiled();
+            if(builds.isEmpty()){
+                info("No processors have been profiled.");
+                return;
+            }
+
+            int amount = Math.min(arg.length > 0 ? Strings.parseInt(arg[0]) : 10, builds.size);
+            info("Processors by time taken:");
+            for(int i = 0; i < amount; i++){
+                LogicBuild build = builds.get(i);
+                info("  &fi@&fr at &lc@, @&fr [@]: @ ms, @ instructions",
+                    build.block.name, build.tileX(), build.tileY(), build.team.name,
+                    Strings.fixed(build.executor.profiledNanos / 1000000f, 2), build.executor.profiledInstructions);
+                info("    &lk@", logicScheduler.topInstructions(build.executor, 3));
+            }
+        });
+
         handler.register("mods", "Display all loaded mods.", arg -> {
             if(!mods.list().isEmpty()){
                 info("Mods:");
@@ -1,6 +1,7 @@
 import arc.*;
 import arc.backend.headless.*;
 import arc.files.*;
+import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
@@ -8,6 +9,8 @@ import arc.util.io.*;
 import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import mindustry.*;
+import mindustry.ai.*;
+import mindustry.ai.Pathfinder.*;
 import mindustry.content.*;
 import mindustry.core.*;
 import mindustry.core.GameState.*;
@@ -17,13 +20,21 @@ import mindustry.game.*;
 import mindustry.gen.*;
 import mindustry.io.*;
 import mindustry.io.SaveIO.*;
+import mindustry.io.versions.*;
+import mindustry.logic.*;
 import mindustry.maps.*;
 import mindustry.mod.*;
 import mindustry.mod.Mods.*;
 import mindustry.net.*;
+import mindustry.net.Administration.*;
 import mindustry.net.Packets.*;
 import mindustry.type.*;
 import mindustry.world.*;
+import mindustry.world.blocks.distribution.*;
+import mindustry.world.blocks.distribution.Conveyor.*;
+import mindustry.world.blocks.heat.*;
+import mindustry.world.blocks.heat.HeatProducer.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
 import mindustry.world.blocks.payloads.*;
 import mindustry.world.blocks.storage.*;
 import org.junit.jupiter.api.*;
@@ -32,6 +43,8 @@ import org.junit.jupiter.params.provider.*;
 
 import java.io.*;
 import java.nio.*;
+import java.util.Arrays;
+import java.util.zip.*;
 
 import static mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -371,6 +384,75 @@ public class ApplicationTests{
         assertTrue(state.teams.playerCores().size > 0);
     }
 
+    @Test
+    void saveLoadRegions(){
+        world.loadMap(testMap);
+        int width = world.width(), height = world.height();
+        int[] floors = new int[width * height], blocks = new int[width * height];
+        for(int i = 0; i < floors.length; i++){
+            Tile tile = world.tiles.geti(i);
+            floors[i] = tile.floorID() << 16 | tile.overlayID();
+            blocks[i] = tile.blockID() << 16 | (tile.build == null ? 0 : tile.build.pos() & 0xffff);
+        }
+
+        assertTrue(SaveIO.getVersion().compressesRegions());
+        SaveIO.save(saveDirectory.child("0.msav"));
+        resetWorld();
+        SaveIO.load(saveDirectory.child("0.msav"));
+
+        assertEquals(width, world.width());
+        assertEquals(height, world.height());
+        for(int i = 0; i < floors.length; i++){
+            Tile tile = world.tiles.geti(i);
+            assertEquals(floors[i], tile.floorID() << 16 | tile.overlayID(), "Floor at " + tile.x + ", " + tile.y);
+            assertEquals(blocks[i], tile.blockID() << 16 | (tile.build == null ? 0 : tile.build.pos() & 0xffff), "Block at " + tile.x + ", " + tile.y);
+        }
+        assertTrue(state.teams.playerCores().size > 0);
+    }
+
+    @Test
+    void deltaSaveLoad() throws IOException{
+        world.loadMap(testMap);
+        Save9 ver = (Save9)SaveIO.getSaveWriter(9);
+        Fi baseFile = saveDirectory.child("delta-base.msav"), deltaFile = saveDirectory.child("delta-change.msav");
+
+        DeltaSaves.Base base = new DeltaSaves.Base(baseFile.name(), world.width(), world.height());
+        writeSnapshot(baseFile, ver, ver.snapshotBase(new StringMap(), base));
+        assertTrue(base.written);
+
+        Tile changed = world.tile(2, world.height() - 3);
+        changed.setBlock(Blocks.copperWall, Team.sharded);
+
+        int[] blocks = new int[world.width() * world.height()];
+        for(int i = 0; i < blocks.length; i++){
+            blocks[i] = world.tiles.geti(i).blockID();
+        }
+
+        Bits bands = new Bits();
+        for(int i = 0; i * Save8.bandRows < world.height(); i++){
+            bands.set(i);
+        }
+        writeSnapshot(deltaFile, ver, ver.snapshotDelta(new StringMap(), base, bands));
+        assertTrue(deltaFile.length() < baseFile.length(), "Delta saves must only contain changed bands");
+
+        resetWorld();
+        SaveIO.load(deltaFile);
+
+        assertEquals(Blocks.copperWall, world.tile(2, world.height() - 3).block());
+        for(int i = 0; i < blocks.length; i++){
+            assertEquals(blocks[i], world.tiles.geti(i).blockID());
+        }
+        assertTrue(state.teams.playerCores().size > 0);
+    }
+
+    void writeSnapshot(Fi file, SaveVersion ver, SaveFileReader.IORunner<DataOutput> snapshot) throws IOException{
+        try(DataOutputStream stream = new DataOutputStream(new DeflaterOutputStream(file.write(false)))){
+            stream.write(SaveIO.header);
+            stream.writeInt(ver.version);
+            snapshot.accept(stream);
+        }
+    }
+
     void updateBlocks(int times){
         for(Tile tile : world.tiles){
             if(tile.build != null && tile.isCenter()){
@@ -388,6 +470,255 @@ public class ApplicationTests{
         }
     }
 
+    @Test
+    void sleepingBuildings(){
+        createMap();
+        state.set(State.playing);
+        Time.update();
+
+        Tile tile = world.tile(2, 2);
+        tile.setBlock(Blocks.siliconSmelter, Team.sharded);
+        Building build = tile.build;
+
+        //no items and no power, so it goes to sleep right away
+        sleepScheduler.update();
+        Groups.update();
+        assertTrue(build.isSleeping());
+        assertFalse(build.isAdded());
+        assertEquals(1, sleepScheduler.sleeping);
+
+        build.handleItem(null, Items.coal);
+        assertFalse(build.isSleeping(), "Receiving an item should wake a building up.");
+        assertTrue(build.isAdded());
+
+        sleepScheduler.update();
+        Groups.update();
+        assertTrue(build.isSleeping());
+
+        //the previous timer is stale now; this one is further in the future than the lowest level of the timer wheel
+        build.sleepFor(70000f);
+        for(int i = 0; i < 69999; i++){
+            sleepScheduler.update();
+        }
+        assertTrue(build.isSleeping());
+
+        sleepScheduler.update();
+        assertFalse(build.isSleeping(), "Building should wake up once its timer expires.");
+        assertEquals(1, sleepScheduler.lastWoken);
+        assertEquals(0, sleepScheduler.sleeping);
+    }
+
+    @Test
+    void unpoweredHeaterCoolsDown(){
+        createMap();
+        state.set(State.playing);
+
+        HeatProducer heater = (HeatProducer)Blocks.phaseHeater;
+        Tile tile = world.tile(2, 2);
+        tile.setBlock(heater, Team.sharded);
+        HeatProducerBuild build = (HeatProducerBuild)tile.build;
+        build.heat = heater.heatOutput;
+
+        //heat must decay at the same rate as when the heater never sleeps, as consumers keep drawing it
+        for(int i = 1; i <= 110; i++){
+            Time.update();
+            sleepScheduler.update();
+            Groups.update();
+
+            float expected = Math.max(heater.heatOutput - heater.warmupRate * i, 0f);
+            assertEquals(expected, build.heat, 0.01f, "Heat after " + i + " ticks");
+            if(expected > heater.warmupRate){
+                assertFalse(build.isSleeping(), "Heater should not sleep while it still has heat.");
+            }
+        }
+
+        assertTrue(build.isSleeping(), "Heater should sleep once its heat is gone.");
+    }
+
+    @Test
+    @SuppressWarnings({"deprecation", "unchecked"})
+    void deprecatedGroupTree(){
+        world.loadMap(testMap);
+        Unit unit = UnitTypes.dagger.spawn(Team.sharded, 20f, 30f);
+        Groups.unit.updatePhysics();
+
+        //mods still use the quadtree of groups that use another spatial index now
+        Seq<Unit> found = new Seq<>();
+        Groups.unit.tree().intersect(new Rect(unit.x - 1f, unit.y - 1f, 2f, 2f), found);
+        assertTrue(found.contains(unit), "Quadtree of a group should contain its entities.");
+        assertSame(Groups.unit.tree(), Groups.unit.tree(), "Quadtree should only be built once per physics update.");
+    }
+
+    @Test
+    void controlPathsMatchTileSearch(){
+        int size = 80, team = Team.sharded.id;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+
+        Rand rand = new Rand(7);
+        for(Tile tile : tiles){
+            if(rand.chance(0.2)) tile.setBlock(Blocks.stoneWall);
+        }
+        //nothing can get into this box
+        for(int i = 50; i <= 64; i++){
+            tiles.getn(i, 50).setBlock(Blocks.stoneWall);
+            tiles.getn(i, 64).setBlock(Blocks.stoneWall);
+            tiles.getn(50, i).setBlock(Blocks.stoneWall);
+            tiles.getn(64, i).setBlock(Blocks.stoneWall);
+        }
+        world.endMapLoad();
+
+        PathCost cost = ControlPathfinder.costGround;
+        HierarchicalPathfinder clusters = new HierarchicalPathfinder(size, size);
+        IntSeq path = new IntSeq();
+        int reachable = 0, unreachable = 0;
+
+        for(int i = 0; i < 60; i++){
+            int start = passableTile(rand, cost, team, size, false), goal = passableTile(rand, cost, team, size, i % 4 == 0);
+            if(start == goal) continue;
+
+            float optimal = tileSearch(cost, team, size, start, goal);
+            String name = "Path from " + start + " to " + goal;
+            if(optimal < 0f){
+                unreachable ++;
+            }else{
+                reachable ++;
+            }
+
+            var search = new HierarchicalPathfinder.Search(start, goal);
+            int result;
+            do{
+                result = clusters.findPath(team, cost, search, path, Long.MAX_VALUE);
+            }while(result == HierarchicalPathfinder.searchRunning);
+
+            assertEquals(optimal >= 0f, result == HierarchicalPathfinder.searchFound, name + ": cluster search disagrees on whether the goal can be reached.");
+            if(optimal >= 0f){
+                //cluster paths are not always the shortest, only valid
+                assertTrue(pathCost(cost, team, size, start, goal, path) >= optimal - 0.01f, name);
+            }
+
+            var group = new ControlPathfinder.PathGroup();
+            group.set(team, cost, goal);
+            assertTrue(group.update(start, Long.MAX_VALUE));
+
+            assertEquals(optimal >= 0f, group.trace(start, path), name + ": flow field disagrees on whether the goal can be reached.");
+            if(optimal >= 0f){
+                assertEquals(optimal, pathCost(cost, team, size, start, goal, path), 0.01f, name + ": flow field path should be the shortest.");
+            }
+        }
+
+        assertTrue(reachable > 10 && unreachable > 5, "Not enough paths of either kind were tested; reachable: " + reachable + ", unreachable: " + unreachable);
+    }
+
+    /** @return a random tile with a passable cost, inside the closed box of {@link #controlPathsMatchTileSearch()} if specified. */
+    static int passableTile(Rand rand, PathCost cost, int team, int size, boolean boxed){
+        while(true){
+            int x = boxed ? rand.random(51, 63) : rand.random(size - 1), y = boxed ? rand.random(51, 63) : rand.random(size - 1);
+            if(tileCost(cost, team, x + y * size) >= 0) return x + y * size;
+        }
+    }
+
+    /** Negative costs are impassable. */
+    static int tileCost(PathCost cost, int team, int pos){
+        return cost.getCost(team, pathfinder.packTile(world.tiles.geti(pos)));
+    }
+
+    /** Plain tile A* with the cost of each entered tile. @return the cost of the shortest path, or -1 if there is none. */
+    static float tileSearch(PathCost cost, int team, int size, int start, int goal){
+        float[] costs = new float[size * size];
+        Arrays.fill(costs, Float.MAX_VALUE);
+        Bits closed = new Bits(size * size);
+        PathfindQueue frontier = new PathfindQueue();
+        costs[start] = 0f;
+        frontier.add(start, 0f);
+
+        while(!frontier.empty()){
+            int current = frontier.poll();
+            if(current == goal) return costs[goal];
+            if(closed.get(current)) continue;
+            closed.set(current);
+
+            for(Point2 point : Geometry.d4){
+                int x = current % size + point.x, y = current / size + point.y, next = x + y * size;
+                if(x < 0 || y < 0 || x >= size || y >= size) continue;
+
+                int add = tileCost(cost, team, next);
+                if(add < 0 || costs[current] + add >= costs[next]) continue;
+
+                costs[next] = costs[current] + add;
+                //manhattan distance never overestimates, as every tile costs at least 1
+                frontier.add(next, costs[next] + Math.abs(x - goal % size) + Math.abs(y - goal / size));
+            }
+        }
+        return -1f;
+    }
+
+    /** Checks that the path is connected and passable, and returns its cost. */
+    static float pathCost(PathCost cost, int team, int size, int start, int goal, IntSeq path){
+        assertTrue(path.size > 0 && path.peek() == goal, "Path must end at the goal.");
+        float total = 0f;
+        int last = start;
+        for(int i = 0; i < path.size; i++){
+            int pos = path.get(i), add = tileCost(cost, team, pos);
+            assertEquals(1, Math.abs(pos % size - last % size) + Math.abs(pos / size - last / size), "Path must only move to adjacent tiles.");
+            assertTrue(add >= 0, "Path must not cross impassable tiles.");
+            total += add;
+            last = pos;
+        }
+        return total;
+    }
+
+    @Test
+    void playerDatabase() throws IOException{
+        Fi file = testDataFolder.child("player-data.bin");
+        file.delete();
+
+        LogPlayerStore store = new LogPlayerStore(file);
+        for(int i = 0; i < 100; i++){
+            PlayerInfo info = new PlayerInfo();
+            info.id = "id" + i;
+            info.lastName = "[red]player" + i;
+            info.names.add(info.lastName);
+            info.ips.add("10.0.0." + (i % 10));
+            info.banned = i == 5;
+            store.add(info);
+        }
+        store.save(true);
+
+        //changing info appends a new record, which replaces the old one
+        store.get("id7").names.add("renamed");
+        store.get("id7").timesJoined = 3;
+        store.save(false);
+
+        store = new LogPlayerStore(file);
+        assertEquals(100, store.size());
+        assertEquals(0, store.loaded().size, "Info should only be loaded when needed.");
+
+        assertEquals(10, store.index().ip("10.0.0.3").size);
+        assertTrue(store.index().name("PLAYER42").contains("id42"), "Names should be indexed without colors and case.");
+        assertTrue(store.index().name("renamed").contains("id7"));
+        assertTrue(store.index().banned.contains("id5"));
+
+        PlayerInfo info = store.get("id7");
+        assertEquals(3, info.timesJoined);
+        assertEquals(Seq.with("[red]player7", "renamed"), info.names);
+        assertEquals(1, store.loaded().size);
+
+        int[] count = {0};
+        store.each(p -> count[0]++);
+        assertEquals(100, count[0]);
+
+        //any change to the info is written, not just ones with a different hash
+        info.banned = true;
+        store.save(false);
+        store.close();
+        store = new LogPlayerStore(file);
+        assertTrue(store.index().banned.contains("id7"));
+        assertTrue(store.get("id7").banned);
+        store.close();
+    }
+
     @Test
     void liquidOutput(){
         world.loadMap(testMap);
@@ -613,6 +944,237 @@ public class ApplicationTests{
         assertNotEquals(0, itemsa[0]);
     }
 
+    @Test
+    void conveyorLines(){
+        assertTrue(((Conveyor)Blocks.conveyor).groupLines, "Conveyors that do not change item handling should be grouped into lines.");
+
+        world.loadMap(testMap);
+        state.set(State.playing);
+        state.rules.limitMapArea = false;
+        int length = 10;
+
+        world.tile(0, 0).setBlock(Blocks.itemSource, Team.sharded);
+        world.tile(0, 0).build.configureAny(Items.copper);
+        for(int i = 0; i < length; i++){
+            world.tile(i + 1, 0).setBlock(Blocks.conveyor, Team.sharded, 0);
+        }
+        world.tile(length + 1, 0).setBlock(Blocks.container, Team.sharded);
+
+        updateBlocks(1);
+
+        ConveyorBuild head = (ConveyorBuild)world.build(length, 0);
+        assertNotNull(head.line);
+        assertEquals(length, head.line.builds.length);
+        assertSame(head, head.line.head());
+        for(int i = 0; i < length; i++){
+            assertSame(head.line, ((ConveyorBuild)world.build(i + 1, 0)).line);
+        }
+
+        updateBlocks(300);
+        assertTrue(world.build(length + 1, 0).items.has(Items.copper), "Items should move through the whole line.");
+
+        //only the head is updated while items flow, the other conveyors sleep
+        assertFalse(head.isSleeping());
+        for(int i = 1; i < length; i++){
+            assertTrue(world.build(i, 0).isSleeping(), "Conveyor " + i + " should sleep while the head moves its items.");
+        }
+
+        //turning a conveyor sideways splits the line in front of and behind it
+        world.build(5, 0).rotation = 1;
+        updateBlocks(1);
+
+        ConveyorBuild back = (ConveyorBuild)world.build(1, 0), front = (ConveyorBuild)world.build(length, 0);
+        assertNotSame(back.line, front.line);
+        assertEquals(4, back.line.builds.length);
+        assertEquals(length - 5, front.line.builds.length);
+        assertSame(world.build(4, 0), back.line.head());
+    }
+
+    @Test
+    void flowfieldRepair(){
+        int size = 100;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.tile(size - 10, size / 2).setBlock(Blocks.coreShard, Team.sharded, 0);
+        world.endMapLoad();
+        state.set(State.playing);
+        Config.incrementalPathfinding.set(true);
+
+        var field = pathfinder.getField(Team.blue, Pathfinder.costGround, Pathfinder.fieldCore);
+        awaitFlowfield(field, null);
+
+        //walls of the same team are impassable, so this ring cuts off the tiles inside of it
+        Seq<Tile> ring = new Seq<>();
+        for(int i = 10; i <= 20; i++){
+            ring.add(world.tile(i, 10), world.tile(i, 20));
+            if(i > 10 && i < 20) ring.add(world.tile(10, i), world.tile(20, i));
+        }
+
+        for(Tile tile : ring){
+            int[] last = field.completeWeights;
+            tile.setBlock(Blocks.copperWall, Team.blue);
+            awaitFlowfield(field, last);
+        }
+        assertSameAsReflow(field, ring.first());
+
+        //removing a wall opens the ring again
+        Tile opening = world.tile(15, 10);
+        int[] last = field.completeWeights;
+        opening.remove();
+        awaitFlowfield(field, last);
+        assertSameAsReflow(field, opening);
+
+        //adding a wall in the open makes paths around it longer
+        Tile wall = world.tile(50, 50);
+        last = field.completeWeights;
+        wall.setBlock(Blocks.copperWall, Team.blue);
+        awaitFlowfield(field, last);
+        assertSameAsReflow(field, wall);
+
+        Config.incrementalPathfinding.set(Config.incrementalPathfinding.defaultValue);
+    }
+
+    /** Checks that the weights of a repaired field are the same as the ones of a full reflow, started by updating a tile that did not change. */
+    void assertSameAsReflow(Pathfinder.Flowfield field, Tile tile){
+        int[] repaired = field.completeWeights.clone();
+
+        Config.incrementalPathfinding.set(false);
+        int[] last = field.completeWeights;
+        pathfinder.updateTile(tile);
+        awaitFlowfield(field, last);
+        Config.incrementalPathfinding.set(true);
+
+        assertArrayEquals(field.completeWeights, repaired, "Repaired flowfield differs from full reflow.");
+    }
+
+    @Test
+    @Tag("benchmark")
+    void flowfieldRepairBench(){
+        int size = 500;
+        Tiles tiles = world.resize(size, size);
+        world.beginMapLoad();
+        tiles.fill();
+        world.tile(size - 10, size / 2).setBlock(Blocks.coreShard, Team.sharded, 0);
+        world.endMapLoad();
+        state.set(State.playing);
+
+        //not the wave team, so the field is not preloaded on world load
+        var field = pathfinder.getField(Team.blue, Pathfinder.costGround, Pathfinder.fieldCore);
+        awaitFlowfield(field, null);
+
+        Tile wall = world.tile(size / 2, size / 2);
+        int[] repaired = null;
+
+        for(boolean incremental : new boolean[]{true, false}){
+            Config.incrementalPathfinding.set(incremental);
+
+            int[] last = field.completeWeights;
+            long start = Time.nanos();
+            wall.setBlock(Blocks.copperWallLarge, Team.sharded);
+            awaitFlowfield(field, last);
+            Log.info("@: @ms to consistent flowfield after a tile change", incremental ? "incremental repair" : "full reflow", Time.timeSinceNanos(start) / 1000000f);
+
+            if(incremental){
+                repaired = field.completeWeights.clone();
+            }else{
+                assertArrayEquals(repaired, field.completeWeights, "Repaired flowfield differs from full reflow.");
+            }
+
+            last = field.completeWeights;
+            wall.remove();
+            awaitFlowfield(field, last);
+        }
+
+        Config.incrementalPathfinding.set(Config.incrementalPathfinding.defaultValue);
+    }
+
+    /** Waits until the pathfinding thread publishes new complete weights for this field. */
+    void awaitFlowfield(Pathfinder.Flowfield field, int[] last){
+        long start = Time.millis();
+        while(!field.hasCompleteWeights() || field.completeWeights == last){
+            if(Time.timeSinceMillis(start) > 10000){
+                fail("Flowfield was not updated in time.");
+            }
+            Threads.sleep(1);
+        }
+    }
+
+    @Test
+    void logicSchedulerBudget(){
+        world.loadMap(testMap);
+        state.set(State.playing);
+
+        Seq<LogicBuild> builds = new Seq<>();
+        for(int i = 0; i < 4; i++){
+            world.tile(i, 0).setBlock(Blocks.microProcessor, Team.sharded);
+            LogicBuild build = (LogicBuild)world.tile(i, 0).build;
+            build.updateCode("op add x x 1");
+            builds.add(build);
+        }
+
+        //the first processor needs less than an even share, so the others split what it leaves
+        builds.each(b -> b.accumulator = 20f);
+        builds.first().accumulator = 2f;
+
+        Config.logicInstructionBudget.set(6);
+        builds.each(logicScheduler::submit);
+        logicScheduler.update();
+        Config.logicInstructionBudget.set(Config.logicInstructionBudget.defaultValue);
+
+        assertEquals(6, logicScheduler.lastInstructions);
+        assertEquals(3, logicScheduler.lastThrottled);
+
+        int[] expected = {1, 1, 2, 2};
+        for(int i = 0; i < builds.size; i++){
+            LExecutor exec = builds.get(i).executor;
+            int x = Structs.indexOf(exec.names, "x");
+            assertEquals(expected[i], exec.num(x), "Instructions run by processor " + i);
+        }
+    }
+
+    @Test
+    void compiledLogicMatchesInterpreter(){
+        Rand rand = new Rand(7);
+        String[] operands = {"a", "b", "c", "d", "@counter", "0", "1", "-3.5", "1e10", "\"str\"", "null", "true"};
+        String[] vars = {"a", "b", "c", "d"};
+        Seq<LogicOp> ops = Seq.with(LogicOp.all).select(o -> o != LogicOp.rand);
+
+        for(int program = 0; program < 200; program++){
+            int length = rand.random(1, 30);
+            StringBuilder code = new StringBuilder();
+
+            for(int i = 0; i < length; i++){
+                String a = operands[rand.random(operands.length - 1)], b = operands[rand.random(operands.length - 1)];
+                switch(rand.random(5)){
+                    case 0 -> code.append("set ").append(vars[rand.random(vars.length - 1)]).append(" ").append(a);
+                    case 1 -> code.append("op ").append(ops.get(rand.random(ops.size - 1)).name()).append(" ").append(vars[rand.random(vars.length - 1)]).append(" ").append(a).append(" ").append(b);
+                    case 2 -> code.append("jump ").append(rand.random(-1, length - 1)).append(" ").append(ConditionOp.all[rand.random(ConditionOp.all.length - 1)].name()).append(" ").append(a).append(" ").append(b);
+                    case 3 -> code.append("print ").append(a);
+                    case 4 -> code.append("noop");
+                    default -> code.append("end");
+                }
+                code.append("\n");
+            }
+
+            LExecutor compiled = new LExecutor(), interpreted = new LExecutor();
+            compiled.load(LAssembler.assemble(code.toString(), false), true);
+            interpreted.load(LAssembler.assemble(code.toString(), false), false);
+
+            for(int step = 0; step < 500; step++){
+                compiled.runOnce();
+                interpreted.runOnce();
+
+                for(int i = 0; i < compiled.varCount(); i++){
+                    String message = "Mismatch in '" + compiled.names[i] + "' after " + step + " steps of:\n" + code;
+                    assertEquals(interpreted.isobj(i), compiled.isobj(i), message);
+                    assertEquals(interpreted.value(i), compiled.value(i), message);
+                }
+                assertEquals(interpreted.textBuffer.toString(), compiled.textBuffer.toString());
+            }
+        }
+    }
+
     @Test
     void load77Save(){
         resetWorld();
@@ -0,0 +1,203 @@
+import arc.math.*;
+import arc.struct.Bits;
+import arc.util.*;
+import mindustry.game.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks chunked fog bits against flat bits, and measures how long both take to update and write on a 500x500 map with 8 teams. */
+public class FogBitsTests{
+    static final int size = 500, teams = 8;
+
+    @Test
+    void sameAsFlat(){
+        FogBits chunks = new FogBits(size, size);
+        Bits flat = new Bits(size * size);
+        Rand rand = new Rand(1);
+
+        for(int i = 0; i < 300; i++){
+            circle(chunks, flat, rand.random(-20, size + 20), rand.random(-20, size + 20), rand.random(1, 40));
+        }
+
+        for(int y = 0; y < size; y++){
+            for(int x = 0; x < size; x++){
+                assertEquals(flat.get(x + y * size), chunks.get(x, y));
+                assertEquals(flat.get(x + y * size), chunks.get(x + y * size));
+            }
+        }
+    }
+
+    @Test
+    void writeRead() throws IOException{
+        FogBits chunks = new FogBits(size, size);
+        Rand rand = new Rand(2);
+        for(int i = 0; i < 50; i++){
+            circle(chunks, null, rand.random(size), rand.random(size), rand.random(1, 60));
+        }
+        //a chunk that is fully discovered
+        for(int y = 0; y < FogBits.chunkSize; y++){
+            chunks.setRow(y, 0, FogBits.chunkSize - 1);
+        }
+
+        FogBits copy = read(write(chunks));
+        for(int y = 0; y < size; y++){
+            for(int x = 0; x < size; x++){
+                assertEquals(chunks.get(x, y), copy.get(x, y));
+            }
+        }
+
+        //cached chunks are written the same way as new ones
+        chunks.setRow(300, 10, 200);
+        byte[] cached = write(chunks);
+        assertArrayEquals(write(read(cached)), cached);
+    }
+
+    @Test
+    void versions(){
+        FogBits chunks = new FogBits(size, size);
+        int chunk = chunks.chunk(40, 40), other = chunks.chunk(100, 40), version = chunks.version(chunk);
+
+        chunks.set(40, 40);
+        assertNotEquals(version, version = chunks.version(chunk));
+        //setting it again changes nothing
+        chunks.set(40, 40);
+        assertEquals(version, chunks.version(chunk));
+        assertEquals(0, chunks.version(other));
+        assertTrue(chunks.isEmpty(other));
+        assertFalse(chunks.isEmpty(chunk));
+
+        chunks.clear();
+        assertTrue(chunks.isEmpty(chunk));
+        assertEquals(0, chunks.version(other));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark() throws IOException{
+        FogBits[] chunks = new FogBits[teams];
+        Bits[] flat = new Bits[teams];
+        for(int i = 0; i < teams; i++){
+            chunks[i] = new FogBits(size, size);
+            flat[i] = new Bits(size * size);
+        }
+
+        //exploration of a whole match, then a few units moving between saves
+        long[] events = events(20000, 3), moves = events(200, 4);
+        int runs = 10;
+        long flatUpdate = 0, chunkUpdate = 0, flatWrite = 0, chunkWrite = 0, flatRewrite = 0, chunkRewrite = 0;
+        int flatBytes = 0, chunkBytes = 0;
+
+        for(int run = 0; run < runs * 2; run++){
+            boolean measure = run >= runs;
+            for(int i = 0; i < teams; i++){
+                chunks[i].clear();
+                flat[i].clear();
+            }
+
+            long start = Time.nanos();
+            draw(null, flat, events);
+            long time = Time.nanos() - start;
+            if(measure) flatUpdate += time;
+
+            start = Time.nanos();
+            draw(chunks, null, events);
+            time = Time.nanos() - start;
+            if(measure) chunkUpdate += time;
+
+            start = Time.nanos();
+            flatBytes = writeFlat(flat).length;
+            time = Time.nanos() - start;
+            if(measure) flatWrite += time;
+
+            start = Time.nanos();
+            chunkBytes = write(chunks).length;
+            time = Time.nanos() - start;
+            if(measure) chunkWrite += time;
+
+            draw(chunks, flat, moves);
+
+            start = Time.nanos();
+            writeFlat(flat);
+            time = Time.nanos() - start;
+            if(measure) flatRewrite += time;
+
+            start = Time.nanos();
+            write(chunks);
+            time = Time.nanos() - start;
+            if(measure) chunkRewrite += time;
+        }
+
+        Log.info("Fog of @ teams on a @x@ map, @ events: flat @ms update, @ms write (@ bytes), @ms write after @ events; chunked @ms update, @ms write (@ bytes), @ms write after @ events",
+            teams, size, size, events.length,
+            ms(flatUpdate, runs), ms(flatWrite, runs), flatBytes, ms(flatRewrite, runs), moves.length,
+            ms(chunkUpdate, runs), ms(chunkWrite, runs), chunkBytes, ms(chunkRewrite, runs), moves.length);
+    }
+
+    static float ms(long nanos, int runs){
+        return nanos / (float)runs / 1000000f;
+    }
+
+    /** @return events packed as x, y, radius and team */
+    static long[] events(int amount, long seed){
+        Rand rand = new Rand(seed);
+        long[] events = new long[amount];
+        for(int i = 0; i < amount; i++){
+            events[i] = rand.random(size - 1) | (long)rand.random(size - 1) << 16 | (long)rand.random(3, 30) << 32 | (long)rand.random(teams - 1) << 48;
+        }
+        return events;
+    }
+
+    static void draw(FogBits[] chunks, Bits[] flat, long[] events){
+        for(long event : events){
+            int team = (int)(event >>> 48);
+            circle(chunks == null ? null : chunks[team], flat == null ? null : flat[team], (int)(event & 0xffff), (int)((event >>> 16) & 0xffff), (int)((event >>> 32) & 0xffff));
+        }
+    }
+
+    static byte[] write(FogBits chunks) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        chunks.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    static byte[] write(FogBits[] chunks) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(bytes);
+        for(FogBits bits : chunks){
+            bits.write(stream);
+        }
+        return bytes.toByteArray();
+    }
+
+    static FogBits read(byte[] bytes) throws IOException{
+        FogBits chunks = new FogBits(size, size);
+        chunks.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        return chunks;
+    }
+
+    /** The run-length encoding that static fog was saved with before it was stored in chunks. */
+    static byte[] writeFlat(Bits[] flat) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for(Bits data : flat){
+            int pos = 0, len = size * size;
+            while(pos < len){
+                int consecutives = 0;
+                boolean cur = data.get(pos);
+                while(consecutives < 127 && pos < len && cur == data.get(pos)){
+                    consecutives ++;
+                    pos ++;
+                }
+                bytes.write((cur ? 0b1000_0000 : 0) | consecutives);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static void circle(FogBits chunks, Bits flat, int x, int y, int radius){
+        if(chunks != null) FogControl.circle(null, chunks, size, size, x, y, radius);
+        if(flat != null) FogControl.circle(flat, null, size, size, x, y, radius);
+    }
+}
@@ -0,0 +1,76 @@
+import arc.math.*;
+import arc.struct.Bits;
+import arc.struct.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks that incremental dynamic fog covers the same tiles as drawing all sources again, and reports exactly the tiles that changed. */
+public class FogCoverageTests{
+    static final int size = 200;
+
+    @Test
+    void sameAsRedraw(){
+        FogCoverage coverage = new FogCoverage(size, size);
+        Rand rand = new Rand(1);
+        LongSeq sources = new LongSeq();
+        Bits bits = new Bits(size * size), expected = new Bits(size * size), previous = new Bits(size * size);
+        IntSet revealed = new IntSet(), hidden = new IntSet();
+
+        for(int step = 0; step < 300; step++){
+            //sources are removed, move a few tiles, change their radius, or stay
+            for(int i = 0; i < sources.size; i++){
+                long event = sources.get(i);
+                float action = rand.random(1f);
+                if(action < 0.1f){
+                    sources.removeIndex(i--);
+                }else if(action < 0.4f){
+                    sources.set(i, FogEvent.get(coord(FogEvent.x(event) + rand.range(3)), coord(FogEvent.y(event) + rand.range(3)), FogEvent.radius(event), 0));
+                }else if(action < 0.5f){
+                    sources.set(i, FogEvent.get(FogEvent.x(event), FogEvent.y(event), rand.random(1, 30), 0));
+                }
+            }
+
+            for(int i = rand.random(4); i > 0; i--){
+                //some sources are at the same place as another one
+                sources.add(sources.size > 0 && rand.chance(0.2) ? sources.get(rand.random(sources.size - 1)) : FogEvent.get(rand.random(size - 1), rand.random(size - 1), rand.random(1, 30), 0));
+            }
+
+            coverage.begin();
+            for(int i = 0; i < sources.size; i++){
+                coverage.add(sources.get(i));
+            }
+            coverage.update(bits);
+
+            expected.clear();
+            for(int i = 0; i < sources.size; i++){
+                long event = sources.get(i);
+                FogControl.circle(expected, null, size, size, FogEvent.x(event), FogEvent.y(event), FogEvent.radius(event) + 1);
+            }
+
+            revealed.clear();
+            hidden.clear();
+            for(int i = 0; i < coverage.revealed.size; i++) revealed.add(coverage.revealed.get(i));
+            for(int i = 0; i < coverage.hidden.size; i++) hidden.add(coverage.hidden.get(i));
+            assertEquals(revealed.size, coverage.revealed.size, "Tiles are only revealed once per update.");
+            assertEquals(hidden.size, coverage.hidden.size, "Tiles are only hidden once per update.");
+
+            for(int i = 0; i < size * size; i++){
+                boolean before = previous.get(i), now = expected.get(i);
+                assertEquals(now, bits.get(i), "bits, step " + step);
+                assertEquals(!before && now, revealed.contains(i), "revealed, step " + step);
+                assertEquals(before && !now, hidden.contains(i), "hidden, step " + step);
+            }
+
+            Bits temp = previous;
+            previous = expected;
+            expected = temp;
+        }
+    }
+
+    static int coord(int value){
+        return Mathf.clamp(value, 0, size - 1);
+    }
+}
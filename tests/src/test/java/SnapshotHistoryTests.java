@@ -0,0 +1,150 @@
+import arc.math.*;
+import arc.struct.*;
+import mindustry.net.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Simulates delta entity snapshots sent over a connection that loses snapshots and acknowledgements. */
+public class SnapshotHistoryTests{
+
+    @Test
+    void lostAck(){
+        SnapshotHistory history = new SnapshotHistory();
+
+        history.begin(0);
+        assertTrue(history.include(1, 'A'));
+        history.ack(0);
+
+        //the client applies B, but its acknowledgement is lost
+        history.begin(1);
+        assertTrue(history.include(1, 'B'));
+
+        //back to the acknowledged state; the client still has B
+        history.begin(2);
+        assertTrue(history.include(1, 'A'));
+
+        //only once the client acknowledged a snapshot with A can it be left out
+        history.ack(2);
+        history.begin(3);
+        assertFalse(history.include(1, 'A'));
+    }
+
+    @Test
+    void idleEntityResumesMoving(){
+        SnapshotHistory history = new SnapshotHistory();
+        int lastSent = -1;
+
+        for(int id = 0; id < 40; id++){
+            history.begin(id);
+            //idle until snapshot 23, then moving
+            boolean sent = history.include(1, id < 23 ? 0 : id);
+            history.ack(id);
+
+            if(id < 23){
+                //unchanged, but still sent often enough that the client's interpolation spacing stays short
+                assertEquals(id % SnapshotHistory.keepaliveInterval == 0, sent, "snapshot " + id);
+            }else{
+                assertTrue(sent, "A moving entity must be sent in every snapshot.");
+                assertTrue(id - lastSent <= SnapshotHistory.keepaliveInterval, "The client received the entity too long before it started moving.");
+            }
+
+            if(sent) lastSent = id;
+        }
+    }
+
+    @Test
+    void unackedSnapshotsTooOld(){
+        SnapshotHistory history = new SnapshotHistory();
+        history.begin(0);
+        history.include(1, 1);
+        history.ack(0);
+
+        for(int i = 1; i < 40; i++){
+            history.begin(i);
+            //acknowledgements never arrive, so the baseline is forgotten eventually
+            assertEquals(i >= 16, history.isFull());
+            history.include(1, 1);
+        }
+    }
+
+    @Test
+    void lossyConnection(){
+        for(long seed = 0; seed < 20; seed++){
+            simulate(new Rand(seed));
+        }
+    }
+
+    static void simulate(Rand rand){
+        int entities = 20;
+        SnapshotHistory history = new SnapshotHistory();
+        int[] server = new int[entities], client = new int[entities];
+        IntSet known = new IntSet();
+        int clientSnapshot = -1;
+
+        //packets arrive late or not at all while the entities change, then the connection becomes perfect and nothing changes anymore
+        Seq<Packet> inFlight = new Seq<>();
+        int steps = 400;
+        for(int step = 0; step < steps + 40; step++){
+            boolean lossy = step < steps;
+            if(lossy){
+                for(int i = 0; i < entities; i++){
+                    //few values, so entities often go back to an older state
+                    if(rand.chance(0.3)) server[i] = rand.random(2);
+                }
+            }
+
+            history.begin(step);
+            Packet packet = new Packet(step, lossy ? rand.random(2) : 0);
+            for(int i = 0; i < entities; i++){
+                if(history.include(i, server[i])){
+                    packet.entities.add(i);
+                    packet.values.add(server[i]);
+                }
+            }
+            if(!lossy || !rand.chance(0.3)) inFlight.add(packet);
+
+            for(int i = 0; i < inFlight.size; i++){
+                Packet p = inFlight.get(i);
+                if(p.delay-- > 0) continue;
+                inFlight.remove(i--);
+
+                if(p.ack){
+                    history.ack(p.id);
+                    continue;
+                }
+
+                //the client drops snapshots older than the newest one it applied
+                if(p.id < clientSnapshot) continue;
+                clientSnapshot = p.id;
+                for(int j = 0; j < p.entities.size; j++){
+                    client[p.entities.get(j)] = p.values.get(j);
+                    known.add(p.entities.get(j));
+                }
+
+                if(!lossy || !rand.chance(0.4)){
+                    Packet ack = new Packet(p.id, lossy ? rand.random(2) : 0);
+                    ack.ack = true;
+                    inFlight.add(ack);
+                }
+            }
+        }
+
+        for(int i = 0; i < entities; i++){
+            assertTrue(known.contains(i));
+            assertEquals(server[i], client[i], "entity " + i);
+        }
+    }
+
+    static class Packet{
+        final int id;
+        int delay;
+        boolean ack;
+        final IntSeq entities = new IntSeq(), values = new IntSeq();
+
+        Packet(int id, int delay){
+            this.id = id;
+            this.delay = delay;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import arc.math.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.entities.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Compares the uniform grid spatial index to the quadtree, and measures how long both take to build and query. */
+public class SpatialIndexTests{
+    static final float worldSize = 4000f;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1000, 10000, 50000})
+    void sameResults(int amount){
+        Box[] boxes = boxes(amount, 1);
+        SpatialIndex<Box> tree = build(new QuadTreeIndex<>(), boxes), grid = build(new SpatialHash<>(64f), boxes);
+
+        Rand rand = new Rand(2);
+        Seq<Box> expected = new Seq<>(), found = new Seq<>();
+        for(int i = 0; i < 200; i++){
+            float size = rand.random(10f, 400f);
+            //some queries are partially outside the bounds
+            Rect rect = new Rect(rand.random(-200f, worldSize), rand.random(-200f, worldSize), size, size);
+
+            expected.clear();
+            found.clear();
+            tree.intersect(rect, expected);
+            grid.intersect(rect, found);
+
+            assertEquals(expected.size, found.size);
+            for(Box box : expected){
+                assertTrue(found.contains(box, true));
+            }
+            assertEquals(tree.any(rect.x, rect.y, rect.width, rect.height), grid.any(rect.x, rect.y, rect.width, rect.height));
+        }
+    }
+
+    @Test
+    void outsideBounds(){
+        SpatialIndex<Box> grid = new SpatialHash<>(64f);
+        grid.resize(0, 0, worldSize, worldSize);
+        grid.insert(new Box(-500f, -500f, 10f));
+        grid.insert(new Box(worldSize + 500f, 100f, 10f));
+
+        assertTrue(grid.any(-510f, -510f, 20f, 20f));
+        assertTrue(grid.any(worldSize + 490f, 90f, 20f, 20f));
+        assertFalse(grid.any(0f, 0f, 100f, 100f));
+    }
+
+    /** Entities are inserted once per frame, then move before they are queried. */
+    @Test
+    void movedSinceInsert(){
+        Box[] boxes = boxes(10000, 5);
+        Rand rand = new Rand(6);
+        for(Box box : boxes){
+            box.speed = rand.random(0f, 30f);
+        }
+
+        SpatialIndex<Box> grid = build(new SpatialHash<>(64f){
+            @Override
+            protected float movement(Box obj){
+                return obj.speed;
+            }
+        }, boxes);
+
+        for(Box box : boxes){
+            box.x += rand.range(box.speed);
+            box.y += rand.range(box.speed);
+        }
+
+        Seq<Box> found = new Seq<>();
+        for(int i = 0; i < 200; i++){
+            float size = rand.random(10f, 400f);
+            Rect rect = new Rect(rand.random(-200f, worldSize), rand.random(-200f, worldSize), size, size), hitbox = new Rect();
+
+            found.clear();
+            grid.intersect(rect, found);
+
+            int expected = 0;
+            for(Box box : boxes){
+                box.hitbox(hitbox);
+                if(hitbox.overlaps(rect)){
+                    expected ++;
+                    assertTrue(found.contains(box, true));
+                }
+            }
+            assertEquals(expected, found.size);
+            assertEquals(expected > 0, grid.any(rect.x, rect.y, rect.width, rect.height));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark(){
+        for(int amount : new int[]{1000, 10000, 50000}){
+            Box[] boxes = boxes(amount, 3);
+            Rect[] queries = new Rect[2000];
+            Rand rand = new Rand(4);
+            for(int i = 0; i < queries.length; i++){
+                queries[i] = new Rect().setCentered(rand.random(worldSize), rand.random(worldSize), rand.random(20f, 240f));
+            }
+
+            float[] tree = measure(new QuadTreeIndex<>(), boxes, queries), grid = measure(new SpatialHash<>(64f), boxes, queries);
+            Log.info("@ entities: quadtree @ms insert, @ms @ queries; grid @ms insert, @ms @ queries", amount, tree[0], tree[1], queries.length, grid[0], grid[1], queries.length);
+        }
+    }
+
+    /** @return the average time to fill the index and to run all queries, in milliseconds. The grid is sorted on the first query, so that is counted as query time. */
+    static float[] measure(SpatialIndex<Box> index, Box[] boxes, Rect[] queries){
+        int runs = 20;
+        long insert = 0, query = 0;
+        int[] count = {0};
+        index.resize(0, 0, worldSize, worldSize);
+
+        for(int run = 0; run < runs * 2; run++){
+            long start = Time.nanos();
+            fill(index, boxes);
+            long built = Time.nanos();
+            for(Rect rect : queries){
+                index.intersect(rect.x, rect.y, rect.width, rect.height, b -> count[0]++);
+            }
+
+            //the first half is warmup
+            if(run >= runs){
+                insert += built - start;
+                query += Time.nanos() - built;
+            }
+        }
+
+        assertTrue(count[0] > 0);
+        return new float[]{insert / (float)runs / 1000000f, query / (float)runs / 1000000f};
+    }
+
+    static SpatialIndex<Box> build(SpatialIndex<Box> index, Box[] boxes){
+        index.resize(0, 0, worldSize, worldSize);
+        return fill(index, boxes);
+    }
+
+    static SpatialIndex<Box> fill(SpatialIndex<Box> index, Box[] boxes){
+        index.clear();
+        for(Box box : boxes){
+            index.insert(box);
+        }
+        return index;
+    }
+
+    static Box[] boxes(int amount, long seed){
+        Rand rand = new Rand(seed);
+        Box[] boxes = new Box[amount];
+        for(int i = 0; i < amount; i++){
+            //mostly bullet-sized, with a few large units
+            boxes[i] = new Box(rand.random(worldSize), rand.random(worldSize), rand.chance(0.05) ? rand.random(20f, 120f) : rand.random(2f, 12f));
+        }
+        return boxes;
+    }
+
+    static class Box implements QuadTreeObject{
+        final float size;
+        float x, y, speed;
+
+        Box(float x, float y, float size){
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        @Override
+        public void hitbox(Rect out){
+            out.setCentered(x, y, size);
+        }
+    }
+}
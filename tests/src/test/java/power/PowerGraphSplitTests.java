@@ -0,0 +1,162 @@
+package power;
+
+import arc.*;
+import arc.mock.*;
+import arc.util.*;
+import mindustry.*;
+import mindustry.core.*;
+import mindustry.world.*;
+import mindustry.world.blocks.power.*;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests splitting power graphs when buildings are removed, and measures how long it takes on a large grid.
+ * Buildings are connected through their proximity only, so no world is needed.
+ */
+public class PowerGraphSplitTests extends PowerTestFixture{
+    static final int size = 70, tailLength = 10;
+
+    static Battery battery;
+
+    Tile[][] grid;
+    Tile[] tail;
+
+    @BeforeAll
+    static void init(){
+        Vars.state = new GameState();
+        if(Core.graphics == null) Core.graphics = new MockGraphics();
+        battery = createFakeBattery(100f);
+    }
+
+    /** Creates a square grid of batteries, with a chain of batteries hanging off one corner, all in one graph. */
+    @BeforeEach
+    void createGrid(){
+        grid = new Tile[size][size];
+        tail = new Tile[tailLength];
+        PowerGraph graph = new PowerGraph();
+
+        for(int x = 0; x < size; x++){
+            for(int y = 0; y < size; y++){
+                grid[x][y] = createFakeTile(x, y, battery);
+                if(x > 0) connect(grid[x][y], grid[x - 1][y]);
+                if(y > 0) connect(grid[x][y], grid[x][y - 1]);
+                graph.add(grid[x][y].build);
+            }
+        }
+
+        for(int i = 0; i < tailLength; i++){
+            tail[i] = createFakeTile(size + i, 0, battery);
+            connect(tail[i], i == 0 ? grid[size - 1][0] : tail[i - 1]);
+            graph.add(tail[i].build);
+        }
+    }
+
+    @Test
+    void removeWithoutSplit(){
+        PowerGraph graph = grid[0][0].build.power.graph;
+        Tile middle = grid[size / 2][size / 2];
+
+        long start = Time.nanos();
+        remove(middle);
+        Log.info("@ms to remove a building without splitting a graph of @ buildings", Time.timeSinceNanos(start) / 1000000f, size * size + tailLength);
+
+        assertSame(graph, grid[0][0].build.power.graph, "Graph should be kept when it stays connected.");
+        assertSame(graph, tail[tailLength - 1].build.power.graph);
+        assertEquals(size * size + tailLength - 1, graph.all.size);
+        assertFalse(graph.all.contains(middle.build));
+        assertEquals(graph.all.size, graph.batteries.size);
+    }
+
+    @Test
+    void removeSplitsTail(){
+        PowerGraph graph = grid[0][0].build.power.graph;
+
+        long start = Time.nanos();
+        remove(tail[2]);
+        Log.info("@ms to split @ buildings off a graph of @ buildings", Time.timeSinceNanos(start) / 1000000f, tailLength - 3, size * size + tailLength);
+
+        PowerGraph split = tail[tailLength - 1].build.power.graph;
+        assertNotSame(graph, split);
+        assertSame(graph, tail[1].build.power.graph, "The largest part should stay in the original graph.");
+        assertEquals(size * size + 2, graph.all.size);
+        assertEquals(tailLength - 3, split.all.size);
+        assertEquals(split.all.size, split.batteries.size);
+        for(int i = 3; i < tailLength; i++){
+            assertSame(split, tail[i].build.power.graph);
+            assertFalse(graph.all.contains(tail[i].build));
+        }
+        assertLists(graph);
+        assertLists(split);
+    }
+
+    @Test
+    void removeSplitsGrid(){
+        //cut the grid in two halves, one building at a time
+        for(int y = 0; y < size - 1; y++){
+            remove(grid[size / 2][y]);
+        }
+
+        assertSame(grid[0][0].build.power.graph, grid[size - 1][0].build.power.graph, "The halves are still connected by the last row.");
+
+        long start = Time.nanos();
+        remove(grid[size / 2][size - 1]);
+        Log.info("@ms to split a graph of @ buildings in two halves", Time.timeSinceNanos(start) / 1000000f, size * size + tailLength - size + 1);
+
+        PowerGraph left = grid[0][0].build.power.graph, right = grid[size - 1][0].build.power.graph;
+        assertNotSame(left, right);
+        assertEquals(size / 2 * size, left.all.size);
+        assertEquals((size - size / 2 - 1) * size + tailLength, right.all.size);
+        assertSame(right, tail[tailLength - 1].build.power.graph);
+        assertLists(left);
+        assertLists(right);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void splitBenchmark(){
+        //warmup
+        for(int i = 0; i < 5; i++){
+            new PowerGraph().reflow(grid[0][0].build);
+        }
+
+        long start = Time.nanos();
+        new PowerGraph().reflow(grid[0][0].build);
+        float reflow = Time.timeSinceNanos(start) / 1000000f;
+
+        start = Time.nanos();
+        remove(tail[tailLength - 2]);
+        float split = Time.timeSinceNanos(start) / 1000000f;
+
+        Log.info("Rebuilding a graph of @ buildings: @ms full reflow, @ms incremental split", size * size + tailLength, reflow, split);
+        assertEquals(1, tail[tailLength - 1].build.power.graph.all.size);
+        assertEquals(size * size + tailLength - 2, grid[0][0].build.power.graph.all.size);
+    }
+
+    /** Checks that the lists of a graph only contain its own buildings, at the positions they remember. */
+    void assertLists(PowerGraph graph){
+        for(int i = 0; i < graph.all.size; i++){
+            assertSame(graph, graph.all.get(i).power.graph);
+            assertEquals(i, graph.all.get(i).power.allIndex);
+        }
+        for(int i = 0; i < graph.batteries.size; i++){
+            assertSame(graph, graph.batteries.get(i).power.graph);
+            assertEquals(i, graph.batteries.get(i).power.batteryIndex);
+        }
+    }
+
+    /** Removes a building like it is removed from the world. */
+    void remove(Tile tile){
+        tile.build.power.graph.remove(tile.build);
+        for(var other : tile.build.proximity){
+            other.proximity.remove(tile.build);
+        }
+        tile.build.proximity.clear();
+    }
+
+    void connect(Tile a, Tile b){
+        a.build.proximity.add(b.build);
+        b.build.proximity.add(a.build);
+    }
+}
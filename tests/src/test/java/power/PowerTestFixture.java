@@ -6,6 +6,7 @@ import arc.util.*;
 import mindustry.*;
 import mindustry.content.*;
 import mindustry.core.*;
+import mindustry.entities.*;
 import mindustry.ctype.*;
 import mindustry.game.*;
 import mindustry.gen.*;
@@ -41,6 +42,7 @@ public class PowerTestFixture{
         }
         Vars.state = new GameState();
         Vars.tree = new FileTree();
+        Vars.sleepScheduler = new SleepScheduler();
         if(make){
             content.createBaseContent();
         }
@@ -113,6 +113,73 @@ public class PowerTests extends PowerTestFixture{
             }
         }
 
+        /**
+         * Makes sure the values that update() gathers from the buildings give exactly the same results as the public methods, which read from the buildings directly.
+         * The graphs contain producers with different efficiencies, direct consumers and two batteries with different charge.
+         */
+        @TestFactory
+        DynamicTest[] gatheredUpdateMatchesBuildings(){
+            return new DynamicTest[]{
+            dynamicTest("01", () -> simulateGatheredUpdate(10.0f, 5.0f, 0.5f, true, "Power excess, batteries charge")),
+            dynamicTest("02", () -> simulateGatheredUpdate(2.0f, 10.0f, 0.5f, true, "Power shortage, batteries discharge")),
+            dynamicTest("03", () -> simulateGatheredUpdate(0.0f, 10.0f, 0.0f, true, "No producer, empty batteries")),
+            dynamicTest("04", () -> simulateGatheredUpdate(2.0f, 10.0f, 0.8f, false, "Power shortage, second battery disabled")),
+            dynamicTest("05", () -> simulateGatheredUpdate(10.0f, 5.0f, 0.8f, false, "Power excess, second battery disabled")),
+            dynamicTest("06", () -> simulateGatheredUpdate(3.0f, 3.0f, 1.0f, true, "Stable consumption, full batteries")),
+            };
+        }
+
+        void simulateGatheredUpdate(float producedPower, float requestedPower, float batteryStatus, boolean secondBatteryEnabled, String parameterDescription){
+            Block producer = createFakeProducerBlock(producedPower), consumer = createFakeDirectConsumer(requestedPower), battery = createFakeBattery(100f);
+            PowerGraph updated = createMixedGraph(producer, consumer, battery, batteryStatus, secondBatteryEnabled);
+            PowerGraph reference = createMixedGraph(producer, consumer, battery, batteryStatus, secondBatteryEnabled);
+
+            //the same steps as update(), through the public methods
+            float needed = reference.getPowerNeeded(), produced = reference.getPowerProduced(), lastProduced = produced;
+            float capacity = reference.getTotalBatteryCapacity(), stored = reference.getBatteryStored();
+            boolean charged = false;
+            if(!Mathf.equal(needed, produced)){
+                if(needed > produced){
+                    float used = reference.useBatteries(needed - produced);
+                    produced += used;
+                    lastProduced += used;
+                }else{
+                    charged = true;
+                    produced -= reference.chargeBatteries(produced - needed);
+                }
+            }
+            reference.distributePower(needed, produced, charged);
+
+            updated.update();
+
+            assertEquals(needed, updated.getLastPowerNeeded(), parameterDescription + ": Power needed did not match");
+            assertEquals(lastProduced, updated.getLastPowerProduced(), parameterDescription + ": Power produced did not match");
+            assertEquals(capacity, updated.getLastCapacity(), parameterDescription + ": Battery capacity did not match");
+            assertEquals(stored, updated.getLastPowerStored(), parameterDescription + ": Stored power did not match");
+            for(int i = 0; i < reference.all.size; i++){
+                assertEquals(reference.all.get(i).power.status, updated.all.get(i).power.status, parameterDescription + ": Status of building " + i + " did not match");
+            }
+        }
+
+        PowerGraph createMixedGraph(Block producer, Block consumer, Block battery, float batteryStatus, boolean secondBatteryEnabled){
+            PowerGraph graph = new PowerGraph();
+            for(int i = 0; i < 3; i++){
+                Tile tile = createFakeTile(i, 0, producer);
+                ((GeneratorBuild)tile.build).productionEfficiency = (i + 1) / 3f;
+                graph.add(tile.build);
+            }
+            for(int i = 0; i < 4; i++){
+                graph.add(createFakeTile(i, 1, consumer).build);
+            }
+            for(int i = 0; i < 2; i++){
+                Tile tile = createFakeTile(i, 2, battery);
+                tile.build.power.status = batteryStatus / (i + 1);
+                tile.build.enabled = i == 0 || secondBatteryEnabled;
+                graph.add(tile.build);
+            }
+            return graph;
+        }
+
         /** Makes sure a direct consumer stops working after power production is set to zero. */
         @Test
         void directConsumptionStopsWithNoPower(){